@@ -0,0 +1,113 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import com.github.java.heap.dump.sanitizer.SanitizeCommand.ManifestVersionProvider;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Parameters;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.Callable;
+
+@Command(description = "Report what a Java heap dump contains as JSON, without writing a sanitized copy",
+        name = SanitizeCommand.ANALYZE_COMMAND,
+        usageHelpAutoWidth = true,
+        mixinStandardHelpOptions = true,
+        versionProvider = ManifestVersionProvider.class)
+public class AnalyzeCommand implements Callable<Void> {
+
+    private static final Logger logger = LogManager.getLogger();
+    // instead of the 100MB sanitization default: the report is a few KB and input streams are read in order
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    @Parameters(index = "0", description = "Input heap dump .hprof, optionally gzip, zip or tar. File or stdin")
+    private File inputFile;
+
+    @Parameters(index = "1", arity = "0..1", description = "JSON report file. Omitted for stdout")
+    private File reportFile;
+
+    @Override
+    public Void call() throws Exception {
+        // report to stdout unless a file is given, with logs moved to stderr
+        SanitizeCommand command = new SanitizeCommand();
+        command.setInputFile(inputFile);
+        command.setOutputFile(reportFile != null ? reportFile : new File("-"));
+        command.setBufferByteSize(BUFFER_SIZE);
+
+        try (StreamFactory streamFactory = newStreamFactory(command)) {
+            logger.info("Analyzing {}", inputFile);
+            Instant now = Instant.now();
+            HeapDumpStatistics statistics = analyze(streamFactory);
+            logger.info("Finished in {}", SanitizeCommandRunner.friendlyDuration(now));
+
+            try (OutputStream output = streamFactory.newOutputStream()) {
+                output.write(statistics.toJson().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return null;
+    }
+
+    // regular files are walked through a channel, skipping record bodies without reading them
+    private HeapDumpStatistics analyze(StreamFactory streamFactory) throws Exception {
+        HeapDumpSanitizer sanitizer = newSanitizer();
+        if (streamFactory.isSeekableInput()) {
+            try (FileChannel inputChannel = streamFactory.newInputChannel()) {
+                sanitizer.setInputChannel(inputChannel);
+                return sanitizer.analyze();
+            }
+        }
+        try (InputStream inputStream = streamFactory.newInputStream()) {
+            sanitizer.setInputStream(inputStream);
+            return sanitizer.analyze();
+        }
+    }
+
+    protected StreamFactory newStreamFactory(SanitizeCommand command) {
+        return new StreamFactory(command);
+    }
+
+    protected HeapDumpSanitizer newSanitizer() {
+        return new HeapDumpSanitizer();
+    }
+
+    public File getInputFile() {
+        return inputFile;
+    }
+
+    public File getReportFile() {
+        return reportFile;
+    }
+
+    public void setInputFile(File inputFile) {
+        this.inputFile = inputFile;
+    }
+
+    public void setReportFile(File reportFile) {
+        this.reportFile = reportFile;
+    }
+}
@@ -0,0 +1,100 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * How primitive arrays are sanitized, by element type, such as {@code byte=text,int=random@1024}.
+ * <br>
+ * Policies are comma separated {@code <type>=<policy>[@<minLength>]} entries where type is a primitive type name
+ * and policy is one of {@code keep}, {@code zero}, {@code text} for the sanitization text or {@code random}. Arrays
+ * shorter than the optional minimum number of elements are kept. Types without a policy keep their defaults:
+ * char and byte arrays are replaced with the sanitization text, other arrays are kept.
+ * <br>
+ * Policies are compiled into tables indexed by element type code, so that deciding on an array costs a lookup.
+ */
+public class ArrayPolicies {
+
+    public static final ArrayPolicies DEFAULT = parse("");
+
+    public enum Policy {
+        KEEP,
+        ZERO,
+        TEXT,
+        RANDOM
+    }
+
+    // by u1 code of the element type
+    private final Policy[] policies = new Policy[BasicType.U1_CODE_LIMIT];
+    private final long[] minLengths = new long[BasicType.U1_CODE_LIMIT];
+
+    private ArrayPolicies() {
+        Arrays.fill(policies, Policy.KEEP);
+        policies[BasicType.CHAR.getU1Code()] = Policy.TEXT;
+        policies[BasicType.BYTE.getU1Code()] = Policy.TEXT;
+    }
+
+    public static ArrayPolicies parse(String text) {
+        ArrayPolicies arrayPolicies = new ArrayPolicies();
+        for (String policy : StringUtils.split(StringUtils.defaultString(text), ',')) {
+            arrayPolicies.add(policy.trim());
+        }
+        return arrayPolicies;
+    }
+
+    private void add(String entry) {
+        String typeName = StringUtils.substringBefore(entry, "=");
+        String policyName = StringUtils.substringBefore(StringUtils.substringAfter(entry, "="), "@");
+        String minLength = entry.contains("@") ? StringUtils.substringAfterLast(entry, "@") : "0";
+        Validate.isTrue(entry.contains("="), "Invalid array policy: %s", entry);
+
+        BasicType type = toEnum(BasicType.class, typeName);
+        Validate.isTrue(type != null && type != BasicType.OBJECT, "Invalid array policy type: %s", entry);
+        Policy policy = toEnum(Policy.class, policyName);
+        Validate.isTrue(policy != null, "Invalid array policy: %s", entry);
+        Validate.isTrue(StringUtils.isNumeric(minLength) && !minLength.isEmpty() && minLength.length() < 19,
+                "Invalid array policy length: %s", entry);
+
+        policies[type.getU1Code()] = policy;
+        minLengths[type.getU1Code()] = Long.parseLong(minLength);
+    }
+
+    private static <E extends Enum<E>> E toEnum(Class<E> enumClass, String name) {
+        try {
+            return Enum.valueOf(enumClass, name.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param elementType u1 code of a valid element type
+     * @return how to sanitize an array of numElements elements of elementType
+     */
+    public Policy getPolicy(int elementType, long numElements) {
+        return numElements >= minLengths[elementType] ? policies[elementType] : Policy.KEEP;
+    }
+}
@@ -0,0 +1,97 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.io.output.NullOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes a digest of everything written to it on a background thread, so that hashing the output overlaps with
+ * producing it instead of taking a second pass over the written file.
+ * <br>
+ * Written bytes are copied into a small pool of {@link WriteBehindOutputStream} buffers. {@link #flush()} does not
+ * wait for the digest, so that it can be tee'd with outputs that are flushed often. {@link #finish()} does.
+ */
+public class BackgroundDigest extends OutputStream {
+
+    static final int BUFFER_SIZE = 1024 * 1024;
+    static final int NUM_BUFFERS = 4;
+
+    private final MessageDigest digest;
+    private final WriteBehindOutputStream digestOutput;
+    private byte[] result;
+
+    public BackgroundDigest(String algorithm) {
+        try {
+            digest = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unknown digest algorithm: " + algorithm, e);
+        }
+        digestOutput = new WriteBehindOutputStream(new DigestOutputStream(new NullOutputStream(), digest),
+                BUFFER_SIZE, NUM_BUFFERS);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        digestOutput.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        digestOutput.write(b, off, len);
+    }
+
+    @Override
+    public void flush() {
+        // the digest is only needed at the end
+    }
+
+    /**
+     * Waits for the background thread to digest everything written so far
+     *
+     * @return the digest. Nothing can be written afterwards
+     */
+    public byte[] finish() throws IOException {
+        if (result == null) {
+            digestOutput.close();
+            result = digest.digest();
+        }
+        return result.clone();
+    }
+
+    @Override
+    public void close() throws IOException {
+        digestOutput.close();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (result != null) {
+            throw new IOException("Digest already finished");
+        }
+    }
+}
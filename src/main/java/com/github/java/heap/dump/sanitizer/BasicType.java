@@ -20,63 +20,65 @@
 
 package com.github.java.heap.dump.sanitizer;
 
+/**
+ * Basic types of heap dump values. Lookups by u1 code go through tables indexed by the code, since they happen
+ * for every field and array of a dump.
+ */
 public enum BasicType {
-    OBJECT(2),
-    BOOLEAN(4),
-    CHAR(5),
-    FLOAT(6),
-    DOUBLE(7),
-    BYTE(8),
-    SHORT(9),
-    INT(10),
-    LONG(11);
+    OBJECT(2, 0),
+    BOOLEAN(4, 1),
+    CHAR(5, 2),
+    FLOAT(6, 4),
+    DOUBLE(7, 8),
+    BYTE(8, 1),
+    SHORT(9, 2),
+    INT(10, 4),
+    LONG(11, 8);
+
+    /**
+     * Exclusive upper bound of u1 codes, for tables indexed by code
+     */
+    public static final int U1_CODE_LIMIT = 12;
+
+    private static final BasicType[] BY_U1_CODE = new BasicType[U1_CODE_LIMIT];
+    // value sizes by u1 code. 0 for unknown codes, -1 for object ids whose size is per dump
+    private static final int[] VALUE_SIZES = new int[U1_CODE_LIMIT];
+
+    static {
+        for (BasicType basicType : values()) {
+            BY_U1_CODE[basicType.u1Code] = basicType;
+            VALUE_SIZES[basicType.u1Code] = basicType == OBJECT ? -1 : basicType.valueSize;
+        }
+    }
 
     private final int u1Code;
+    private final int valueSize;
 
     public static int findValueSize(int u1Code, int idSize) {
-        BasicType basicType = findByU1Code(u1Code);
-        return basicType.getValueSize(idSize);
+        int valueSize = u1Code >= 0 && u1Code < U1_CODE_LIMIT ? VALUE_SIZES[u1Code] : 0;
+        if (valueSize > 0) {
+            return valueSize;
+        }
+        if (valueSize < 0) {
+            return idSize;
+        }
+        throw new IllegalArgumentException("Unknown basic type code: " + u1Code);
     }
 
-    private BasicType(int u1Code) {
+    public static BasicType findByU1Code(int u1Code) {
+        BasicType basicType = u1Code >= 0 && u1Code < U1_CODE_LIMIT ? BY_U1_CODE[u1Code] : null;
+        if (basicType == null) {
+            throw new IllegalArgumentException("Unknown basic type code: " + u1Code);
+        }
+        return basicType;
+    }
+
+    private BasicType(int u1Code, int valueSize) {
         this.u1Code = u1Code;
+        this.valueSize = valueSize;
     }
 
     public int getU1Code() {
         return u1Code;
     }
-
-    private int getValueSize(int idSize) {
-        switch (this) {
-            case OBJECT:
-                return idSize;
-            case BOOLEAN:
-                return 1;
-            case CHAR:
-                return 2;
-            case FLOAT:
-                return 4;
-            case DOUBLE:
-                return 8;
-            case BYTE:
-                return 1;
-            case SHORT:
-                return 2;
-            case INT:
-                return 4;
-            case LONG:
-                return 8;
-            default:
-                throw new IllegalArgumentException("Unknown basic type: " + this);
-        }
-    }
-
-    private static BasicType findByU1Code(int u1Code) {
-        for (BasicType basicType : BasicType.values()) {
-            if (basicType.u1Code == u1Code) {
-                return basicType;
-            }
-        }
-        throw new IllegalArgumentException("Unknown basic type code: " + u1Code);
-    }
 }
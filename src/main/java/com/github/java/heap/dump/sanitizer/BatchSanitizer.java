@@ -0,0 +1,245 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sanitizes every heap dump of a directory, or of a glob such as {@code dumps/*.hprof.gz}, in one JVM.
+ * <br>
+ * Jobs run on a bounded pool, largest files first, so that total runtime is bounded by the biggest dump rather than
+ * by the sum of all dumps. Concurrent jobs also share a memory budget: each one reserves an estimate of its buffers
+ * before starting, and waits while the budget is used up by others.
+ */
+public class BatchSanitizer {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    static final String DEFAULT_GLOB = "*.hprof*";
+    private static final String[] COMPRESSED_SUFFIXES = { ".gz", ".zip" };
+    private static final int DECOMPRESSION_MEMORY = 4 * 1024 * 1024;
+    private static final int BUDGET_UNIT = 1024;
+
+    private final SanitizeCommand command;
+
+    public BatchSanitizer(SanitizeCommand command) {
+        this.command = command;
+    }
+
+    public void sanitize() throws IOException {
+        Validate.isTrue(command.getJobs() >= 0, "Invalid number of jobs");
+        Validate.isTrue(command.getMemoryBudgetByteSize() > 0, "Invalid memory budget");
+        List<Path> inputFiles = findInputFiles();
+        validateOutputFiles(inputFiles);
+        if (!command.isInPlace()) {
+            Files.createDirectories(command.getOutputFile().toPath());
+        }
+
+        logger.info("Sanitizing {} heap dumps with {} jobs", inputFiles.size(), getJobs(command));
+
+        Semaphore memoryBudget = new Semaphore(toBudgetUnits(command.getMemoryBudgetByteSize()), true);
+        AtomicInteger numFailed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(getJobs(command));
+        try {
+            // a FIFO queue keeps the largest first order
+            List<Future<?>> futures = new ArrayList<>();
+            for (Path inputFile : inputFiles) {
+                futures.add(executor.submit(() -> runJob(inputFile, memoryBudget, numFailed)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while sanitizing heap dumps");
+        } catch (ExecutionException e) {
+            throw new IOException("batch job failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        Validate.validState(numFailed.get() == 0, "%s of %s heap dumps failed to sanitize",
+                numFailed.get(), inputFiles.size());
+    }
+
+    private void runJob(Path inputFile, Semaphore memoryBudget, AtomicInteger numFailed) {
+        SanitizeCommand jobCommand = command.forFiles(inputFile.toFile(), outputFile(inputFile));
+        int permits = Math.min(toBudgetUnits(jobMemory(jobCommand)), toBudgetUnits(command.getMemoryBudgetByteSize()));
+        try {
+            memoryBudget.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            newRunner(jobCommand).run();
+        } catch (Exception e) {
+            numFailed.incrementAndGet();
+            logger.error("Failed to sanitize {}", inputFile, e);
+        } finally {
+            memoryBudget.release(permits);
+        }
+    }
+
+    protected SanitizeCommandRunner newRunner(SanitizeCommand jobCommand) {
+        return new SanitizeCommandRunner(jobCommand);
+    }
+
+    /**
+     * @return regular files matching the input directory or glob, largest first
+     */
+    List<Path> findInputFiles() throws IOException {
+        Path input = command.getInputFile().toPath();
+        Path directory = Files.isDirectory(input) ? input : input.toAbsolutePath().getParent();
+        String glob = Files.isDirectory(input) ? DEFAULT_GLOB : input.getFileName().toString();
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+
+        List<FileSize> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file) && matcher.matches(file.getFileName())) {
+                    files.add(new FileSize(file, Files.size(file)));
+                }
+            }
+        }
+        files.sort(Comparator.comparingLong((FileSize file) -> file.size).reversed());
+
+        List<Path> inputFiles = new ArrayList<>(files.size());
+        files.forEach(file -> inputFiles.add(file.path));
+        return inputFiles;
+    }
+
+    // jobs run concurrently, so inputs such as heap.hprof and heap.hprof.gz must not share an output file
+    void validateOutputFiles(List<Path> inputFiles) {
+        if (command.isInPlace()) {
+            return;
+        }
+        Map<File, Path> inputsByOutput = new HashMap<>();
+        for (Path inputFile : inputFiles) {
+            File outputFile = outputFile(inputFile);
+            Path other = inputsByOutput.putIfAbsent(outputFile, inputFile);
+            Validate.isTrue(other == null, "Heap dumps %s and %s would both be sanitized to %s", other, inputFile,
+                    outputFile);
+        }
+    }
+
+    // null for in-place sanitization
+    File outputFile(Path inputFile) {
+        return command.isInPlace()
+                ? null
+                : new File(command.getOutputFile(), outputName(command, inputFile));
+    }
+
+    /*
+     * Output keeps the input name, without the suffix of a decompressed input and with the suffix of
+     * compressed output
+     */
+    static String outputName(SanitizeCommand command, Path inputFile) {
+        String name = inputFile.getFileName().toString();
+        if (StringUtils.endsWithAny(name, COMPRESSED_SUFFIXES)) {
+            name = name.substring(0, name.lastIndexOf('.'));
+        }
+        if (command.isZipOutput()) {
+            name += ".zip";
+        } else if (command.isGzipOutput()) {
+            name += ".gz";
+        }
+        return name;
+    }
+
+    /*
+     * Estimated heap used by the buffers of a job. Plain heap dumps are memory mapped and written through channel
+     * buffers, while streamed input and output each go through a buffer of the configured size. Strings-only jobs
+     * also reserve the off-heap memory of their String value ids
+     */
+    static long jobMemory(SanitizeCommand jobCommand) {
+        boolean plainInput = !jobCommand.isTarInput() && !jobCommand.isTarOutput() && isPlainFile(jobCommand);
+        boolean plainOutput = !jobCommand.isZipOutput() && !jobCommand.isGzipOutput();
+
+        long memory = 0;
+        if (plainInput && (plainOutput || jobCommand.isInPlace())) {
+            memory += (long) HeapDumpSanitizer.CHANNEL_BUFFER_SIZE * jobCommand.getThreads();
+        } else {
+            memory += plainInput ? 0 : jobCommand.getBufferByteSize() + DECOMPRESSION_MEMORY;
+            memory += jobCommand.getBufferByteSize();
+            if (jobCommand.isAsyncIo()) {
+                memory += 2L * SanitizeCommandRunner.ASYNC_BUFFER_SIZE * SanitizeCommandRunner.ASYNC_NUM_BUFFERS;
+            }
+        }
+        if (jobCommand.isStringsOnly()) {
+            memory += jobCommand.getStringIdsMemoryByteSize();
+        }
+        if (jobCommand.getTokenKeyFile() != null) {
+            memory += jobCommand.getTokenCacheMemoryByteSize()
+                    + (long) HeapDumpSanitizer.CHANNEL_BUFFER_SIZE * jobCommand.getThreads();
+        }
+        return memory;
+    }
+
+    private static boolean isPlainFile(SanitizeCommand jobCommand) {
+        try {
+            return InputFormat.detect(jobCommand.getInputFile().toPath()) == InputFormat.HPROF;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // at least one unit, so that even tiny jobs are accounted for
+    private static int toBudgetUnits(long bytes) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, bytes / BUDGET_UNIT));
+    }
+
+    static int getJobs(SanitizeCommand command) {
+        return command.getJobs() > 0 ? command.getJobs() : Runtime.getRuntime().availableProcessors();
+    }
+
+    private static class FileSize {
+        final Path path;
+        final long size;
+
+        FileSize(Path path, long size) {
+            this.path = path;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import com.github.java.heap.dump.sanitizer.FieldRules.Action;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Cache of the instance field ranges that {@link FieldRules} sanitize, by class object id.
+ * <br>
+ * It is fed, in heap dump order, with the UTF8 symbols and LOAD_CLASS records that name classes and fields, and with
+ * the CLASS_DUMP records that list the fields of each class. Only symbols that rules refer to are kept. An instance
+ * holds the field values of its class followed by those of its super classes, so its layout is resolved once per
+ * class from the super class chain, and then looked up with a single primitive keyed probe per instance.
+ */
+class ClassLayouts {
+
+    /**
+     * Instance layout without any sanitized field
+     */
+    static final FieldLayout NO_FIELDS = new FieldLayout(new int[0], new int[0], new Action[0]);
+
+    private final FieldRules rules;
+
+    // symbol id -> symbol, for the names rules refer to
+    private final LongObjectHashMap<String> symbols = new LongObjectHashMap<>();
+    // class object id -> class rules
+    private final LongObjectHashMap<Map<String, Action>> classRules = new LongObjectHashMap<>();
+    private final LongObjectHashMap<ClassInfo> classes = new LongObjectHashMap<>();
+    private final LongObjectHashMap<FieldLayout> layouts = new LongObjectHashMap<>();
+    private volatile boolean frozen;
+
+    ClassLayouts(FieldRules rules) {
+        this.rules = rules;
+    }
+
+    FieldRules getRules() {
+        return rules;
+    }
+
+    void addSymbol(long id, String symbol) {
+        if (rules.isSymbol(symbol)) {
+            symbols.put(id, symbol);
+        }
+    }
+
+    void addLoadClass(long classId, long nameId) {
+        String className = symbols.get(nameId);
+        Map<String, Action> rulesOfClass = className != null ? rules.getClassRules(className) : null;
+        if (rulesOfClass != null) {
+            classRules.put(classId, rulesOfClass);
+        }
+    }
+
+    /**
+     * @param fieldNameIds symbol ids of the instance fields, in dump order
+     * @param fieldSizes value sizes of the instance fields, 0 for object references
+     */
+    void addClass(long classId, long superClassId, long[] fieldNameIds, int[] fieldSizes, int idSize) {
+        if (frozen) {
+            return; // already collected by a pre-pass
+        }
+        Map<String, Action> rulesOfClass = classRules.get(classId);
+        Action[] actions = null;
+        if (rulesOfClass != null) {
+            actions = new Action[fieldNameIds.length];
+            for (int i = 0; i < fieldNameIds.length; i++) {
+                if (fieldSizes[i] > 0) {
+                    actions[i] = FieldRules.getAction(rulesOfClass, symbols.get(fieldNameIds[i]));
+                }
+            }
+        }
+        int[] sizes = Arrays.copyOf(fieldSizes, fieldSizes.length);
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = sizes[i] > 0 ? sizes[i] : idSize;
+        }
+        classes.put(classId, new ClassInfo(superClassId, sizes, actions));
+    }
+
+    /**
+     * @return sanitized field ranges of instances of the class. null if the class or one of its super classes
+     *         has not been dumped yet
+     */
+    FieldLayout get(long classId) {
+        FieldLayout layout = layouts.get(classId);
+        if (layout == null && !frozen) {
+            layout = resolve(classId);
+            if (layout != null) {
+                layouts.put(classId, layout);
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * Resolves the layouts of all dumped classes, after which lookups never modify the cache and are safe to
+     * share between threads
+     */
+    void freeze() {
+        classes.forEach((classId, info) -> get(classId));
+        frozen = true;
+    }
+
+    private FieldLayout resolve(long classId) {
+        int numRanges = 0;
+        int depth = 0;
+        for (long id = classId; id != 0; id = classes.get(id).superClassId) {
+            ClassInfo info = classes.get(id);
+            if (info == null || ++depth > classes.size()) {
+                return null; // not dumped yet, or a corrupt cyclic hierarchy
+            }
+            numRanges += info.numActions();
+        }
+        if (numRanges == 0) {
+            return NO_FIELDS;
+        }
+
+        int[] offsets = new int[numRanges];
+        int[] lengths = new int[numRanges];
+        Action[] actions = new Action[numRanges];
+        int range = 0;
+        int offset = 0;
+        for (long id = classId; id != 0; id = classes.get(id).superClassId) {
+            ClassInfo info = classes.get(id);
+            for (int i = 0; i < info.fieldSizes.length; i++) {
+                if (info.actions != null && info.actions[i] != null) {
+                    offsets[range] = offset;
+                    lengths[range] = info.fieldSizes[i];
+                    actions[range] = info.actions[i];
+                    range++;
+                }
+                offset += info.fieldSizes[i];
+            }
+        }
+        return new FieldLayout(offsets, lengths, actions);
+    }
+
+    private static class ClassInfo {
+        final long superClassId;
+        final int[] fieldSizes;
+        final Action[] actions;
+
+        ClassInfo(long superClassId, int[] fieldSizes, Action[] actions) {
+            this.superClassId = superClassId;
+            this.fieldSizes = fieldSizes;
+            this.actions = actions;
+        }
+
+        int numActions() {
+            int count = 0;
+            if (actions != null) {
+                for (Action action : actions) {
+                    count += action != null ? 1 : 0;
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Sanitized byte ranges of an instance dump's field values, in increasing offset order
+     */
+    static class FieldLayout {
+        final int[] offsets;
+        final int[] lengths;
+        final Action[] actions;
+
+        FieldLayout(int[] offsets, int[] lengths, Action[] actions) {
+            this.offsets = offsets;
+            this.lengths = lengths;
+            this.actions = actions;
+        }
+
+        boolean isEmpty() {
+            return offsets.length == 0;
+        }
+
+        /**
+         * @return end offset of the last sanitized range
+         */
+        int end() {
+            int last = offsets.length - 1;
+            return last < 0 ? 0 : offsets[last] + lengths[last];
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rules that sanitize primitive instance fields of named classes, such as {@code java.lang.String.hash}.
+ * <br>
+ * Rules are comma separated {@code <class>.<field>[=<action>]} entries. The field may be {@code *} for all primitive
+ * fields of the class, and the action is either {@code zero} (the default) or {@code text} for the sanitization text.
+ * Rules also apply to the fields inherited by subclasses. Object reference fields are never changed.
+ */
+public class FieldRules {
+
+    static final String ALL_FIELDS = "*";
+
+    public enum Action {
+        ZERO,
+        TEXT
+    }
+
+    // class name -> field name or ALL_FIELDS -> action
+    private final Map<String, Map<String, Action>> rules = new HashMap<>();
+    private final Set<String> symbols = new HashSet<>();
+    private final BitSet symbolLengths = new BitSet();
+
+    public static FieldRules parse(String text) {
+        FieldRules fieldRules = new FieldRules();
+        for (String rule : StringUtils.split(text, ',')) {
+            fieldRules.add(rule.trim());
+        }
+        return fieldRules;
+    }
+
+    private void add(String rule) {
+        String target = StringUtils.substringBefore(rule, "=");
+        String action = rule.contains("=") ? StringUtils.substringAfter(rule, "=") : Action.ZERO.name();
+        int separator = target.lastIndexOf('.');
+        Validate.isTrue(separator > 0 && separator < target.length() - 1, "Invalid field rule: %s", rule);
+        Validate.isTrue(StringUtils.equalsAnyIgnoreCase(action, "zero", "text"), "Invalid field rule action: %s", rule);
+
+        String className = target.substring(0, separator);
+        String fieldName = target.substring(separator + 1);
+        rules.computeIfAbsent(className, name -> new HashMap<>())
+                .put(fieldName, Action.valueOf(action.toUpperCase(Locale.ENGLISH)));
+
+        // heap dump symbols name classes with slashes
+        addSymbol(className.replace('.', '/'));
+        if (!ALL_FIELDS.equals(fieldName)) {
+            addSymbol(fieldName);
+        }
+    }
+
+    private void addSymbol(String symbol) {
+        symbols.add(symbol);
+        symbolLengths.set(symbol.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * Cheap pre-check before decoding a UTF8 symbol of numBytes bytes
+     */
+    boolean isSymbolLength(long numBytes) {
+        return numBytes < Integer.MAX_VALUE && symbolLengths.get((int) numBytes);
+    }
+
+    /**
+     * @return true for the class and field names that rules refer to, class names being in heap dump form
+     */
+    boolean isSymbol(String symbol) {
+        return symbols.contains(symbol);
+    }
+
+    /**
+     * @param className class name in heap dump form, with slashes
+     * @return rules of the class by field name, or null if there are none
+     */
+    Map<String, Action> getClassRules(String className) {
+        return rules.get(className.replace('/', '.'));
+    }
+
+    /**
+     * @return the action for a field of the class rules, or null to leave it unchanged
+     */
+    static Action getAction(Map<String, Action> classRules, String fieldName) {
+        Action action = fieldName != null ? classRules.get(fieldName) : null;
+        return action != null ? action : classRules.get(ALL_FIELDS);
+    }
+}
@@ -0,0 +1,101 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.lang3.Validate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a file that is still being written, like tail -f. At the current end of the file, reads block until the file
+ * grows, and only report EOF once it has not grown for the idle timeout.
+ * <br>
+ * The reader is expected to know from the contents when it is done, such as after the HEAP_DUMP_END record, and to
+ * stop reading there instead of waiting for the timeout.
+ */
+public class FollowInputStream extends InputStream {
+
+    static final long POLL_MILLIS = 100;
+
+    private final FileChannel channel;
+    private final long idleTimeoutNanos;
+    private final byte[] singleByte = new byte[1];
+
+    public FollowInputStream(Path file, long idleTimeoutMillis) throws IOException {
+        Validate.isTrue(idleTimeoutMillis >= 0, "Invalid idle timeout: %s", idleTimeoutMillis);
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int numBytes = read(singleByte, 0, 1);
+        return numBytes == -1 ? -1 : singleByte[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+        long idleSince = System.nanoTime();
+        while (true) {
+            int numBytes = channel.read(buffer);
+            if (numBytes > 0) {
+                return numBytes;
+            }
+            if (System.nanoTime() - idleSince >= idleTimeoutNanos) {
+                return -1;
+            }
+            pause();
+        }
+    }
+
+    /**
+     * @return number of bytes written so far and not read yet
+     */
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, channel.size() - channel.position()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void pause() throws InterruptedIOException {
+        try {
+            Thread.sleep(POLL_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while following input");
+        }
+    }
+}
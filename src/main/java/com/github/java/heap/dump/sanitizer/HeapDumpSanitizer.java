@@ -20,16 +20,34 @@
 
 package com.github.java.heap.dump.sanitizer;
 
-import org.apache.commons.io.input.InfiniteCircularInputStream;
+import com.github.java.heap.dump.sanitizer.ArrayPolicies.Policy;
+import com.github.java.heap.dump.sanitizer.ClassLayouts.FieldLayout;
+import com.github.java.heap.dump.sanitizer.FieldRules.Action;
+import com.github.java.heap.dump.sanitizer.SecretMatcher.Scanner;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.output.NullOutputStream;
 import org.apache.commons.lang3.Validate;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.util.function.Consumer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
 
 import static org.apache.commons.lang3.BooleanUtils.isFalse;
 
@@ -59,8 +77,18 @@ public class HeapDumpSanitizer {
 
     private static final int TYPE_BYTE = 8;
     private static final int TYPE_CHAR = 5;
+    private static final int TYPE_OBJECT = 2;
+    private static final int TAG_UTF8 = 0x01;
+    private static final int TAG_LOAD_CLASS = 0x02;
     private static final int TAG_HEAP_DUMP = 0x0C;
     private static final int TAG_HEAP_DUMP_SEGMENT = 0x1C;
+    private static final int TAG_HEAP_DUMP_END = 0x2C;
+    private static final int RECORD_HEADER_SIZE = 1 + 4 + 4;
+    static final int CHANNEL_BUFFER_SIZE = 1024 * 1024;
+    static final int REPLACEMENT_BUFFER_SIZE = 64 * 1024;
+    private static final byte[] ZERO_TILES = new byte[REPLACEMENT_BUFFER_SIZE];
+    static final long DEFAULT_STRING_VALUES_MEMORY_BUDGET = 1024L * 1024 * 1024;
+    static final long DEFAULT_INDEX_MIN_SUB_RECORD_SIZE = 1024L * 1024;
 
     private static final Logger logger = LogManager.getLogger();
 
@@ -68,30 +96,249 @@ public class HeapDumpSanitizer {
     private static final boolean enableSanitization = isFalse(Boolean.getBoolean("disable-sanitization"));
 
     private InputStream inputStream;
+    private FileChannel inputChannel;
     private OutputStream outputStream;
-    private Consumer<Long> progressMonitor;
+    private FileChannel outputChannel;
+    private LongAdder numBytesWritten = new LongAdder();
     private String sanitizationText;
+    private byte[] replacementTiles;
+    private ArrayPolicies arrayPolicies = ArrayPolicies.DEFAULT;
+    private final ThreadLocal<byte[]> randomTiles = ThreadLocal.withInitial(() -> new byte[REPLACEMENT_BUFFER_SIZE]);
+    private SecretMatcher secretMatcher;
+    private ThreadLocal<SecretScan> secretScans;
+    private byte[] tokenKey;
+    private long tokenCacheMemory;
+    private ThreadLocal<Tokenization> tokenizations;
+    private boolean inPlace;
+    private boolean strict;
+    private boolean follow;
+    private boolean verify;
+    private SanitizationSummary summary;
+    private OutputStream indexOutput;
+    private long indexMinSubRecordSize = DEFAULT_INDEX_MIN_SUB_RECORD_SIZE;
+    private RecordIndex recordIndex;
+    private long numRecords;
+    private long numSubRecords;
+    private FieldRules fieldRules;
+    private ClassLayouts classLayouts;
+    private boolean stringsOnly;
+    private long stringValuesMemoryBudget = DEFAULT_STRING_VALUES_MEMORY_BUDGET;
+    private StringValues stringValues;
+    private boolean scanning;
+    private HeapDumpStatistics statistics;
+    private boolean collectingClasses;
+    private byte[] symbolBuffer = new byte[64];
+    private int threads = 1;
 
     public void setInputStream(InputStream inputStream) {
         this.inputStream = inputStream;
     }
 
+    /**
+     * Seekable alternative to {@link #setInputStream(InputStream)}. Input is then read through memory mapping.
+     */
+    public void setInputChannel(FileChannel inputChannel) {
+        this.inputChannel = inputChannel;
+    }
+
     public void setOutputStream(OutputStream outputStream) {
         this.outputStream = outputStream;
     }
 
-    public void setProgressMonitor(Consumer<Long> numBytesWrittenMonitor) {
-        this.progressMonitor = numBytesWrittenMonitor;
+    /**
+     * Seekable alternative to {@link #setOutputStream(OutputStream)}. Together with an input channel, unchanged
+     * ranges are then transferred without copying through the Java heap. Required for multi-threaded sanitization.
+     */
+    public void setOutputChannel(FileChannel outputChannel) {
+        this.outputChannel = outputChannel;
+    }
+
+    /**
+     * Counter of bytes written so far, including bytes left unchanged by in-place sanitization.
+     * It may be sampled from other threads to report progress
+     */
+    public void setNumBytesWritten(LongAdder numBytesWritten) {
+        this.numBytesWritten = numBytesWritten;
     }
 
     public void setSanitizationText(String sanitizationText) {
         this.sanitizationText = sanitizationText;
     }
 
+    /**
+     * How primitive arrays are sanitized by element type. Defaults to {@link ArrayPolicies#DEFAULT}
+     */
+    public void setArrayPolicies(ArrayPolicies arrayPolicies) {
+        this.arrayPolicies = arrayPolicies;
+    }
+
+    /**
+     * Secrets to redact from arrays that would otherwise be replaced with the sanitization text. Only matching
+     * spans are then replaced and the rest of these arrays is kept. May be null
+     */
+    public void setSecretMatcher(SecretMatcher secretMatcher) {
+        this.secretMatcher = secretMatcher;
+    }
+
+    /**
+     * Key for replacing arrays that would otherwise be replaced with the sanitization text with tokens of the same
+     * length, equal for equal contents. May be null
+     */
+    public void setTokenKey(byte[] tokenKey) {
+        this.tokenKey = tokenKey;
+    }
+
+    /**
+     * Memory shared by the per thread caches of the tokens of repeated array contents
+     */
+    public void setTokenCacheMemory(long tokenCacheMemory) {
+        this.tokenCacheMemory = tokenCacheMemory;
+    }
+
+    /**
+     * Sanitizes the input channel itself instead of writing to the output stream
+     */
+    public void setInPlace(boolean inPlace) {
+        this.inPlace = inPlace;
+    }
+
+    /**
+     * Validates record contents, such as each element of object arrays, instead of copying them in bulk
+     */
+    public void setStrict(boolean strict) {
+        this.strict = strict;
+    }
+
+    /**
+     * Input is still being written, as with {@link FollowInputStream}. Sanitization then ends with the HEAP_DUMP_END
+     * record instead of waiting for EOF
+     */
+    public void setFollow(boolean follow) {
+        this.follow = follow;
+    }
+
+    /**
+     * Detects overruns while writing: no heap dump sub-record runs past its record, each record ends where its
+     * length says, and the output is as large as the input. Lengths are still trusted to find records, so this catches
+     * truncated or inconsistent dumps rather than proving the output well formed. An unsigned SHA-256 of the output is
+     * computed on a background thread. Requires a single thread. The result is then available from
+     * {@link #getSummary()}
+     */
+    public void setVerify(boolean verify) {
+        this.verify = verify;
+    }
+
+    /**
+     * @return the outcome of a checked sanitization, or null without {@link #setVerify(boolean)}
+     */
+    public SanitizationSummary getSummary() {
+        return summary;
+    }
+
+    /**
+     * Writes a {@link RecordIndex} of the output to indexOutput while sanitizing, which is flushed but left open.
+     * Requires a single thread
+     */
+    public void setIndexOutput(OutputStream indexOutput) {
+        this.indexOutput = indexOutput;
+    }
+
+    /**
+     * Size from which heap dump sub-records, such as large arrays, are indexed along with top-level records
+     */
+    public void setIndexMinSubRecordSize(long indexMinSubRecordSize) {
+        this.indexMinSubRecordSize = indexMinSubRecordSize;
+    }
+
+    /**
+     * Rules for primitive instance fields to sanitize, on top of char and byte arrays. May be null
+     */
+    public void setFieldRules(FieldRules fieldRules) {
+        this.fieldRules = fieldRules;
+    }
+
+    /**
+     * Sanitizes only the byte and char arrays that hold java.lang.String contents, leaving other arrays such as
+     * compressed payloads and buffers intact. Requires an input channel, which is read twice
+     */
+    public void setStringsOnly(boolean stringsOnly) {
+        this.stringsOnly = stringsOnly;
+    }
+
+    /**
+     * Memory, outside the Java heap, for the ids of String value arrays collected by string-only sanitization
+     */
+    public void setStringValuesMemoryBudget(long stringValuesMemoryBudget) {
+        this.stringValuesMemoryBudget = stringValuesMemoryBudget;
+    }
+
+    /**
+     * Number of threads sanitizing heap dump records concurrently. Requires an input channel and either
+     * an output channel or in-place sanitization
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
     public void sanitize() throws IOException {
         Validate.notEmpty(sanitizationText);
+        Validate.isTrue(threads > 0, "Invalid number of threads: %s", threads);
+        Validate.isTrue(!verify || threads == 1, "Verification requires a single thread");
+        Validate.isTrue(indexOutput == null || threads == 1, "Indexing requires a single thread");
+        Validate.isTrue(secretMatcher == null || tokenKey == null, "Choose either secrets or tokenization");
+        replacementTiles = tile(sanitizationText.getBytes(StandardCharsets.UTF_8));
+        classLayouts = fieldRules == null || fieldRules.isEmpty() ? null : new ClassLayouts(fieldRules);
+        stringValues = stringsOnly ? new StringValues(stringValuesMemoryBudget) : null;
+        secretScans = secretMatcher != null ? ThreadLocal.withInitial(() -> new SecretScan(secretMatcher)) : null;
+        tokenizations = tokenKey != null
+                ? ThreadLocal.withInitial(() -> new Tokenization(new Tokenizer(tokenKey, tokenCacheMemory / threads)))
+                : null;
+        collectingClasses = classLayouts != null;
+        try {
+            if (stringsOnly || (threads > 1 && classLayouts != null)) {
+                scan();
+            }
+            if (threads > 1) {
+                sanitizeInParallel();
+            } else {
+                sanitizeSequentially();
+            }
+        } finally {
+            stringValues = null; // off-heap memory is released with the set
+        }
+    }
 
-        Pipe pipe = new Pipe(inputStream, outputStream, progressMonitor);
+    /**
+     * Walks the heap dump without writing anything and collects what it contains. Record bodies that are not needed
+     * to find the next record, such as array contents, are skipped: with an input channel they are not even read.
+     * Requires an input channel or an input stream
+     */
+    public HeapDumpStatistics analyze() throws IOException {
+        Pipe pipe = inputChannel != null
+                ? new ScanPipe(new MappedInput(inputChannel))
+                : new Pipe(inputStream, new NullOutputStream(), numBytesWritten);
+        statistics = new HeapDumpStatistics();
+        scanning = true;
+        try {
+            copyHeader(pipe);
+            copyRecords(pipe);
+            return statistics;
+        } finally {
+            scanning = false;
+            statistics = null;
+        }
+    }
+
+    private void sanitizeSequentially() throws IOException {
+        CountingInputStream countingInput = verify && inputChannel == null
+                ? new CountingInputStream(inputStream)
+                : null;
+        Pipe pipe = newPipe(countingInput != null ? countingInput : inputStream);
+        BackgroundDigest digest = verify ? new BackgroundDigest("SHA-256") : null;
+        if (digest != null) {
+            pipe.setDigestOutput(digest);
+        }
+        recordIndex = indexOutput != null ? new RecordIndex(indexOutput, indexMinSubRecordSize) : null;
 
         /*
          * The basic fields in the binary output are u1 (1 byte), u2 (2 byte), u4 (4 byte), and u8 (8 byte).
@@ -102,22 +349,53 @@ public class HeapDumpSanitizer {
          * u4 high word of number of milliseconds since 0:00 GMT, 1/1/70
          * u4 low word of number of milliseconds since 0:00 GMT, 1/1/70
          */
+        try {
+            copyHeader(pipe);
+            copyRecords(pipe);
+            pipe.flush();
+            if (recordIndex != null) {
+                recordIndex.finish();
+                logger.info("Index entries: {}", recordIndex.getNumEntries());
+            }
+            if (verify) {
+                long inputSize = countingInput != null ? countingInput.getByteCount() : inputChannel.size();
+                long outputSize = pipe.getOutputPosition();
+                Validate.isTrue(outputSize == inputSize, "Output size %s differs from input size %s", outputSize,
+                        inputSize);
+                summary = new SanitizationSummary(outputSize, numRecords, numSubRecords, digest.finish());
+                logger.info("{}", summary);
+            }
+        } finally {
+            recordIndex = null;
+            if (digest != null) {
+                digest.close();
+            }
+        }
+    }
+
+    private void copyHeader(Pipe pipe) throws IOException {
         String version = pipe.pipeNullTerminatedString().trim();
         logger.debug("Heap Dump Version: {}", version);
 
         pipe.setIdSize((int) pipe.pipeU4());
         logger.debug("Id Size: {}", pipe.getIdSize());
         pipe.pipe(8);
+        if (statistics != null) {
+            statistics.setHeader(version, pipe.getIdSize());
+        }
+    }
 
-        /*
-         * Followed by a sequence of records that look like:
-         * u1		TAG: denoting the type of the record
-         * u4		TIME: number of microseconds since the time stamp in the header
-         * u4		LENGTH: number of bytes that follow this u4 field and belong to this record
-         * [u1]*	BODY: as many bytes as specified in the above u4 field
-         */
-
+    /*
+     * Followed by a sequence of records that look like:
+     * u1		TAG: denoting the type of the record
+     * u4		TIME: number of microseconds since the time stamp in the header
+     * u4		LENGTH: number of bytes that follow this u4 field and belong to this record
+     * [u1]*	BODY: as many bytes as specified in the above u4 field
+     */
+    private void copyRecords(Pipe pipe) throws IOException {
+        boolean verifying = verify && !scanning;
         while (true) {
+            long recordStart = pipe.getOutputPosition();
             int tag = pipe.pipeU1IfPossible();
             if (tag == -1) {
                 break;
@@ -127,127 +405,392 @@ public class HeapDumpSanitizer {
             long length = pipe.pipeU4();
             logger.debug("Tag: {}", tag);
             logger.debug("Length: {}", length);
+            if (statistics != null) {
+                statistics.addRecord(tag, RECORD_HEADER_SIZE + length);
+            }
+            if (recordIndex != null) {
+                recordIndex.addRecord(recordStart, tag, RECORD_HEADER_SIZE + length);
+            }
 
             if (isHeapDumpRecord(tag)) {
                 Pipe heapPipe = pipe.newInputBoundedPipe(length);
-                copyHeapDumpRecord(heapPipe);
+                long numHeapSubRecords = copyHeapDumpRecord(heapPipe);
+                if (verifying) {
+                    Validate.isTrue(heapPipe.getNumBytesTruncated() == 0,
+                            "Sub-record overruns the heap dump record at offset %s", recordStart);
+                    numSubRecords += numHeapSubRecords;
+                }
+            } else if (collectingClasses && tag == TAG_UTF8) {
+                copyUtf8(pipe, length);
+            } else if (collectingClasses && tag == TAG_LOAD_CLASS) {
+                copyLoadClass(pipe, length);
             } else {
                 pipe.pipe(length);
             }
+            if (verifying) {
+                long recordSize = pipe.getOutputPosition() - recordStart;
+                Validate.isTrue(recordSize == RECORD_HEADER_SIZE + length,
+                        "Record at offset %s is %s bytes instead of %s", recordStart, recordSize,
+                        RECORD_HEADER_SIZE + length);
+                numRecords++;
+            }
+
+            if (follow && tag == TAG_HEAP_DUMP_END) {
+                logger.debug("Heap dump end");
+                break;
+            }
         }
     }
 
-    private void copyHeapDumpRecord(Pipe pipe) throws IOException {
-        while (true) {
-            int tag = pipe.pipeU1IfPossible();
-            if (tag == -1) {
-                break;
+    /*
+     * UTF8	 * 	0x01
+     * 	ID	ID for this string
+     * 	[u1]*	UTF8 characters for string (NOT NULL terminated)
+     */
+    private void copyUtf8(Pipe pipe, long length) throws IOException {
+        long id = pipe.pipeId();
+        long numBytes = length - pipe.getIdSize();
+        boolean layoutSymbol = classLayouts != null && classLayouts.getRules().isSymbolLength(numBytes);
+        boolean stringSymbol = stringValues != null && stringValues.isSymbolLength(numBytes);
+        if (!layoutSymbol && !stringSymbol) {
+            pipe.pipe(numBytes);
+            return;
+        }
+        if (symbolBuffer.length < numBytes) {
+            symbolBuffer = new byte[(int) numBytes];
+        }
+        pipe.pipe(symbolBuffer, (int) numBytes);
+        String symbol = new String(symbolBuffer, 0, (int) numBytes, StandardCharsets.UTF_8);
+        if (layoutSymbol) {
+            classLayouts.addSymbol(id, symbol);
+        }
+        if (stringSymbol) {
+            stringValues.addSymbol(id, symbol);
+        }
+    }
+
+    /*
+     * LOAD CLASS	 * 	0x02
+     * 	u4	class serial number
+     * 	ID	class object ID
+     * 	u4	stack trace serial number
+     * 	ID	class name ID
+     */
+    private void copyLoadClass(Pipe pipe, long length) throws IOException {
+        pipe.pipeU4();
+        long classId = pipe.pipeId();
+        pipe.pipeU4();
+        long nameId = pipe.pipeId();
+        pipe.pipe(length - 4 - 4 - 2L * pipe.getIdSize());
+        if (classLayouts != null) {
+            classLayouts.addLoadClass(classId, nameId);
+        }
+        if (stringValues != null) {
+            stringValues.addLoadClass(classId, nameId);
+        }
+    }
+
+    private Pipe newPipe(InputStream inputStream) throws IOException {
+        if (inPlace) {
+            Validate.notNull(inputChannel, "in-place sanitization requires an input channel");
+            return new InPlacePipe(inputChannel, numBytesWritten);
+        }
+        if (inputChannel != null && outputChannel != null) {
+            OutputStream output = new BufferedOutputStream(Channels.newOutputStream(outputChannel), CHANNEL_BUFFER_SIZE);
+            return new MappedPipe(new MappedInput(inputChannel), output, outputChannel, numBytesWritten);
+        }
+        if (inputChannel != null) {
+            return new MappedPipe(inputChannel, outputStream, numBytesWritten);
+        }
+        return new Pipe(inputStream, outputStream, numBytesWritten);
+    }
+
+    /*
+     * A header-only scan splits the dump into heap dump records and plain copy ranges in between.
+     * Ranges are then sanitized concurrently, each one written at its own offset of the output.
+     */
+    private void sanitizeInParallel() throws IOException {
+        Validate.notNull(inputChannel, "multi-threaded sanitization requires an input channel");
+        Validate.isTrue(inPlace || outputChannel != null, "multi-threaded sanitization requires an output channel");
+
+        MappedInput input = new MappedInput(inputChannel);
+        int idSize = readHeader(input);
+        List<RecordRange> ranges = scanRecords(input);
+        ranges.sort(Comparator.comparingLong((RecordRange range) -> range.length).reversed());
+        logger.debug("Record ranges: {}", ranges.size());
+
+        if (!inPlace && input.size() > 0) {
+            // pre-size output so that ranges can be written in any order
+            outputChannel.write(ByteBuffer.wrap(new byte[1]), input.size() - 1);
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (RecordRange range : ranges) {
+            tasks.add(() -> {
+                sanitizeRange(range, idSize);
+                return null;
+            });
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
             }
-            logger.debug("Heap Dump Tag: {}", tag);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while sanitizing");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
 
-            pipe.pipeId();
-            switch (tag) {
-                case 0xFF:
-                    break;
+    /*
+     * Read-only pre-pass. String value ids must all be known before the first array is sanitized, and class layouts
+     * before ranges are sanitized concurrently, since instances can be in other ranges than their classes.
+     * The second pass then neither collects classes nor modifies what was collected
+     */
+    private void scan() throws IOException {
+        Validate.notNull(inputChannel, "string-only or multi-threaded field sanitization requires an input channel");
+        Pipe pipe = new ScanPipe(new MappedInput(inputChannel));
+        scanning = true;
+        collectingClasses = true;
+        try {
+            copyHeader(pipe);
+            copyRecords(pipe);
+        } finally {
+            scanning = false;
+            collectingClasses = false;
+        }
+        if (classLayouts != null) {
+            classLayouts.freeze();
+        }
+        if (stringValues != null) {
+            logger.info("String values: {}", stringValues.size());
+        }
+    }
 
-                case 0x01:
-                    pipe.pipeId();
-                    break;
+    // returns id size
+    private int readHeader(MappedInput input) throws IOException {
+        int u1;
+        do {
+            u1 = input.readU1();
+        } while (u1 > 0); // format name and version
+        int idSize = input.readInt();
+        input.skip(8); // timestamp
+        return idSize;
+    }
 
-                case 0x02:
-                case 0x03:
-                    pipe.pipe(4 + 4);
-                    break;
+    private List<RecordRange> scanRecords(MappedInput input) throws IOException {
+        List<RecordRange> ranges = new ArrayList<>();
+        long copyStart = 0; // file header is copied as is
+        while (input.position() < input.size()) {
+            long recordStart = input.position();
+            int tag = input.readU1();
+            input.skip(4); // timestamp
+            long length = Integer.toUnsignedLong(input.readInt());
+            input.skip(length);
 
-                case 0x04:
-                    pipe.pipeU4();
-                    break;
+            if (isHeapDumpRecord(tag)) {
+                if (copyStart < recordStart) {
+                    ranges.add(new RecordRange(copyStart, recordStart - copyStart, false));
+                }
+                ranges.add(new RecordRange(recordStart, RECORD_HEADER_SIZE + length, true));
+                copyStart = input.position();
+            }
+        }
+        if (copyStart < input.size()) {
+            ranges.add(new RecordRange(copyStart, input.size() - copyStart, false));
+        }
+        return ranges;
+    }
 
-                case 0x05:
-                    break;
+    private void sanitizeRange(RecordRange range, int idSize) throws IOException {
+        MappedInput input = new MappedInput(inputChannel);
+        input.position(range.offset);
 
-                case 0x06:
-                    pipe.pipeU4();
-                    break;
+        Pipe pipe = newRangePipe(input, range).newInputBoundedPipe(range.length);
+        if (range.heapDump) {
+            pipe.setIdSize(idSize);
+            pipe.pipe(RECORD_HEADER_SIZE);
+            copyHeapDumpRecord(pipe);
+        } else {
+            pipe.pipe(range.length);
+        }
+        pipe.flush();
+    }
 
-                case 0x07:
-                    break;
+    private Pipe newRangePipe(MappedInput input, RecordRange range) {
+        if (inPlace) {
+            return new InPlacePipe(input, inputChannel, numBytesWritten);
+        }
+        PositionalOutputStream channelOutput = new PositionalOutputStream(outputChannel, range.offset);
+        OutputStream output = new BufferedOutputStream(channelOutput, CHANNEL_BUFFER_SIZE);
+        return new MappedPipe(input, output, channelOutput, numBytesWritten);
+    }
 
-                case 0x08:
-                    pipe.pipe(4 + 4);
-                    break;
+    /*
+     * Sub-record sizes come from the RecordSizes of the dump's id size, selected once from its header, so that
+     * GC roots are copied with a single table lookup and no size is derived from the id size per record
+     */
+    // returns the number of sub-records
+    private long copyHeapDumpRecord(Pipe pipe) throws IOException {
+        RecordSizes sizes = pipe.getRecordSizes();
+        long numSubRecords = 0;
+        while (true) {
+            long subRecordStart = recordIndex != null ? pipe.getOutputPosition() : 0;
+            int tag = pipe.pipeU1IfPossible();
+            if (tag == -1) {
+                return numSubRecords;
+            }
+            numSubRecords++;
+            if (statistics != null) {
+                statistics.addSubRecord(tag);
+            }
+            logger.debug("Heap Dump Tag: {}", tag);
 
+            long objectId = pipe.pipeId();
+            if (sizes.isRoot(tag)) {
+                pipe.pipe(sizes.rootSize(tag));
+                continue;
+            }
+            switch (tag) {
                 case 0x20:
-                    copyHeapDumpClassDump(pipe, tag);
+                    copyHeapDumpClassDump(pipe, objectId);
                     break;
 
                 case 0x21:
-                    copyHeapDumpInstanceDump(pipe, tag);
+                    copyHeapDumpInstanceDump(pipe);
                     break;
 
                 case 0x22:
-                    copyHeapDumpObjectArrayDump(pipe, tag);
+                    copyHeapDumpObjectArrayDump(pipe);
                     break;
 
                 case 0x23:
-                    copyHeapDumpPrimitiveArrayDump(pipe, tag);
+                    copyHeapDumpPrimitiveArrayDump(pipe, objectId);
                     break;
 
                 default:
                     throw new IllegalArgumentException("" + tag);
             }
+            // roots are never large, other sub-records are indexed once their size is known
+            if (recordIndex != null) {
+                recordIndex.addSubRecord(subRecordStart, tag, pipe.getOutputPosition() - subRecordStart);
+            }
         }
     }
 
-    private void copyHeapDumpClassDump(Pipe pipe, int id) throws IOException {
+    private void copyHeapDumpClassDump(Pipe pipe, long classId) throws IOException {
+        RecordSizes sizes = pipe.getRecordSizes();
         pipe.pipeU4(); // stacktrace
-        pipe.pipeId(); // super class object id
-        pipe.pipeId(); // class loader object id
-        pipe.pipeId(); // signers object id
-        pipe.pipeId(); // protection domain
-        pipe.pipeId(); // reserved
-        pipe.pipeId(); // reserved
-        pipe.pipeU4(); // instance size
+        long superClassId = pipe.pipeId(); // super class object id
+        if (strict) {
+            pipe.pipeId(); // class loader object id
+            pipe.pipeId(); // signers object id
+            pipe.pipeId(); // protection domain
+            pipe.pipeId(); // reserved
+            pipe.pipeId(); // reserved
+            pipe.pipeU4(); // instance size
+        } else {
+            pipe.pipe(sizes.classDumpSkipSize);
+        }
 
         int numConstantPoolRecords = pipe.pipeU2();
         for (int i = 0; i < numConstantPoolRecords; i++) {
             pipe.pipeU2();
             int entryType = pipe.pipeU1();
-            pipeBasicType(pipe, entryType);
+            pipe.pipe(sizes.valueSize(entryType));
         }
 
         int numStaticFields = pipe.pipeU2();
         for (int i = 0; i < numStaticFields; i++) {
             pipe.pipeId();
             int entryType = pipe.pipeU1();
-            pipeBasicType(pipe, entryType);
+            pipe.pipe(sizes.valueSize(entryType));
         }
 
         int numInstanceFields = pipe.pipeU2();
+        long[] fieldNameIds = collectingClasses ? new long[numInstanceFields] : null;
+        int[] fieldSizes = collectingClasses ? new int[numInstanceFields] : null;
         for (int i = 0; i < numInstanceFields; i++) {
-            pipe.pipeId();
-            pipe.pipeU1();
+            long nameId = pipe.pipeId();
+            int entryType = pipe.pipeU1();
+            if (collectingClasses) {
+                fieldNameIds[i] = nameId;
+                fieldSizes[i] = entryType == TYPE_OBJECT ? 0 : sizes.valueSize(entryType);
+            }
+        }
+        if (collectingClasses && classLayouts != null) {
+            classLayouts.addClass(classId, superClassId, fieldNameIds, fieldSizes, pipe.getIdSize());
+        }
+        if (collectingClasses && stringValues != null) {
+            stringValues.addClass(classId, fieldNameIds, fieldSizes, pipe.getIdSize());
         }
     }
 
-    private void pipeBasicType(Pipe pipe, int entryType) throws IOException {
-        int valueSize = BasicType.findValueSize(entryType, pipe.getIdSize());
-        pipe.pipe(valueSize);
-    }
-
-    private void copyHeapDumpInstanceDump(Pipe pipe, int id) throws IOException {
+    /*
+     * INSTANCE DUMP	 * 	0x21
+     * 	ID	object ID
+     * 	u4	stack trace serial number
+     * 	ID	class object ID
+     * 	u4	number of bytes that follow
+     * 	[value]*	instance field values (this class, followed by super class, etc)
+     */
+    private void copyHeapDumpInstanceDump(Pipe pipe) throws IOException {
         pipe.pipeU4();
-        pipe.pipeId();
+        long classId = pipe.pipeId();
         long numBytes = pipe.pipeU4();
-        pipe.pipe(numBytes);
+
+        if (scanning && stringValues != null && stringValues.isStringClass(classId)) {
+            collectStringValue(pipe, numBytes);
+            return;
+        }
+        FieldLayout layout = classLayouts != null ? classLayouts.get(classId) : null;
+        if (layout == null || layout.isEmpty() || layout.end() > numBytes) {
+            pipe.pipe(numBytes);
+            return;
+        }
+        int position = 0;
+        for (int i = 0; i < layout.offsets.length; i++) {
+            pipe.pipe(layout.offsets[i] - position);
+            byte[] tiles = layout.actions[i] == Action.ZERO ? ZERO_TILES : replacementTiles;
+            pipe.replace(tiles, layout.lengths[i]);
+            position = layout.offsets[i] + layout.lengths[i];
+        }
+        pipe.pipe(numBytes - position);
     }
 
-    private void copyHeapDumpObjectArrayDump(Pipe pipe, int id) throws IOException {
+    private void collectStringValue(Pipe pipe, long numBytes) throws IOException {
+        int valueOffset = stringValues.getValueOffset();
+        if (valueOffset + pipe.getIdSize() > numBytes) {
+            pipe.pipe(numBytes);
+            return;
+        }
+        pipe.pipe(valueOffset);
+        stringValues.addValue(pipe.pipeId());
+        pipe.pipe(numBytes - valueOffset - pipe.getIdSize());
+    }
+
+    private void copyHeapDumpObjectArrayDump(Pipe pipe) throws IOException {
         pipe.pipeU4();
         long numElements = pipe.pipeU4();
         pipe.pipeId();
-        for (long i = 0; i < numElements; i++) {
-            pipe.pipeId();
+        if (strict) {
+            for (long i = 0; i < numElements; i++) {
+                pipe.pipeId();
+            }
+        } else {
+            pipe.pipe(Math.multiplyExact(numElements, pipe.getIdSize()));
         }
     }
 
@@ -259,33 +802,169 @@ public class HeapDumpSanitizer {
      * 	u1	element type (See Basic Type)
      * 	[u1]*	elements (packed array) 
      */
-    private void copyHeapDumpPrimitiveArrayDump(Pipe pipe, int id) throws IOException {
+    private void copyHeapDumpPrimitiveArrayDump(Pipe pipe, long arrayId) throws IOException {
         pipe.pipeU4();
         long numElements = pipe.pipeU4();
 
         int elementType = pipe.pipeU1();
-        int elementSize = BasicType.findValueSize(elementType, pipe.getIdSize());
+        int elementSize = pipe.getRecordSizes().valueSize(elementType);
 
         long numBytes = Math.multiplyExact(numElements, elementSize);
+        if (scanning) {
+            if (statistics != null) {
+                statistics.addPrimitiveArray(elementType, numBytes);
+            }
+            pipe.pipe(numBytes);
+            return;
+        }
 
-        if (enableSanitization && (elementType == TYPE_CHAR || elementType == TYPE_BYTE)) {
-            applySanitization(pipe, numBytes);
-        } else {
+        Policy policy = enableSanitization ? arrayPolicies.getPolicy(elementType, numElements) : Policy.KEEP;
+        if (policy != Policy.KEEP && stringValues != null && (elementType == TYPE_CHAR || elementType == TYPE_BYTE)
+                && !stringValues.isValue(arrayId)) {
+            policy = Policy.KEEP; // not a String value
+        }
+        applySanitization(pipe, policy, numBytes, elementSize);
+    }
+
+    private void applySanitization(Pipe pipe, Policy policy, long numBytes, int elementSize) throws IOException {
+        switch (policy) {
+            case ZERO:
+                pipe.replace(ZERO_TILES, numBytes);
+                break;
+            case TEXT:
+                if (secretScans != null) {
+                    redactSecrets(pipe, numBytes);
+                } else if (tokenizations != null) {
+                    tokenize(pipe, numBytes, elementSize);
+                } else {
+                    pipe.replace(replacementTiles, numBytes);
+                }
+                break;
+            case RANDOM:
+                randomize(pipe, numBytes);
+                break;
+            default:
+                pipe.pipe(numBytes);
+                break;
+        }
+    }
+
+    /*
+     * Arrays are scanned in buffers. The last getMaxLength() - 1 bytes of a buffer are held back and scanned on
+     * with the next buffer, since a secret ending there may have started in them
+     */
+    private void redactSecrets(Pipe pipe, long numBytes) throws IOException {
+        if (numBytes < secretMatcher.getMinLength()) {
             pipe.pipe(numBytes);
+            return;
+        }
+        SecretScan scan = secretScans.get();
+        byte[] buffer = scan.buffer;
+        Scanner scanner = scan.scanner;
+        int holdback = secretMatcher.getMaxLength() - 1;
+
+        scanner.reset();
+        int held = 0;
+        long remaining = numBytes;
+        while (remaining > 0) {
+            int length = (int) Math.min(remaining, buffer.length - held);
+            pipe.read(buffer, held, length);
+            remaining -= length;
+            int end = held + length;
+            scanner.redact(buffer, held, end, replacementTiles);
+
+            int flushed = remaining > 0 ? end - holdback : end;
+            pipe.write(buffer, 0, flushed, scanner.getChangedEnd() > 0);
+            held = end - flushed;
+            System.arraycopy(buffer, flushed, buffer, 0, held);
+            scanner.shift(flushed);
+        }
+    }
+
+    // arrays longer than the buffer are tokenized chunk by chunk
+    private void tokenize(Pipe pipe, long numBytes, int elementSize) throws IOException {
+        Tokenization tokenization = tokenizations.get();
+        byte[] buffer = tokenization.buffer;
+        long chunk = 0;
+        for (long remaining = numBytes; remaining > 0; chunk++) {
+            int length = (int) Math.min(remaining, buffer.length);
+            pipe.read(buffer, 0, length);
+            tokenization.tokenizer.tokenize(buffer, length, elementSize, chunk);
+            pipe.write(buffer, 0, length, true);
+            remaining -= length;
         }
     }
 
-    private void applySanitization(Pipe pipe, long numBytes) throws IOException {
-        pipe.skipInput(numBytes);
+    // fresh random bytes for every chunk, so that arrays longer than REPLACEMENT_BUFFER_SIZE show no period
+    private void randomize(Pipe pipe, long numBytes) throws IOException {
+        byte[] tiles = randomTiles.get();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (long remaining = numBytes; remaining > 0; ) {
+            int length = (int) Math.min(remaining, tiles.length);
+            for (int i = 0; i < length; i += 8) {
+                long value = random.nextLong();
+                for (int j = i; j < Math.min(i + 8, length); j++) {
+                    tiles[j] = (byte) value;
+                    value >>>= 8;
+                }
+            }
+            pipe.replace(tiles, length);
+            remaining -= length;
+        }
+    }
 
-        byte[] replacementData = sanitizationText.getBytes(StandardCharsets.UTF_8);
-        try (InputStream replacementDataStream = new InfiniteCircularInputStream(replacementData)) {
-            pipe.copyFrom(replacementDataStream, numBytes);
+    /**
+     * Repeats pattern into a buffer of about {@value #REPLACEMENT_BUFFER_SIZE} bytes whose length is a multiple of
+     * the pattern length, so that writing it repeatedly from its start continues the pattern seamlessly
+     */
+    static byte[] tile(byte[] pattern) {
+        Validate.isTrue(pattern.length > 0, "Empty replacement pattern");
+        int numCopies = Math.max(1, REPLACEMENT_BUFFER_SIZE / pattern.length);
+        byte[] tiles = new byte[pattern.length * numCopies];
+        for (int i = 0; i < numCopies; i++) {
+            System.arraycopy(pattern, 0, tiles, i * pattern.length, pattern.length);
         }
+        return tiles;
     }
 
     private boolean isHeapDumpRecord(int tag) {
         return tag == TAG_HEAP_DUMP || tag == TAG_HEAP_DUMP_SEGMENT;
     }
 
+    // per thread secret scanning state
+    private static class SecretScan {
+
+        private final byte[] buffer;
+        private final Scanner scanner;
+
+        SecretScan(SecretMatcher secretMatcher) {
+            this.buffer = new byte[Math.max(REPLACEMENT_BUFFER_SIZE, 2 * secretMatcher.getMaxLength())];
+            this.scanner = secretMatcher.newScanner();
+        }
+    }
+
+    // per thread tokenization state
+    private static class Tokenization {
+
+        private final byte[] buffer = new byte[CHANNEL_BUFFER_SIZE];
+        private final Tokenizer tokenizer;
+
+        Tokenization(Tokenizer tokenizer) {
+            this.tokenizer = tokenizer;
+        }
+    }
+
+    private static class RecordRange {
+
+        private final long offset;
+        private final long length;
+        private final boolean heapDump;
+
+        RecordRange(long offset, long length, boolean heapDump) {
+            this.offset = offset;
+            this.length = length;
+            this.heapDump = heapDump;
+        }
+    }
+
 }
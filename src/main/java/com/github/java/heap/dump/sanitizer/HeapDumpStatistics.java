@@ -0,0 +1,197 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.text.StringEscapeUtils;
+
+import java.util.Locale;
+
+/**
+ * What a heap dump contains, as collected by {@link HeapDumpSanitizer#analyze()}: bytes and counts of top-level
+ * records by tag, counts of heap dump sub-records by tag, and the payload of primitive arrays by element type.
+ * <br>
+ * Counters are plain arrays indexed by u1 tag or type code, so that collecting costs an increment per record.
+ */
+public class HeapDumpStatistics {
+
+    private static final int NUM_TAGS = 256;
+    private static final String[] RECORD_NAMES = new String[NUM_TAGS];
+    private static final String[] SUB_RECORD_NAMES = new String[NUM_TAGS];
+
+    static {
+        RECORD_NAMES[0x01] = "UTF8";
+        RECORD_NAMES[0x02] = "LOAD_CLASS";
+        RECORD_NAMES[0x03] = "UNLOAD_CLASS";
+        RECORD_NAMES[0x04] = "STACK_FRAME";
+        RECORD_NAMES[0x05] = "STACK_TRACE";
+        RECORD_NAMES[0x06] = "ALLOC_SITES";
+        RECORD_NAMES[0x07] = "HEAP_SUMMARY";
+        RECORD_NAMES[0x0A] = "START_THREAD";
+        RECORD_NAMES[0x0B] = "END_THREAD";
+        RECORD_NAMES[0x0C] = "HEAP_DUMP";
+        RECORD_NAMES[0x0D] = "CPU_SAMPLES";
+        RECORD_NAMES[0x0E] = "CONTROL_SETTINGS";
+        RECORD_NAMES[0x1C] = "HEAP_DUMP_SEGMENT";
+        RECORD_NAMES[0x2C] = "HEAP_DUMP_END";
+
+        SUB_RECORD_NAMES[0xFF] = "ROOT_UNKNOWN";
+        SUB_RECORD_NAMES[0x01] = "ROOT_JNI_GLOBAL";
+        SUB_RECORD_NAMES[0x02] = "ROOT_JNI_LOCAL";
+        SUB_RECORD_NAMES[0x03] = "ROOT_JAVA_FRAME";
+        SUB_RECORD_NAMES[0x04] = "ROOT_NATIVE_STACK";
+        SUB_RECORD_NAMES[0x05] = "ROOT_STICKY_CLASS";
+        SUB_RECORD_NAMES[0x06] = "ROOT_THREAD_BLOCK";
+        SUB_RECORD_NAMES[0x07] = "ROOT_MONITOR_USED";
+        SUB_RECORD_NAMES[0x08] = "ROOT_THREAD_OBJECT";
+        SUB_RECORD_NAMES[0x20] = "CLASS_DUMP";
+        SUB_RECORD_NAMES[0x21] = "INSTANCE_DUMP";
+        SUB_RECORD_NAMES[0x22] = "OBJECT_ARRAY_DUMP";
+        SUB_RECORD_NAMES[0x23] = "PRIMITIVE_ARRAY_DUMP";
+    }
+
+    private String format;
+    private int idSize;
+    private long headerBytes;
+    private final long[] recordCounts = new long[NUM_TAGS];
+    private final long[] recordBytes = new long[NUM_TAGS];
+    private final long[] subRecordCounts = new long[NUM_TAGS];
+    // by u1 code of the element type
+    private final long[] arrayCounts = new long[BasicType.U1_CODE_LIMIT];
+    private final long[] arrayBytes = new long[BasicType.U1_CODE_LIMIT];
+
+    void setHeader(String format, int idSize) {
+        this.format = format;
+        this.idSize = idSize;
+        this.headerBytes = format.length() + 1 + 4 + 8;
+    }
+
+    void addRecord(int tag, long numBytes) {
+        recordCounts[tag]++;
+        recordBytes[tag] += numBytes;
+    }
+
+    void addSubRecord(int tag) {
+        subRecordCounts[tag]++;
+    }
+
+    void addPrimitiveArray(int elementType, long numBytes) {
+        arrayCounts[elementType]++;
+        arrayBytes[elementType] += numBytes;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public int getIdSize() {
+        return idSize;
+    }
+
+    /**
+     * @return size of the header and all records
+     */
+    public long getNumBytes() {
+        long numBytes = headerBytes;
+        for (long bytes : recordBytes) {
+            numBytes += bytes;
+        }
+        return numBytes;
+    }
+
+    public long getRecordCount(int tag) {
+        return recordCounts[tag];
+    }
+
+    /**
+     * @return bytes of the records of tag, record headers included
+     */
+    public long getRecordBytes(int tag) {
+        return recordBytes[tag];
+    }
+
+    public long getSubRecordCount(int tag) {
+        return subRecordCounts[tag];
+    }
+
+    public long getArrayCount(BasicType elementType) {
+        return arrayCounts[elementType.getU1Code()];
+    }
+
+    /**
+     * @return bytes of the elements of primitive arrays of elementType
+     */
+    public long getArrayBytes(BasicType elementType) {
+        return arrayBytes[elementType.getU1Code()];
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"format\": \"").append(StringEscapeUtils.escapeJson(format)).append("\",\n");
+        json.append("  \"idSize\": ").append(idSize).append(",\n");
+        json.append("  \"bytes\": ").append(getNumBytes()).append(",\n");
+
+        json.append("  \"records\": {");
+        String separator = "\n";
+        for (int tag = 0; tag < NUM_TAGS; tag++) {
+            if (recordCounts[tag] > 0) {
+                json.append(separator).append("    \"").append(name(RECORD_NAMES, tag)).append("\": ")
+                        .append("{ \"count\": ").append(recordCounts[tag])
+                        .append(", \"bytes\": ").append(recordBytes[tag]).append(" }");
+                separator = ",\n";
+            }
+        }
+        json.append("\n  },\n");
+
+        json.append("  \"subRecords\": {");
+        separator = "\n";
+        for (int tag = 0; tag < NUM_TAGS; tag++) {
+            if (subRecordCounts[tag] > 0) {
+                json.append(separator).append("    \"").append(name(SUB_RECORD_NAMES, tag)).append("\": ")
+                        .append(subRecordCounts[tag]);
+                separator = ",\n";
+            }
+        }
+        json.append("\n  },\n");
+
+        json.append("  \"primitiveArrays\": {");
+        separator = "\n";
+        for (int code = 0; code < arrayCounts.length; code++) {
+            if (arrayCounts[code] > 0) {
+                String name = BasicType.findByU1Code(code).name().toLowerCase(Locale.ROOT);
+                json.append(separator).append("    \"").append(name).append("\": ")
+                        .append("{ \"count\": ").append(arrayCounts[code])
+                        .append(", \"bytes\": ").append(arrayBytes[code]).append(" }");
+                separator = ",\n";
+            }
+        }
+        json.append("\n  },\n");
+
+        long textBytes = getArrayBytes(BasicType.CHAR) + getArrayBytes(BasicType.BYTE);
+        json.append("  \"charAndByteArrayBytes\": ").append(textBytes).append("\n");
+        json.append("}\n");
+        return json.toString();
+    }
+
+    private static String name(String[] names, int tag) {
+        return names[tag] != null ? names[tag] : String.format("0x%02X", tag);
+    }
+}
@@ -0,0 +1,117 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.io.output.NullOutputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link MappedPipe} that sanitizes the input file itself. Piped bytes are left untouched in the file
+ * and only replaced byte ranges are written back, with positional {@link FileChannel} writes.
+ */
+public class InPlacePipe extends MappedPipe {
+
+    private final FileChannel channel;
+    private ByteBuffer tilesBuffer;
+    // bytes read but not written back yet
+    private long unwritten;
+
+    public InPlacePipe(FileChannel channel, LongAdder numBytesWritten) throws IOException {
+        this(new MappedInput(channel), channel, numBytesWritten);
+    }
+
+    InPlacePipe(MappedInput input, FileChannel channel, LongAdder numBytesWritten) {
+        super(input, new NullOutputStream(), null, numBytesWritten);
+        this.channel = channel;
+    }
+
+    // copy constructor
+    private InPlacePipe(InPlacePipe pipe, long limit) {
+        super(pipe, limit);
+        this.channel = pipe.channel;
+    }
+
+    @Override
+    protected MappedPipe newBoundedPipe(long limit) {
+        return new InPlacePipe(this, limit);
+    }
+
+    @Override
+    public void pipe(long count) throws IOException {
+        long numBytes = Math.min(count, remaining());
+        truncated(count - numBytes);
+        digest(numBytes);
+        getInput().skip(numBytes);
+        skipOutput(numBytes);
+    }
+
+    @Override
+    public void replace(byte[] tiles, long count) throws IOException {
+        long position = getInput().position();
+        skipInput(count);
+
+        if (tilesBuffer == null || tilesBuffer.array() != tiles) {
+            tilesBuffer = ByteBuffer.wrap(tiles);
+        }
+        long remaining = count;
+        while (remaining > 0) {
+            int length = (int) Math.min(remaining, tiles.length);
+            tilesBuffer.clear().limit(length);
+            write(tilesBuffer, position);
+            if (getDigestOutput() != null) {
+                getDigestOutput().write(tiles, 0, length);
+            }
+            position += length;
+            remaining -= length;
+        }
+        skipOutput(count);
+    }
+
+    @Override
+    public void read(byte[] buffer, int offset, int length) throws IOException {
+        super.read(buffer, offset, length);
+        unwritten += length;
+    }
+
+    // unchanged bytes are left in the file, changed ones are written back where they were read
+    @Override
+    public void write(byte[] buffer, int offset, int length, boolean changed) throws IOException {
+        long position = getInput().position() - unwritten;
+        if (changed) {
+            write(ByteBuffer.wrap(buffer, offset, length).slice(), position);
+        }
+        if (getDigestOutput() != null) {
+            getDigestOutput().write(buffer, offset, length);
+        }
+        unwritten -= length;
+        skipOutput(length);
+    }
+
+    private void write(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Input container formats, detected from their magic bytes. Anything unrecognized is treated as a plain heap dump.
+ */
+public enum InputFormat {
+    HPROF,
+    GZIP,
+    ZIP,
+    TAR;
+
+    /**
+     * Number of leading bytes needed to tell formats apart
+     */
+    public static final int HEADER_SIZE = 512;
+
+    private static final int TAR_MAGIC_OFFSET = 257;
+    private static final byte[] TAR_MAGIC = "ustar".getBytes(StandardCharsets.US_ASCII);
+
+    public static InputFormat detect(Path file) throws IOException {
+        try (InputStream input = Files.newInputStream(file)) {
+            byte[] header = new byte[HEADER_SIZE];
+            return detect(header, IOUtils.read(input, header));
+        }
+    }
+
+    public static InputFormat detect(byte[] header, int length) {
+        if (length >= 2 && (header[0] & 0xFF) == 0x1F && (header[1] & 0xFF) == 0x8B) {
+            return GZIP;
+        }
+        if (length >= 4 && header[0] == 'P' && header[1] == 'K' && header[2] == 3 && header[3] == 4) {
+            return ZIP;
+        }
+        if (length >= TAR_MAGIC_OFFSET + TAR_MAGIC.length && startsWith(header, TAR_MAGIC_OFFSET, TAR_MAGIC)) {
+            return TAR;
+        }
+        return HPROF;
+    }
+
+    private static boolean startsWith(byte[] header, int offset, byte[] magic) {
+        for (int i = 0; i < magic.length; i++) {
+            if (header[offset + i] != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
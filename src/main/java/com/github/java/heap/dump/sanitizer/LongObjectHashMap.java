@@ -0,0 +1,129 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from non-zero long keys, such as heap dump object ids, to objects.
+ * <br>
+ * Keys are stored unboxed and probed linearly, so lookups allocate nothing. Zero marks free slots
+ * and cannot be used as a key, which suits object ids where zero stands for null.
+ */
+class LongObjectHashMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+
+    LongObjectHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    LongObjectHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedSize) * 2 - 1) << 1;
+        allocate(capacity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        for (int index = index(key); ; index = (index + 1) & mask) {
+            long slotKey = keys[index];
+            if (slotKey == key) {
+                return (V) values[index];
+            }
+            if (slotKey == 0) {
+                return null;
+            }
+        }
+    }
+
+    void put(long key, V value) {
+        Validate.isTrue(key != 0, "Zero key");
+        int index = index(key);
+        while (keys[index] != 0 && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        if (keys[index] == 0) {
+            keys[index] = key;
+            if (++size * 2 > keys.length) {
+                values[index] = value;
+                rehash(keys.length * 2);
+                return;
+            }
+        }
+        values[index] = value;
+    }
+
+    /**
+     * Calls action for every entry, in no particular order
+     */
+    @SuppressWarnings("unchecked")
+    void forEach(LongObjectConsumer<V> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                action.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    private int index(long key) {
+        // fibonacci hashing spreads sequential ids
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != 0) {
+                int index = index(key);
+                while (keys[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                values[index] = oldValues[i];
+            }
+        }
+        Arrays.fill(oldValues, null);
+    }
+
+    interface LongObjectConsumer<V> {
+        void accept(long key, V value);
+    }
+}
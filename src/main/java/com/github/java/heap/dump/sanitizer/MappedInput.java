@@ -0,0 +1,195 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.lang3.Validate;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Sequential reader over a file that is memory mapped one window at a time.
+ * <br>
+ * A single {@link MappedByteBuffer} cannot exceed 2GB, so the file is mapped in windows that slide along with the
+ * read position. Consecutive windows overlap by 8 bytes so that u1/u2/u4/u8 reads never straddle two windows.
+ */
+public class MappedInput {
+
+    static final int DEFAULT_WINDOW_SIZE = 1 << 30;
+    private static final int WINDOW_OVERLAP = 8;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+    private final byte[] copyBuffer;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long windowEnd;
+    private long position;
+
+    public MappedInput(FileChannel channel) throws IOException {
+        this(channel, DEFAULT_WINDOW_SIZE);
+    }
+
+    MappedInput(FileChannel channel, int windowSize) throws IOException {
+        Validate.isTrue(windowSize > 0, "Invalid window size: %s", windowSize);
+        this.channel = channel;
+        this.size = channel.size();
+        this.windowSize = windowSize;
+        this.copyBuffer = new byte[Math.min(COPY_BUFFER_SIZE, windowSize)];
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public long position() {
+        return position;
+    }
+
+    public void position(long position) {
+        Validate.isTrue(position >= 0 && position <= size, "Invalid position: %s", position);
+        this.position = position;
+    }
+
+    public int readU1() throws IOException {
+        if (position >= size) {
+            return -1;
+        }
+        int index = windowIndex(1);
+        position += 1;
+        return window.get(index) & 0xFF;
+    }
+
+    public short readShort() throws IOException {
+        int index = windowIndex(2);
+        position += 2;
+        return window.getShort(index);
+    }
+
+    public int readInt() throws IOException {
+        int index = windowIndex(4);
+        position += 4;
+        return window.getInt(index);
+    }
+
+    public long readLong() throws IOException {
+        int index = windowIndex(8);
+        position += 8;
+        return window.getLong(index);
+    }
+
+    public void readFully(byte[] buffer, int offset, int length) throws IOException {
+        if (size - position < length) {
+            throw new EOFException();
+        }
+        int end = offset + length;
+        int index = offset;
+        while (index < end) {
+            int windowIndex = windowIndex(1);
+            int numBytes = (int) Math.min(end - index, windowEnd - position);
+            window.position(windowIndex);
+            window.get(buffer, index, numBytes);
+            position += numBytes;
+            index += numBytes;
+        }
+    }
+
+    public void skip(long count) throws IOException {
+        if (size - position < count) {
+            throw new EOFException();
+        }
+        position += count;
+    }
+
+    public void copyTo(OutputStream output, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            int index = windowIndex(1);
+            int length = (int) Math.min(Math.min(remaining, windowEnd - position), copyBuffer.length);
+            window.position(index);
+            window.get(copyBuffer, 0, length);
+            output.write(copyBuffer, 0, length);
+            position += length;
+            remaining -= length;
+        }
+    }
+
+    /**
+     * Copies count bytes to target without going through the Java heap. A {@link FileChannel} target is
+     * handed to {@link FileChannel#transferTo} so that the OS can copy file to file (sendfile/copy_file_range).
+     * Other targets are written straight from the mapped windows.
+     */
+    public void transferTo(WritableByteChannel target, long count) throws IOException {
+        if (size - position < count) {
+            throw new EOFException();
+        }
+        long remaining = count;
+        while (remaining > 0) {
+            long numBytes = target instanceof FileChannel
+                    ? channel.transferTo(position, remaining, target)
+                    : writeWindowTo(target, remaining);
+            position += numBytes;
+            remaining -= numBytes;
+        }
+    }
+
+    private int writeWindowTo(WritableByteChannel target, long count) throws IOException {
+        int index = windowIndex(1);
+        int length = (int) Math.min(count, windowEnd - position);
+        ByteBuffer slice = window.duplicate();
+        slice.limit(index + length);
+        slice.position(index);
+        while (slice.hasRemaining()) {
+            target.write(slice);
+        }
+        return length;
+    }
+
+    /*
+     * Returns the index of the current position within a window that holds the next numBytes bytes,
+     * sliding the window forward when needed.
+     */
+    private int windowIndex(int numBytes) throws IOException {
+        if (position + numBytes > size) {
+            throw new EOFException();
+        }
+        if (window == null || position < windowStart || position + numBytes > windowEnd) {
+            map(position);
+        }
+        return (int) (position - windowStart);
+    }
+
+    private void map(long offset) throws IOException {
+        windowStart = offset - offset % windowSize;
+        long length = Math.min((long) windowSize + WINDOW_OVERLAP, size - windowStart);
+        window = channel.map(MapMode.READ_ONLY, windowStart, length);
+        windowEnd = windowStart + length;
+    }
+}
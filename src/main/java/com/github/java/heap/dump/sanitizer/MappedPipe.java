@@ -0,0 +1,153 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link Pipe} that reads from a memory mapped file instead of an {@link java.io.InputStream}.
+ * Bounded pipes share the read position of their parent, same as the stream based pipe.
+ * <br>
+ * When the output stream is backed by a channel, large piped ranges bypass the stream and are
+ * transferred to the channel directly.
+ */
+public class MappedPipe extends Pipe {
+
+    static final int TRANSFER_THRESHOLD = 64 * 1024;
+
+    private final MappedInput input;
+    private final WritableByteChannel outputChannel;
+    private final long limit;
+
+    public MappedPipe(FileChannel input, OutputStream output, LongAdder numBytesWritten)
+            throws IOException {
+        this(new MappedInput(input), output, null, numBytesWritten);
+    }
+
+    /**
+     * @param output stream that writes to outputChannel. Flushed before each direct transfer
+     * @param outputChannel channel written to by output. null if output is not backed by a channel
+     */
+    MappedPipe(MappedInput input, OutputStream output, WritableByteChannel outputChannel,
+            LongAdder numBytesWritten) {
+        super(output, numBytesWritten);
+        this.input = input;
+        this.outputChannel = outputChannel;
+        this.limit = input.size();
+    }
+
+    // copy constructor
+    protected MappedPipe(MappedPipe pipe, long limit) {
+        super(pipe);
+        this.input = pipe.input;
+        this.outputChannel = pipe.outputChannel;
+        this.limit = limit;
+    }
+
+    @Override
+    public Pipe newInputBoundedPipe(long count) {
+        return newBoundedPipe(Math.min(limit, input.position() + count));
+    }
+
+    protected MappedPipe newBoundedPipe(long limit) {
+        return new MappedPipe(this, limit);
+    }
+
+    @Override
+    public int readU1() throws IOException {
+        if (input.position() >= limit) {
+            return -1;
+        }
+        return input.readU1();
+    }
+
+    @Override
+    public void pipe(long count) throws IOException {
+        long numBytes = Math.min(count, remaining());
+        truncated(count - numBytes);
+        if (outputChannel != null && numBytes >= TRANSFER_THRESHOLD) {
+            getOutput().flush();
+            digest(numBytes);
+            input.transferTo(outputChannel, numBytes);
+            skipOutput(numBytes);
+        } else {
+            input.copyTo(getOutput(), numBytes);
+        }
+    }
+
+    @Override
+    public void skipInput(long count) throws IOException {
+        ensureRemaining(count);
+        input.skip(count);
+    }
+
+    @Override
+    protected void readFully(byte[] buffer, int offset, int length) throws IOException {
+        ensureRemaining(length);
+        input.readFully(buffer, offset, length);
+    }
+
+    @Override
+    protected int readShort() throws IOException {
+        ensureRemaining(2);
+        return input.readShort();
+    }
+
+    @Override
+    protected int readInt() throws IOException {
+        ensureRemaining(4);
+        return input.readInt();
+    }
+
+    @Override
+    protected long readLong() throws IOException {
+        ensureRemaining(8);
+        return input.readLong();
+    }
+
+    // digests the next count input bytes, for output that bypasses the output stream
+    protected void digest(long count) throws IOException {
+        if (getDigestOutput() != null) {
+            long position = input.position();
+            input.copyTo(getDigestOutput(), count);
+            input.position(position);
+        }
+    }
+
+    protected MappedInput getInput() {
+        return input;
+    }
+
+    protected long remaining() {
+        return limit - input.position();
+    }
+
+    private void ensureRemaining(long count) throws IOException {
+        if (remaining() < count) {
+            throw new EOFException();
+        }
+    }
+}
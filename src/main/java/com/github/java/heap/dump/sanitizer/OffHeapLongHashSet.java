@@ -0,0 +1,146 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.lang3.Validate;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * Open addressing hash set of non-zero longs, such as heap dump object ids, stored outside the Java heap.
+ * <br>
+ * Keys live unboxed in direct buffers of at most {@value #PAGE_SIZE} slots each, so the set can outgrow both the
+ * Java heap and the 2GB limit of a single buffer. Its table doubles as it fills up, but never beyond the memory
+ * budget given on creation, so that hundreds of millions of ids fit in a known amount of memory. Zero marks free
+ * slots and cannot be added, which suits object ids where zero stands for null.
+ * <br>
+ * Adding is not thread safe. Once filled, the set may be read from several threads.
+ */
+class OffHeapLongHashSet {
+
+    static final int MIN_CAPACITY = 1 << 16;
+    private static final int PAGE_SHIFT = 24;
+    static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private final long maxCapacity;
+
+    private LongBuffer[] pages;
+    private long capacity;
+    private long mask;
+    private int shift;
+    private long size;
+
+    /**
+     * @param maxBytes memory budget of the table. Rehashing briefly holds the previous, half as large, table too
+     */
+    OffHeapLongHashSet(long maxBytes) {
+        maxCapacity = Long.highestOneBit(maxBytes / Long.BYTES);
+        Validate.isTrue(maxCapacity >= MIN_CAPACITY, "Memory budget too small: %s bytes", maxBytes);
+        allocate(MIN_CAPACITY);
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * @return largest number of keys the memory budget can hold
+     */
+    long maxSize() {
+        return maxCapacity / 4 * 3;
+    }
+
+    boolean contains(long key) {
+        return key != 0 && get(find(key)) == key;
+    }
+
+    /**
+     * @return false if the key was already present
+     * @throws IllegalStateException if the memory budget cannot hold another key
+     */
+    boolean add(long key) {
+        Validate.isTrue(key != 0, "Zero key");
+        long index = find(key);
+        if (get(index) == key) {
+            return false;
+        }
+        if ((size + 1) * 4 > capacity * 3) {
+            Validate.validState(capacity < maxCapacity, "More than %s ids exceed the memory budget of %s bytes",
+                    size, maxCapacity * Long.BYTES);
+            rehash(capacity * 2);
+            index = find(key);
+        }
+        set(index, key);
+        size++;
+        return true;
+    }
+
+    // slot of key, or of the free slot that ends its probe sequence
+    private long find(long key) {
+        // fibonacci hashing spreads sequential ids
+        long index = (key * 0x9E3779B97F4A7C15L) >>> shift;
+        while (true) {
+            long slotKey = get(index);
+            if (slotKey == key || slotKey == 0) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private long get(long index) {
+        return pages[(int) (index >>> PAGE_SHIFT)].get((int) (index & PAGE_MASK));
+    }
+
+    private void set(long index, long key) {
+        pages[(int) (index >>> PAGE_SHIFT)].put((int) (index & PAGE_MASK), key);
+    }
+
+    private void allocate(long capacity) {
+        int numPages = (int) Math.max(1, capacity >>> PAGE_SHIFT);
+        int pageSize = (int) Math.min(capacity, PAGE_SIZE);
+        pages = new LongBuffer[numPages];
+        for (int i = 0; i < numPages; i++) {
+            pages[i] = ByteBuffer.allocateDirect(pageSize * Long.BYTES)
+                    .order(ByteOrder.nativeOrder())
+                    .asLongBuffer();
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.shift = Long.numberOfLeadingZeros(capacity) + 1;
+    }
+
+    private void rehash(long capacity) {
+        LongBuffer[] oldPages = pages;
+        allocate(capacity);
+        for (LongBuffer page : oldPages) {
+            for (int i = 0; i < page.capacity(); i++) {
+                long key = page.get(i);
+                if (key != 0) {
+                    set(find(key), key);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.lang3.Validate;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip output in the BGZF style: data is cut into blocks of at most {@value #BLOCK_DATA_SIZE} bytes that are
+ * compressed concurrently and written in order, each one as an independent gzip member whose BC extra field holds
+ * its compressed size. Any gzip reader can inflate the result, and BGZF aware tools can seek into it.
+ * <br>
+ * An optional index is written on close, in the .gzi layout: little endian u8 number of entries followed by a
+ * (compressed offset, uncompressed offset) u8 pair for the start of every block after the first.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    static final int BLOCK_DATA_SIZE = 0xFF00;
+    static final int MAX_BLOCK_SIZE = 0x10000;
+
+    private static final int HEADER_SIZE = 18;
+    private static final int TRAILER_SIZE = 8;
+    private static final int MAX_COMPRESSED_SIZE = MAX_BLOCK_SIZE - HEADER_SIZE - TRAILER_SIZE;
+    private static final int BLOCKS_PER_THREAD = 4;
+
+    // empty block that marks the end of a BGZF file
+    static final byte[] EOF_BLOCK = {
+            0x1f, (byte) 0x8b, 0x08, 0x04, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xff, 0x06, 0x00, 0x42, 0x43, 0x02,
+            0x00, 0x1b, 0x00, 0x03, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00 };
+
+    private final OutputStream output;
+    private final OutputStream indexOutput;
+    private final int compressionLevel;
+    private final ExecutorService executor;
+    private final BlockingQueue<Block> freeBlocks;
+    private final Deque<Future<Block>> pendingBlocks = new ArrayDeque<>();
+    private final ThreadLocal<Deflater> deflaters;
+    private final Queue<Deflater> allDeflaters = new ConcurrentLinkedQueue<>();
+
+    private Block current;
+    private long compressedOffset;
+    private long uncompressedOffset;
+    private long[] index = new long[64];
+    private int indexLength;
+    private boolean closed;
+
+    /**
+     * @param indexOutput receives the block index on close. May be null
+     */
+    public ParallelGzipOutputStream(OutputStream output, OutputStream indexOutput, int threads) {
+        this(output, indexOutput, threads, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public ParallelGzipOutputStream(OutputStream output, OutputStream indexOutput, int threads,
+            int compressionLevel) {
+        Validate.isTrue(threads > 0, "Invalid number of threads: %s", threads);
+        this.output = output;
+        this.indexOutput = indexOutput;
+        this.compressionLevel = compressionLevel;
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "gzip");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.deflaters = ThreadLocal.withInitial(() -> {
+            Deflater deflater = new Deflater(compressionLevel, true);
+            allDeflaters.add(deflater);
+            return deflater;
+        });
+
+        int numBlocks = threads * BLOCKS_PER_THREAD;
+        this.freeBlocks = new ArrayBlockingQueue<>(numBlocks);
+        for (int i = 0; i < numBlocks; i++) {
+            freeBlocks.add(new Block());
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureRemaining();
+        current.data[current.dataLength++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        int offset = off;
+        int remaining = len;
+        while (remaining > 0) {
+            ensureRemaining();
+            int numBytes = Math.min(remaining, BLOCK_DATA_SIZE - current.dataLength);
+            System.arraycopy(b, offset, current.data, current.dataLength, numBytes);
+            current.dataLength += numBytes;
+            offset += numBytes;
+            remaining -= numBytes;
+        }
+    }
+
+    /**
+     * Ends the current block early and waits until all blocks are written
+     */
+    @Override
+    public void flush() throws IOException {
+        submitCurrent();
+        while (!pendingBlocks.isEmpty()) {
+            writeNextBlock();
+        }
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+            output.write(EOF_BLOCK);
+            writeIndex();
+        } finally {
+            executor.shutdownNow();
+            allDeflaters.forEach(Deflater::end);
+            output.close();
+            if (indexOutput != null) {
+                indexOutput.close();
+            }
+        }
+    }
+
+    private void ensureRemaining() throws IOException {
+        if (current != null && current.dataLength < BLOCK_DATA_SIZE) {
+            return;
+        }
+        submitCurrent();
+        current = freeBlocks.poll();
+        while (current == null) {
+            writeNextBlock();
+            current = freeBlocks.poll();
+        }
+    }
+
+    private void submitCurrent() {
+        if (current != null && current.dataLength > 0) {
+            Block block = current;
+            pendingBlocks.add(executor.submit(() -> compress(block)));
+            current = null;
+        }
+    }
+
+    // blocks are written in submission order, which backpressures the caller once all blocks are in flight
+    private void writeNextBlock() throws IOException {
+        Block block;
+        try {
+            block = pendingBlocks.remove().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while compressing");
+        } catch (ExecutionException e) {
+            throw new IOException("block compression failed", e.getCause());
+        }
+
+        if (compressedOffset > 0) {
+            addIndexEntry(compressedOffset, uncompressedOffset);
+        }
+        output.write(block.compressed, 0, block.compressedLength);
+        compressedOffset += block.compressedLength;
+        uncompressedOffset += block.dataLength;
+
+        block.dataLength = 0;
+        freeBlocks.add(block);
+    }
+
+    private Block compress(Block block) {
+        Deflater deflater = deflaters.get();
+        int compressedLength = deflate(deflater, block, compressionLevel);
+        if (compressedLength < 0) {
+            // incompressible data. stored blocks always fit
+            compressedLength = deflate(deflater, block, Deflater.NO_COMPRESSION);
+            Validate.validState(compressedLength >= 0, "Block does not fit in %s bytes", MAX_BLOCK_SIZE);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(block.data, 0, block.dataLength);
+
+        int blockSize = HEADER_SIZE + compressedLength + TRAILER_SIZE;
+        byte[] compressed = block.compressed;
+        writeHeader(compressed, blockSize);
+        int trailer = HEADER_SIZE + compressedLength;
+        writeIntLE(compressed, trailer, (int) crc.getValue());
+        writeIntLE(compressed, trailer + 4, block.dataLength);
+        block.compressedLength = blockSize;
+        return block;
+    }
+
+    // returns -1 if the compressed data does not fit in a block
+    private int deflate(Deflater deflater, Block block, int level) {
+        deflater.reset();
+        deflater.setLevel(level);
+        deflater.setInput(block.data, 0, block.dataLength);
+        deflater.finish();
+        int length = deflater.deflate(block.compressed, HEADER_SIZE, MAX_COMPRESSED_SIZE);
+        return deflater.finished() ? length : -1;
+    }
+
+    private void writeHeader(byte[] buffer, int blockSize) {
+        buffer[0] = 0x1f; // ID1
+        buffer[1] = (byte) 0x8b; // ID2
+        buffer[2] = 8; // CM deflate
+        buffer[3] = 4; // FLG FEXTRA
+        writeIntLE(buffer, 4, 0); // MTIME
+        buffer[8] = 0; // XFL
+        buffer[9] = (byte) 0xff; // OS unknown
+        writeShortLE(buffer, 10, 6); // XLEN
+        buffer[12] = 'B'; // SI1
+        buffer[13] = 'C'; // SI2
+        writeShortLE(buffer, 14, 2); // SLEN
+        writeShortLE(buffer, 16, blockSize - 1); // BSIZE
+    }
+
+    private void addIndexEntry(long compressed, long uncompressed) {
+        if (indexLength + 2 > index.length) {
+            index = Arrays.copyOf(index, index.length * 2);
+        }
+        index[indexLength++] = compressed;
+        index[indexLength++] = uncompressed;
+    }
+
+    private void writeIndex() throws IOException {
+        if (indexOutput == null) {
+            return;
+        }
+        DataOutputStream indexData = new DataOutputStream(indexOutput);
+        indexData.writeLong(Long.reverseBytes(indexLength / 2));
+        for (int i = 0; i < indexLength; i++) {
+            indexData.writeLong(Long.reverseBytes(index[i]));
+        }
+        indexData.flush();
+    }
+
+    private static void writeShortLE(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+    }
+
+    private static void writeIntLE(byte[] buffer, int offset, int value) {
+        writeShortLE(buffer, offset, value);
+        writeShortLE(buffer, offset + 2, value >>> 16);
+    }
+
+    private static class Block {
+        final byte[] data = new byte[BLOCK_DATA_SIZE];
+        final byte[] compressed = new byte[MAX_BLOCK_SIZE];
+        int dataLength;
+        int compressedLength;
+    }
+}
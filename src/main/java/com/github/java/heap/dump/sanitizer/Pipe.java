@@ -22,7 +22,8 @@ package com.github.java.heap.dump.sanitizer;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.BoundedInputStream;
-import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.ProxyOutputStream;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.commons.lang3.Validate;
 
 import java.io.DataInputStream;
@@ -30,38 +31,83 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.function.Consumer;
+import java.util.concurrent.atomic.LongAdder;
 
 public class Pipe {
 
     private DataInputStream input;
     private DataOutputStream output;
-    private Integer idSize;
+    private CountedOutputStream countedOutput;
+    private OutputStream digestOutput;
+    private RecordSizes recordSizes;
+    private long numBytesTruncated;
 
-    public Pipe(InputStream input, OutputStream output, Consumer<Long> numBytesWrittenMonitor) {
+    public Pipe(InputStream input, OutputStream output, LongAdder numBytesWritten) {
+        this(output, numBytesWritten);
         this.input = new DataInputStream(input);
-        this.output = new DataOutputStream(newCountingStream(output, numBytesWrittenMonitor));
+    }
+
+    // for subclasses that read input on their own
+    protected Pipe(OutputStream output, LongAdder numBytesWritten) {
+        this.countedOutput = new CountedOutputStream(output, numBytesWritten);
+        this.output = new DataOutputStream(countedOutput);
+    }
+
+    // copy constructor for subclasses
+    protected Pipe(Pipe pipe) {
+        this(pipe.input, pipe);
     }
 
     // copy constructor
-    private Pipe(DataInputStream input, DataOutputStream output, Integer idSize) {
+    private Pipe(DataInputStream input, Pipe pipe) {
         this.input = input;
-        this.output = output;
-        this.idSize = idSize;
+        this.output = pipe.output;
+        this.countedOutput = pipe.countedOutput;
+        this.digestOutput = pipe.digestOutput;
+        this.recordSizes = pipe.recordSizes;
     }
 
     public Pipe newInputBoundedPipe(long count) {
         DataInputStream boundedInput = new DataInputStream(new BoundedInputStream(input, count));
-        return new Pipe(boundedInput, output, idSize);
+        return new Pipe(boundedInput, this);
+    }
+
+    /**
+     * Also writes all output to digestOutput, in order, including output that bypasses the output stream.
+     * For sequential sanitization, before any bounded pipe is created
+     */
+    public void setDigestOutput(OutputStream digestOutput) {
+        this.digestOutput = digestOutput;
+        this.output = new DataOutputStream(new TeeOutputStream(countedOutput, digestOutput));
+    }
+
+    /**
+     * @return number of bytes written so far, shared with bounded pipes
+     */
+    public long getOutputPosition() {
+        return countedOutput.getTotal();
+    }
+
+    /**
+     * @return number of bytes that {@link #pipe(long)} could not copy on this pipe because its input ended first
+     */
+    public long getNumBytesTruncated() {
+        return numBytesTruncated;
     }
 
     public int getIdSize() {
-        return idSize;
+        return recordSizes.idSize;
     }
 
+    /**
+     * Selects the {@link RecordSizes} of the id size, read once from the heap dump header
+     */
     public void setIdSize(int idSize) {
-        Validate.isTrue(idSize == 4 || idSize == 8, "Unknown id size: %s", idSize);
-        this.idSize = idSize;
+        this.recordSizes = RecordSizes.forIdSize(idSize);
+    }
+
+    RecordSizes getRecordSizes() {
+        return recordSizes;
     }
 
     public int readU1() throws IOException {
@@ -76,14 +122,28 @@ public class Pipe {
         IOUtils.copyLarge(inputStream, output, 0, count);
     }
 
+    /**
+     * Skips count input bytes and writes count bytes of the repeated tiles instead.
+     * The tiles are always written from their start, so their length should be a multiple of the replacement pattern
+     */
+    public void replace(byte[] tiles, long count) throws IOException {
+        skipInput(count);
+        long remaining = count;
+        while (remaining > 0) {
+            int length = (int) Math.min(remaining, tiles.length);
+            output.write(tiles, 0, length);
+            remaining -= length;
+        }
+    }
+
     public int pipeU1() throws IOException {
-        int u1 = input.read();
+        int u1 = readU1();
         output.write(u1);
         return u1;
     }
 
     public int pipeU1IfPossible() throws IOException {
-        int u1 = input.read();
+        int u1 = readU1();
         if (u1 != -1) {
             output.write(u1);
         }
@@ -91,22 +151,22 @@ public class Pipe {
     }
 
     public int pipeU2() throws IOException {
-        int u2 = input.readShort();
+        int u2 = readShort();
         output.writeShort(u2);
         return u2;
     }
 
     public long pipeU4() throws IOException {
-        int u4 = input.readInt();
+        int u4 = readInt();
         output.writeInt(u4);
         return Integer.toUnsignedLong(u4);
     }
 
     public long pipeId() throws IOException {
-        if (idSize == 4) {
+        if (recordSizes.idSize == 4) {
             return pipeU4();
         } else {
-            long value = input.readLong();
+            long value = readLong();
             output.writeLong(value);
             Validate.isTrue(value >= 0, "Small unsigned long expected");
             return value;
@@ -114,18 +174,48 @@ public class Pipe {
     }
 
     public void pipe(long count) throws IOException {
-        IOUtils.copyLarge(input, output, 0, count);
+        long numBytes = IOUtils.copyLarge(input, output, 0, count);
+        truncated(count - numBytes);
+    }
+
+    /**
+     * Pipes length bytes through buffer, leaving them there for inspection
+     */
+    public void pipe(byte[] buffer, int length) throws IOException {
+        readFully(buffer, 0, length);
+        output.write(buffer, 0, length);
+    }
+
+    /**
+     * Reads length input bytes into buffer without writing them. They must be written back with
+     * {@link #write(byte[], int, int, boolean)}, changed or not, before anything else is piped
+     */
+    public void read(byte[] buffer, int offset, int length) throws IOException {
+        readFully(buffer, offset, length);
+    }
+
+    /**
+     * Writes bytes read with {@link #read(byte[], int, int)}, in the same order
+     *
+     * @param changed false if the bytes were left as read, so that in-place sanitization can skip them
+     */
+    public void write(byte[] buffer, int offset, int length, boolean changed) throws IOException {
+        output.write(buffer, offset, length);
     }
 
     public void skipInput(long count) throws IOException {
         IOUtils.skipFully(input, count);
     }
 
+    public void flush() throws IOException {
+        output.flush();
+    }
+
     public String pipeNullTerminatedString() throws IOException {
         int byteValue = Integer.MAX_VALUE;
         StringBuilder sb = new StringBuilder();
         while (byteValue > 0) {
-            byteValue = input.read();
+            byteValue = readU1();
             if (byteValue >= 0) {
                 output.write(byteValue);
                 sb.append((char) byteValue);
@@ -134,14 +224,86 @@ public class Pipe {
         return sb.toString();
     }
 
-    private static OutputStream newCountingStream(OutputStream output, Consumer<Long> writeCountMonitor) {
-        return new CountingOutputStream(output) {
+    protected void readFully(byte[] buffer, int offset, int length) throws IOException {
+        input.readFully(buffer, offset, length);
+    }
+
+    protected int readShort() throws IOException {
+        return input.readShort();
+    }
+
+    protected int readInt() throws IOException {
+        return input.readInt();
+    }
+
+    protected long readLong() throws IOException {
+        return input.readLong();
+    }
+
+    protected DataOutputStream getOutput() {
+        return output;
+    }
+
+    // null unless output is digested
+    protected OutputStream getDigestOutput() {
+        return digestOutput;
+    }
+
+    protected void truncated(long count) {
+        numBytesTruncated += count;
+    }
+
+    /**
+     * Reports count bytes as written that bypassed the output stream. For bytes that are left in place at the
+     * destination or transferred to it by other means.
+     */
+    protected void skipOutput(long count) {
+        countedOutput.count(count);
+    }
+
+    /*
+     * Counts written bytes in a plain field and only publishes them to the shared counter every
+     * PUBLISH_THRESHOLD bytes and on flush, so that single byte writes stay cheap.
+     */
+    private static class CountedOutputStream extends ProxyOutputStream {
 
-            @Override
-            protected void beforeWrite(final int n) {
-                super.beforeWrite(n);
-                writeCountMonitor.accept(getByteCount());
+        private static final int PUBLISH_THRESHOLD = 64 * 1024;
+
+        private final LongAdder numBytesWritten;
+        private long numBytesUnpublished;
+        private long total;
+
+        CountedOutputStream(OutputStream output, LongAdder numBytesWritten) {
+            super(output);
+            this.numBytesWritten = numBytesWritten;
+        }
+
+        @Override
+        protected void beforeWrite(final int n) {
+            count(n);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            super.flush();
+            publish();
+        }
+
+        void count(long n) {
+            total += n;
+            numBytesUnpublished += n;
+            if (numBytesUnpublished >= PUBLISH_THRESHOLD) {
+                publish();
             }
-        };
+        }
+
+        long getTotal() {
+            return total;
+        }
+
+        private void publish() {
+            numBytesWritten.add(numBytesUnpublished);
+            numBytesUnpublished = 0;
+        }
     }
 }
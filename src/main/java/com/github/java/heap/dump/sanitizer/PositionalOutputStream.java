@@ -0,0 +1,72 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes to a {@link FileChannel} starting at a given position with positional writes.
+ * The position of the channel itself is not used, so that many streams can write to distinct
+ * regions of the same channel concurrently.
+ */
+public class PositionalOutputStream extends OutputStream implements WritableByteChannel {
+
+    private final FileChannel channel;
+    private long position;
+
+    public PositionalOutputStream(FileChannel channel, long position) {
+        this.channel = channel;
+        this.position = position;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+        while (buffer.hasRemaining()) {
+            write(buffer);
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        int numBytes = channel.write(src, position);
+        position += numBytes;
+        return numBytes;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+}
@@ -21,26 +21,92 @@
 package com.github.java.heap.dump.sanitizer;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.lang3.mutable.MutableLong;
 import org.apache.logging.log4j.Logger;
 
-import java.util.function.Consumer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
-public class ProgressMonitor {
+/**
+ * Periodically samples a counter of bytes written and logs progress, throughput, and ETA when the total is known.
+ * Sampling runs on its own thread, so that counting stays off the sanitization hot path.
+ */
+public class ProgressMonitor implements AutoCloseable {
+
+    private final LongAdder numBytesWritten;
+    private final long totalBytes;
+    private final Logger logger;
+    private final long startNanos;
 
-    public static Consumer<Long> numBytesWrittenMonitor(SanitizeCommand command, Logger logger) {
-        int bufferByteSize = command.getBufferByteSize();
-        MutableLong steps = new MutableLong();
-        return numBytesWritten -> {
-            long currentSteps = numBytesWritten / bufferByteSize;
-            if (currentSteps != steps.getValue().longValue()) {
-                steps.setValue(currentSteps);
-                logger.info("Processed {}", FileUtils.byteCountToDisplaySize(numBytesWritten));
-            }
-        };
+    private ScheduledExecutorService scheduler;
+    private long lastNanos;
+    private long lastBytes;
+
+    ProgressMonitor(LongAdder numBytesWritten, long totalBytes, Logger logger, long startNanos) {
+        this.numBytesWritten = numBytesWritten;
+        this.totalBytes = totalBytes;
+        this.logger = logger;
+        this.startNanos = startNanos;
+        this.lastNanos = startNanos;
     }
 
-    private ProgressMonitor() {
+    /**
+     * @param totalBytes expected number of bytes, or a negative value when unknown
+     */
+    public static ProgressMonitor start(LongAdder numBytesWritten, long totalBytes, int intervalSeconds,
+            Logger logger) {
+        ProgressMonitor monitor = new ProgressMonitor(numBytesWritten, totalBytes, logger, System.nanoTime());
+        monitor.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "progress-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        monitor.scheduler.scheduleAtFixedRate(() -> monitor.report(System.nanoTime()),
+                intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        return monitor;
+    }
+
+    void report(long nowNanos) {
+        long bytes = numBytesWritten.sum();
+        long elapsedNanos = nowNanos - lastNanos;
+        long bytesPerSecond = elapsedNanos > 0
+                ? (long) ((bytes - lastBytes) * 1e9 / elapsedNanos)
+                : 0;
+        lastNanos = nowNanos;
+        lastBytes = bytes;
+
+        if (totalBytes < 0) {
+            logger.info("Processed {} at {}/s", displaySize(bytes), displaySize(bytesPerSecond));
+            return;
+        }
+        logger.info("Processed {} of {} ({}%) at {}/s, ETA {}s",
+                displaySize(bytes), displaySize(totalBytes), percent(bytes), displaySize(bytesPerSecond),
+                etaSeconds(bytes, nowNanos));
+    }
+
+    private long percent(long bytes) {
+        return totalBytes > 0 ? bytes * 100 / totalBytes : 100;
+    }
+
+    // based on the average throughput since start, which is steadier than the last interval
+    private String etaSeconds(long bytes, long nowNanos) {
+        long elapsedNanos = nowNanos - startNanos;
+        if (bytes <= 0 || elapsedNanos <= 0) {
+            return "?";
+        }
+        double remainingBytes = Math.max(0, totalBytes - bytes);
+        return String.valueOf((long) Math.ceil(remainingBytes * elapsedNanos / bytes / 1e9));
+    }
+
+    private String displaySize(long bytes) {
+        return FileUtils.byteCountToDisplaySize(bytes);
+    }
 
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
     }
 }
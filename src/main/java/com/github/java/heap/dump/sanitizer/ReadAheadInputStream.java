@@ -0,0 +1,146 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.Validate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads an input stream ahead on a background thread, into a fixed pool of buffers.
+ * <br>
+ * The reader thread fills free buffers and queues them. Consumed buffers go back to the pool, so at most
+ * numBuffers buffers are in flight and the reader blocks once it is that far ahead.
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    // queued after the last buffer
+    private static final ByteBuffer EOF = ByteBuffer.allocate(0);
+
+    private final InputStream input;
+    private final BlockingQueue<ByteBuffer> freeBuffers;
+    private final BlockingQueue<ByteBuffer> filledBuffers;
+    private final Thread reader;
+
+    private volatile Throwable failure;
+    private ByteBuffer current;
+
+    public ReadAheadInputStream(InputStream input, int bufferSize, int numBuffers) {
+        Validate.isTrue(bufferSize > 0, "Invalid buffer size: %s", bufferSize);
+        Validate.isTrue(numBuffers > 0, "Invalid number of buffers: %s", numBuffers);
+        this.input = input;
+        this.freeBuffers = new ArrayBlockingQueue<>(numBuffers);
+        this.filledBuffers = new ArrayBlockingQueue<>(numBuffers + 1);
+        for (int i = 0; i < numBuffers; i++) {
+            freeBuffers.add(ByteBuffer.allocate(bufferSize));
+        }
+
+        reader = new Thread(this::readLoop, "read-ahead");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    // EOF is queued however the reader stops, so that the consumer never blocks on a dead reader. There is always
+    // room for it, as at most numBuffers filled buffers are queued
+    private void readLoop() {
+        try {
+            while (true) {
+                ByteBuffer buffer = freeBuffers.take();
+                int numBytes = IOUtils.read(input, buffer.array(), 0, buffer.capacity());
+                buffer.position(0).limit(numBytes);
+                if (numBytes > 0) {
+                    filledBuffers.put(buffer);
+                }
+                if (numBytes < buffer.capacity()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } catch (Throwable e) {
+            failure = e;
+        } finally {
+            filledBuffers.offer(EOF);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        return current.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        int numBytes = Math.min(len, current.remaining());
+        current.get(b, off, numBytes);
+        return numBytes;
+    }
+
+    @Override
+    public int available() {
+        return current == null || current == EOF ? 0 : current.remaining();
+    }
+
+    // the reader may be blocked reading input, so it is interrupted and left to finish on its own
+    @Override
+    public void close() throws IOException {
+        reader.interrupt();
+        input.close();
+    }
+
+    // returns false at the end of input
+    private boolean ensureAvailable() throws IOException {
+        while (current == null || !current.hasRemaining()) {
+            if (current == EOF) {
+                return false;
+            }
+            if (current != null) {
+                current.clear();
+                freeBuffers.add(current);
+            }
+            try {
+                current = filledBuffers.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while reading ahead");
+            }
+            if (current == EOF && failure != null) {
+                throw new IOException("read ahead failed", failure);
+            }
+        }
+        return true;
+    }
+}
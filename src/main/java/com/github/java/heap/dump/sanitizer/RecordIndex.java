@@ -0,0 +1,181 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.lang3.Validate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary index of where records are in a sanitized heap dump, written while sanitizing so that later passes
+ * can seek to the records they need instead of parsing the dump from its first byte. Sanitization keeps every record
+ * at its input offset, so the index is valid for the input too.
+ * <br>
+ * The index starts with the magic "HPROFIDX", a u4 version and the u8 minimum size of indexed sub-records. It is
+ * followed by one entry per top-level record and per heap dump sub-record of at least that size, in file order:
+ * <pre>
+ * u8   OFFSET: of the tag of the record
+ * u1   LEVEL: 0 for a top-level record, 1 for a heap dump sub-record
+ * u1   TAG
+ * u8   SIZE: of the whole record, tag and record header included
+ * </pre>
+ * A complete index ends with an entry of LEVEL 0xFF whose OFFSET is the number of entries before it, so that an index
+ * left by a failed sanitization is rejected. Values are big endian, as in the heap dump itself.
+ */
+public class RecordIndex {
+
+    public static final int RECORD = 0;
+    public static final int SUB_RECORD = 1;
+    static final int END = 0xFF;
+    static final byte[] MAGIC = "HPROFIDX".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+    static final int ENTRY_SIZE = 8 + 1 + 1 + 8;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DataOutputStream output;
+    private final long minSubRecordSize;
+    private long numEntries;
+
+    /**
+     * Writes the index header to output, which is flushed by {@link #finish()} but left open
+     */
+    public RecordIndex(OutputStream output, long minSubRecordSize) throws IOException {
+        this.output = new DataOutputStream(new BufferedOutputStream(output, BUFFER_SIZE));
+        this.minSubRecordSize = minSubRecordSize;
+        this.output.write(MAGIC);
+        this.output.writeInt(VERSION);
+        this.output.writeLong(minSubRecordSize);
+    }
+
+    void addRecord(long offset, int tag, long size) throws IOException {
+        add(offset, RECORD, tag, size);
+    }
+
+    // sub-records smaller than the minimum size are left out
+    void addSubRecord(long offset, int tag, long size) throws IOException {
+        if (size >= minSubRecordSize) {
+            add(offset, SUB_RECORD, tag, size);
+        }
+    }
+
+    void finish() throws IOException {
+        output.writeLong(numEntries);
+        output.writeByte(END);
+        output.writeByte(0);
+        output.writeLong(0);
+        output.flush();
+    }
+
+    long getNumEntries() {
+        return numEntries;
+    }
+
+    private void add(long offset, int level, int tag, long size) throws IOException {
+        output.writeLong(offset);
+        output.writeByte(level);
+        output.writeByte(tag);
+        output.writeLong(size);
+        numEntries++;
+    }
+
+    /**
+     * @return the entries of an index, in file order
+     */
+    public static List<Entry> read(InputStream inputStream) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(inputStream, BUFFER_SIZE));
+        byte[] magic = new byte[MAGIC.length];
+        input.readFully(magic);
+        Validate.isTrue(Arrays.equals(magic, MAGIC), "Not a record index");
+        int version = input.readInt();
+        Validate.isTrue(version == VERSION, "Unsupported record index version %s", version);
+        input.readLong(); // minimum sub-record size
+
+        List<Entry> entries = new ArrayList<>();
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+        while (true) {
+            try {
+                input.readFully(entry.array());
+            } catch (EOFException e) {
+                throw new IllegalArgumentException("Incomplete record index after " + entries.size() + " entries", e);
+            }
+            int level = entry.get(8) & 0xFF;
+            if (level == END) {
+                Validate.isTrue(entry.getLong(0) == entries.size(), "Record index has %s entries instead of %s",
+                        entries.size(), entry.getLong(0));
+                Validate.isTrue(input.read() == -1, "Unexpected data after the end of the record index");
+                return entries;
+            }
+            entries.add(new Entry(entry.getLong(0), level, entry.get(9) & 0xFF, entry.getLong(10)));
+        }
+    }
+
+    public static class Entry {
+
+        private final long offset;
+        private final int level;
+        private final int tag;
+        private final long size;
+
+        Entry(long offset, int level, int tag, long size) {
+            this.offset = offset;
+            this.level = level;
+            this.tag = tag;
+            this.size = size;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return {@link #RECORD} or {@link #SUB_RECORD}
+         */
+        public int getLevel() {
+            return level;
+        }
+
+        public int getTag() {
+            return tag;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s 0x%02X at %s, %s bytes", level == RECORD ? "Record" : "Sub-record", tag, offset,
+                    size);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import java.util.Arrays;
+
+/**
+ * Sizes of heap dump values and sub-records for one identifier size, precomputed into tables.
+ * <br>
+ * A dump uses either 4 or 8 byte identifiers throughout, so {@link #forIdSize(int)} is called once per pipe and the
+ * sanitizer then reads sizes from final tables instead of resolving them from the id size for every value.
+ */
+final class RecordSizes {
+
+    private static final int NOT_A_ROOT = -1;
+
+    static final RecordSizes ID4 = new RecordSizes(4);
+    static final RecordSizes ID8 = new RecordSizes(8);
+
+    final int idSize;
+
+    /**
+     * CLASS DUMP bytes after the super class id, up to the constant pool: class loader, signers, protection domain
+     * and two reserved ids, then the u4 instance size
+     */
+    final int classDumpSkipSize;
+
+    // value sizes by basic type code, 0 for unknown codes
+    private final int[] valueSizes = new int[BasicType.U1_CODE_LIMIT];
+    // GC root sub-record bytes after the object id, by sub-record tag
+    private final int[] rootSizes = new int[256];
+
+    private RecordSizes(int idSize) {
+        this.idSize = idSize;
+        this.classDumpSkipSize = 5 * idSize + 4;
+
+        for (BasicType basicType : BasicType.values()) {
+            valueSizes[basicType.getU1Code()] = BasicType.findValueSize(basicType.getU1Code(), idSize);
+        }
+
+        Arrays.fill(rootSizes, NOT_A_ROOT);
+        rootSizes[0xFF] = 0; // ROOT UNKNOWN
+        rootSizes[0x01] = idSize; // ROOT JNI GLOBAL: JNI global ref id
+        rootSizes[0x02] = 4 + 4; // ROOT JNI LOCAL: thread serial number, frame number
+        rootSizes[0x03] = 4 + 4; // ROOT JAVA FRAME: thread serial number, frame number
+        rootSizes[0x04] = 4; // ROOT NATIVE STACK: thread serial number
+        rootSizes[0x05] = 0; // ROOT STICKY CLASS
+        rootSizes[0x06] = 4; // ROOT THREAD BLOCK: thread serial number
+        rootSizes[0x07] = 0; // ROOT MONITOR USED
+        rootSizes[0x08] = 4 + 4; // ROOT THREAD OBJECT: thread serial number, stack trace serial number
+    }
+
+    static RecordSizes forIdSize(int idSize) {
+        switch (idSize) {
+            case 4:
+                return ID4;
+            case 8:
+                return ID8;
+            default:
+                throw new IllegalArgumentException("Unknown id size: " + idSize);
+        }
+    }
+
+    /**
+     * @param u1Code basic type code
+     */
+    int valueSize(int u1Code) {
+        int valueSize = u1Code >= 0 && u1Code < valueSizes.length ? valueSizes[u1Code] : 0;
+        if (valueSize == 0) {
+            throw new IllegalArgumentException("Unknown basic type code: " + u1Code);
+        }
+        return valueSize;
+    }
+
+    boolean isRoot(int tag) {
+        return rootSizes[tag] != NOT_A_ROOT;
+    }
+
+    /**
+     * @param tag sub-record tag for which {@link #isRoot(int)} is true
+     * @return GC root sub-record bytes after the object id
+     */
+    int rootSize(int tag) {
+        return rootSizes[tag];
+    }
+}
@@ -0,0 +1,76 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+/**
+ * Outcome of a sanitization checked for overruns: the checked sizes and record counts, and the SHA-256 of the
+ * sanitized heap dump as written by the sanitizer, before any compression. The digest is not signed: it detects
+ * corruption of the output after the fact, not tampering.
+ */
+public class SanitizationSummary {
+
+    private final long numBytes;
+    private final long numRecords;
+    private final long numSubRecords;
+    private final byte[] sha256;
+
+    SanitizationSummary(long numBytes, long numRecords, long numSubRecords, byte[] sha256) {
+        this.numBytes = numBytes;
+        this.numRecords = numRecords;
+        this.numSubRecords = numSubRecords;
+        this.sha256 = sha256.clone();
+    }
+
+    /**
+     * @return size of both the input and the output
+     */
+    public long getNumBytes() {
+        return numBytes;
+    }
+
+    public long getNumRecords() {
+        return numRecords;
+    }
+
+    /**
+     * @return number of records within heap dump records and segments
+     */
+    public long getNumSubRecords() {
+        return numSubRecords;
+    }
+
+    /**
+     * @return lower case hex SHA-256 of the output
+     */
+    public String getSha256() {
+        StringBuilder sb = new StringBuilder(2 * sha256.length);
+        for (byte b : sha256) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("No overruns in %s bytes, %s records and %s heap dump sub-records, unsigned SHA-256 %s",
+                numBytes, numRecords, numSubRecords, getSha256());
+    }
+}
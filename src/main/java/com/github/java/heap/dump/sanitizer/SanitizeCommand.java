@@ -28,7 +28,10 @@ import picocli.CommandLine;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.IVersionProvider;
 import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
 import picocli.CommandLine.Parameters;
+import picocli.CommandLine.ParseResult;
+import picocli.CommandLine.RunLast;
 
 import java.io.File;
 import java.util.concurrent.Callable;
@@ -42,35 +45,166 @@ import static picocli.CommandLine.Help.Visibility.ALWAYS;
         versionProvider = ManifestVersionProvider.class)
 public class SanitizeCommand implements Callable<Void> {
 
+    static final String ANALYZE_COMMAND = "analyze";
+
     static CommandLine commandLine = newCommandLine();
 
-    @Parameters(index = "0", description = "Input heap dump .hprof. File or stdin")
+    // required by requireInputFile, as picocli would also require it before the analyze command
+    @Parameters(index = "0", arity = "0..1",
+            description = "Input heap dump .hprof, optionally gzip, zip or tar. File or stdin")
     private File inputFile;
 
     @Option(names = { "-a", "--tar-input" }, description = "Indicates that input is a tar archive")
     private boolean tarInput;
 
-    @Parameters(index = "1", description = "Output heap dump .hprof. File, stdout, or stderr")
+    @Option(names = { "--tar-output" },
+            description = "Write all entries of a tar input to a tar output, sanitizing heap dump entries")
+    private boolean tarOutput;
+
+    @Option(names = { "-f", "--follow" },
+            description = "Sanitize an input file that is still being written, until its HEAP_DUMP_END record")
+    private boolean follow;
+
+    @Option(names = { "--follow-timeout" },
+            description = "Seconds without growth after which a followed input file is considered complete",
+            defaultValue = "60", showDefaultValue = ALWAYS)
+    private int followTimeoutSeconds = 60;
+
+    @Parameters(index = "1", arity = "0..1",
+            description = "Output heap dump .hprof. File, stdout, or stderr. Omitted with --in-place")
     private File outputFile;
 
+    @Option(names = { "--batch" },
+            description = "Sanitize every heap dump of an input directory or glob such as dumps/*.hprof.gz"
+                    + " into an output directory")
+    private boolean batch;
+
+    @Option(names = { "--watch" },
+            description = "Keep sanitizing heap dumps as they land in an input directory, publishing them atomically"
+                    + " to an output directory")
+    private boolean watch;
+
+    @Option(names = { "--settle-seconds" },
+            description = "Seconds a watched heap dump must stay unchanged before it is sanitized",
+            defaultValue = "5", showDefaultValue = ALWAYS)
+    private int settleSeconds = 5;
+
+    @Option(names = { "-j", "--jobs" },
+            description = "Number of heap dumps sanitized concurrently in batch and watch modes. 0 for one per processor",
+            defaultValue = "0", showDefaultValue = ALWAYS)
+    private int jobs;
+
+    @Option(names = { "--memory-budget" },
+            description = "Memory shared by the buffers of concurrent batch jobs",
+            defaultValue = "1GB", showDefaultValue = ALWAYS)
+    private DataSize memoryBudget = DataSize.ofGigabytes(1);
+
+    @Option(names = { "-i", "--in-place" },
+            description = "Sanitize the input file in place instead of writing an output file")
+    private boolean inPlace;
+
     @Option(names = { "-z", "--zip-output" }, description = "Indicates that output should be zipped")
     private boolean zipOutput;
 
+    @Option(names = { "-g", "--gzip-output" },
+            description = "Indicates that output should be gzipped on all cores, in BGZF blocks with a .gzi index")
+    private boolean gzipOutput;
+
     @Option(names = { "-t", "--text" }, description = "Sanitization text to replace with", defaultValue = "\\0",
             showDefaultValue = ALWAYS)
     private String sanitizationText;
 
+    @Option(names = { "-F", "--field-rules" },
+            description = "Comma separated primitive instance fields to sanitize, as <class>.<field>[=zero|text]."
+                    + " <field> may be * for all primitive fields. For example java.lang.String.hash")
+    private String fieldRules;
+
+    @Option(names = { "-A", "--array-policies" },
+            description = "Comma separated sanitization of primitive arrays by element type, as"
+                    + " <type>=keep|zero|text|random[@<minLength>]. Shorter arrays are kept. For example"
+                    + " int=random@1024. char and byte arrays default to text, other arrays to keep")
+    private String arrayPolicies;
+
+    @Option(names = { "--secrets-file" },
+            description = "File of secrets, one per line, to redact from char and byte arrays in UTF-8, Latin-1 and"
+                    + " UTF-16. Only matches are replaced and the rest of the arrays is kept")
+    private File secretsFile;
+
+    @Option(names = { "--token-key-file" },
+            description = "File of a secret key, of at least 16 bytes, for replacing char and byte arrays with keyed"
+                    + " hash tokens of the same length instead of the text. Equal values get equal tokens")
+    private File tokenKeyFile;
+
+    @Option(names = { "--token-cache-memory" },
+            description = "Memory for caching the tokens of repeated values",
+            defaultValue = "64MB", showDefaultValue = ALWAYS)
+    private DataSize tokenCacheMemory = DataSize.ofMegabytes(64);
+
+    @Option(names = { "-S", "--strings-only" },
+            description = "Sanitize only the byte and char arrays of java.lang.String values, in two passes."
+                    + " Requires an input file")
+    private boolean stringsOnly;
+
+    @Option(names = { "--string-ids-memory" },
+            description = "Off-heap memory for the ids of String value arrays in strings-only mode",
+            defaultValue = "1GB", showDefaultValue = ALWAYS)
+    private DataSize stringIdsMemory = DataSize.ofGigabytes(1);
+
     @Option(names = { "-b", "--buffer-size" }, description = "Buffer size for reading and writing",
             defaultValue = "100MB", showDefaultValue = ALWAYS)
     private DataSize bufferSize = DataSize.ofMegabytes(100);
 
+    @Option(names = { "-s", "--strict" },
+            description = "Validate heap dump contents while sanitizing, such as object array elements. Slower")
+    private boolean strict;
+
+    @Option(names = { "-T", "--threads" },
+            description = "Number of threads sanitizing heap dump segments. More than 1 requires input and output files",
+            defaultValue = "1", showDefaultValue = ALWAYS)
+    private int threads = 1;
+
+    @Option(names = { "--async-io" },
+            description = "Read input ahead and write output behind on separate threads, for streamed input and output")
+    private boolean asyncIo;
+
+    @Option(names = { "--verify" },
+            description = "Detect records and sub-records that overrun their lengths, and output of another size than"
+                    + " the input, while writing. Also compute an unsigned SHA-256 of the output on a separate thread,"
+                    + " written to a .sha256 file next to plain output files")
+    private boolean verify;
+
+    @Option(names = { "--index" },
+            description = "Write a binary index of the offsets of records and large heap dump sub-records, to a .idx"
+                    + " file next to the output file. Requires a single thread and uncompressed output to a file")
+    private boolean index;
+
+    @Option(names = { "--index-min-size" },
+            description = "Size from which heap dump sub-records, such as arrays, are indexed",
+            defaultValue = "1MB", showDefaultValue = ALWAYS)
+    private DataSize indexMinSize = DataSize.ofMegabytes(1);
+
+    @Option(names = { "-p", "--progress-interval" }, description = "Seconds between progress reports",
+            defaultValue = "10", showDefaultValue = ALWAYS)
+    private int progressIntervalSeconds = 10;
+
     public static void main(String... args) throws Exception {
         commandLine.registerConverter(DataSize.class, DataSize::parse);
         commandLine.execute(args);
     }
 
     static CommandLine newCommandLine() {
-        return new CommandLine(new SanitizeCommand());
+        return new CommandLine(new SanitizeCommand())
+                .addSubcommand(new AnalyzeCommand())
+                .setExecutionStrategy(SanitizeCommand::requireInputFile);
+    }
+
+    static int requireInputFile(ParseResult parseResult) {
+        if (!parseResult.hasSubcommand() && !parseResult.isUsageHelpRequested()
+                && !parseResult.isVersionHelpRequested() && !parseResult.hasMatchedPositional(0)) {
+            throw new ParameterException(parseResult.commandSpec().commandLine(),
+                    "Missing required parameter: '<inputFile>'");
+        }
+        return new RunLast().execute(parseResult);
     }
 
     @Override
@@ -91,22 +225,118 @@ public class SanitizeCommand implements Callable<Void> {
         return tarInput;
     }
 
+    public boolean isTarOutput() {
+        return tarOutput;
+    }
+
+    public boolean isFollow() {
+        return follow;
+    }
+
+    public int getFollowTimeoutSeconds() {
+        return followTimeoutSeconds;
+    }
+
     public File getOutputFile() {
         return outputFile;
     }
 
+    public boolean isBatch() {
+        return batch;
+    }
+
+    public boolean isWatch() {
+        return watch;
+    }
+
+    public int getSettleSeconds() {
+        return settleSeconds;
+    }
+
+    public int getJobs() {
+        return jobs;
+    }
+
+    public long getMemoryBudgetByteSize() {
+        return memoryBudget.toBytes();
+    }
+
+    public boolean isInPlace() {
+        return inPlace;
+    }
+
     public boolean isZipOutput() {
         return zipOutput;
     }
 
+    public boolean isGzipOutput() {
+        return gzipOutput;
+    }
+
     public String getSanitizationText() {
         return StringEscapeUtils.unescapeJava(sanitizationText);
     }
 
+    public String getFieldRules() {
+        return fieldRules;
+    }
+
+    public String getArrayPolicies() {
+        return arrayPolicies;
+    }
+
+    public File getSecretsFile() {
+        return secretsFile;
+    }
+
+    public File getTokenKeyFile() {
+        return tokenKeyFile;
+    }
+
+    public long getTokenCacheMemoryByteSize() {
+        return tokenCacheMemory.toBytes();
+    }
+
+    public boolean isStringsOnly() {
+        return stringsOnly;
+    }
+
+    public long getStringIdsMemoryByteSize() {
+        return stringIdsMemory.toBytes();
+    }
+
     public int getBufferByteSize() {
         return Math.toIntExact(bufferSize.toBytes());
     }
 
+    public boolean isStrict() {
+        return strict;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public boolean isVerify() {
+        return verify;
+    }
+
+    public boolean isIndex() {
+        return index;
+    }
+
+    public long getIndexMinByteSize() {
+        return indexMinSize.toBytes();
+    }
+
+    public boolean isAsyncIo() {
+        return asyncIo;
+    }
+
+    public int getProgressIntervalSeconds() {
+        return progressIntervalSeconds;
+    }
+
     public void setInputFile(File inputFile) {
         this.inputFile = inputFile;
     }
@@ -115,22 +345,151 @@ public class SanitizeCommand implements Callable<Void> {
         this.tarInput = tarInput;
     }
 
+    public void setTarOutput(boolean tarOutput) {
+        this.tarOutput = tarOutput;
+    }
+
+    public void setFollow(boolean follow) {
+        this.follow = follow;
+    }
+
+    public void setFollowTimeoutSeconds(int followTimeoutSeconds) {
+        this.followTimeoutSeconds = followTimeoutSeconds;
+    }
+
     public void setOutputFile(File outputFile) {
         this.outputFile = outputFile;
     }
 
+    public void setBatch(boolean batch) {
+        this.batch = batch;
+    }
+
+    public void setWatch(boolean watch) {
+        this.watch = watch;
+    }
+
+    public void setSettleSeconds(int settleSeconds) {
+        this.settleSeconds = settleSeconds;
+    }
+
+    public void setJobs(int jobs) {
+        this.jobs = jobs;
+    }
+
+    public void setMemoryBudgetByteSize(long bytes) {
+        memoryBudget = DataSize.ofBytes(bytes);
+    }
+
+    public void setInPlace(boolean inPlace) {
+        this.inPlace = inPlace;
+    }
+
     public void setZipOutput(boolean zipOutput) {
         this.zipOutput = zipOutput;
     }
 
+    public void setGzipOutput(boolean gzipOutput) {
+        this.gzipOutput = gzipOutput;
+    }
+
     public void setSanitizationText(String sanitizationText) {
         this.sanitizationText = sanitizationText;
     }
 
+    public void setFieldRules(String fieldRules) {
+        this.fieldRules = fieldRules;
+    }
+
+    public void setArrayPolicies(String arrayPolicies) {
+        this.arrayPolicies = arrayPolicies;
+    }
+
+    public void setSecretsFile(File secretsFile) {
+        this.secretsFile = secretsFile;
+    }
+
+    public void setTokenKeyFile(File tokenKeyFile) {
+        this.tokenKeyFile = tokenKeyFile;
+    }
+
+    public void setTokenCacheMemoryByteSize(long bytes) {
+        tokenCacheMemory = DataSize.ofBytes(bytes);
+    }
+
+    public void setStringsOnly(boolean stringsOnly) {
+        this.stringsOnly = stringsOnly;
+    }
+
+    public void setStringIdsMemoryByteSize(long bytes) {
+        stringIdsMemory = DataSize.ofBytes(bytes);
+    }
+
     public void setBufferByteSize(int bytes) {
         bufferSize = DataSize.ofBytes(bytes);
     }
 
+    public void setStrict(boolean strict) {
+        this.strict = strict;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public void setVerify(boolean verify) {
+        this.verify = verify;
+    }
+
+    public void setIndex(boolean index) {
+        this.index = index;
+    }
+
+    public void setIndexMinByteSize(long bytes) {
+        indexMinSize = DataSize.ofBytes(bytes);
+    }
+
+    public void setAsyncIo(boolean asyncIo) {
+        this.asyncIo = asyncIo;
+    }
+
+    public void setProgressIntervalSeconds(int progressIntervalSeconds) {
+        this.progressIntervalSeconds = progressIntervalSeconds;
+    }
+
+    /**
+     * @return a single file command with the same options, for one job of a batch
+     */
+    SanitizeCommand forFiles(File inputFile, File outputFile) {
+        SanitizeCommand command = new SanitizeCommand();
+        command.inputFile = inputFile;
+        command.tarInput = tarInput;
+        command.tarOutput = tarOutput;
+        command.follow = follow;
+        command.followTimeoutSeconds = followTimeoutSeconds;
+        command.outputFile = outputFile;
+        command.inPlace = inPlace;
+        command.zipOutput = zipOutput;
+        command.gzipOutput = gzipOutput;
+        command.sanitizationText = sanitizationText;
+        command.fieldRules = fieldRules;
+        command.arrayPolicies = arrayPolicies;
+        command.secretsFile = secretsFile;
+        command.tokenKeyFile = tokenKeyFile;
+        command.tokenCacheMemory = tokenCacheMemory;
+        command.stringsOnly = stringsOnly;
+        command.stringIdsMemory = stringIdsMemory;
+        command.bufferSize = bufferSize;
+        command.strict = strict;
+        command.threads = threads;
+        command.asyncIo = asyncIo;
+        command.verify = verify;
+        command.index = index;
+        command.indexMinSize = indexMinSize;
+        command.progressIntervalSeconds = progressIntervalSeconds;
+        return command;
+    }
+
     @Override
     public String toString() {
         return ToStringBuilder.reflectionToString(this, ToStringStyle.MULTI_LINE_STYLE);
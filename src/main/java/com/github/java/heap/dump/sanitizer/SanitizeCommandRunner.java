@@ -20,32 +20,91 @@
 
 package com.github.java.heap.dump.sanitizer;
 
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.apache.commons.lang3.Validate;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Locale;
-
-import static com.github.java.heap.dump.sanitizer.ProgressMonitor.numBytesWrittenMonitor;
+import java.util.concurrent.atomic.LongAdder;
 
 public class SanitizeCommandRunner {
 
     private static final Logger logger = LogManager.getLogger();
 
+    static final int ASYNC_BUFFER_SIZE = 4 * 1024 * 1024;
+    static final int ASYNC_NUM_BUFFERS = 4;
+    static final String DIGEST_SUFFIX = ".sha256";
+    static final String INDEX_SUFFIX = ".idx";
+
     private SanitizeCommand command;
 
     private StreamFactory streamFactory;
 
+    private FieldRules fieldRules;
+
+    private ArrayPolicies arrayPolicies;
+
+    private SecretMatcher secretMatcher;
+    private byte[] tokenKey;
+
     public SanitizeCommandRunner(SanitizeCommand command) {
         this.command = command;
     }
 
     public void run() throws Exception {
         Validate.isTrue(command.getBufferByteSize() >= 0, "Invalid buffer size");
+        Validate.isTrue(command.getThreads() > 0, "Invalid number of threads");
+        Validate.isTrue(command.getProgressIntervalSeconds() > 0, "Invalid progress interval");
+        Validate.isTrue(!(command.isZipOutput() && command.isGzipOutput()), "Choose either zip or gzip output");
+        Validate.isTrue(!(command.isBatch() && command.isWatch()), "Choose either batch or watch mode");
+        Validate.isTrue(!(command.isInPlace() && command.isWatch()), "Watch mode cannot sanitize in place");
+        Validate.isTrue(!(command.isInPlace() && command.isFollow()), "Follow mode cannot sanitize in place");
+        Validate.isTrue(!(command.isVerify() && command.getThreads() > 1), "Verification requires a single thread");
+        Validate.isTrue(!(command.isIndex() && command.getThreads() > 1), "Indexing requires a single thread");
+        Validate.isTrue(!(command.isIndex() && (command.isZipOutput() || command.isGzipOutput()
+                || command.isTarOutput())), "Indexing requires uncompressed output");
+        Validate.isTrue(command.getIndexMinByteSize() > 0, "Invalid index min size");
+        Validate.isTrue(command.getFollowTimeoutSeconds() >= 0, "Invalid follow timeout");
+        Validate.isTrue(command.getStringIdsMemoryByteSize() >= OffHeapLongHashSet.MIN_CAPACITY * Long.BYTES,
+                "Invalid string ids memory");
+        Validate.isTrue(command.getTokenCacheMemoryByteSize() >= 0, "Invalid token cache memory");
+        Validate.isTrue(command.getSecretsFile() == null || command.getTokenKeyFile() == null,
+                "Choose either a secrets file or a token key file");
+        if (command.isInPlace()) {
+            Validate.isTrue(command.getOutputFile() == null, "Output file cannot be used with in-place sanitization");
+            Validate.isTrue(!command.isZipOutput(), "Zip output cannot be used with in-place sanitization");
+            Validate.isTrue(!command.isGzipOutput(), "Gzip output cannot be used with in-place sanitization");
+            Validate.isTrue(!command.isTarOutput(), "Tar output cannot be used with in-place sanitization");
+        } else {
+            Validate.notNull(command.getOutputFile(), "Output file is required");
+        }
+        fieldRules = command.getFieldRules() != null ? FieldRules.parse(command.getFieldRules()) : null;
+        arrayPolicies = ArrayPolicies.parse(command.getArrayPolicies());
+        secretMatcher = command.getSecretsFile() != null ? newSecretMatcher() : null;
+        tokenKey = command.getTokenKeyFile() != null ? readTokenKey() : null;
+        if (command.isBatch()) {
+            newBatchSanitizer().sanitize();
+            return;
+        }
+        if (command.isWatch()) {
+            try (WatchSanitizer watchSanitizer = newWatchSanitizer()) {
+                watchSanitizer.watch();
+            }
+            return;
+        }
         try (AutoCloseable closeable = streamFactory = newStreamFactory(command)) {
 
             doRun();
@@ -56,31 +115,206 @@ public class SanitizeCommandRunner {
 
         logger.info("Starting heap dump sanitization");
         logger.info("Input File: {}", command.getInputFile());
-        logger.info("Output File: {}", command.getOutputFile());
+        logger.info("Output File: {}", command.isInPlace() ? "(in-place)" : command.getOutputFile());
+
+        if (isMultiThreaded()) {
+            Validate.isTrue(streamFactory.isSeekableInput(), "Multiple threads require a regular input file");
+            Validate.isTrue(command.isInPlace() || streamFactory.isSeekableOutput(),
+                    "Multiple threads require an output file");
+        }
+        if (command.isStringsOnly()) {
+            Validate.isTrue(streamFactory.isSeekableInput(), "Strings-only mode requires a regular input file");
+        }
+        if (command.isIndex()) {
+            Validate.isTrue(command.isInPlace() || streamFactory.isSeekableOutput(), "Indexing requires an output file");
+        }
 
         Instant now = Instant.now();
-        try (InputStream inputStream = streamFactory.newInputStream();
-                OutputStream outputStream = streamFactory.newOutputStream()) {
-
-            HeapDumpSanitizer sanitizer = newSanitizer();
-            sanitizer.setInputStream(inputStream);
-            sanitizer.setOutputStream(outputStream);
-            sanitizer.setProgressMonitor(numBytesWrittenMonitor(command, logger));
-            sanitizer.setSanitizationText(command.getSanitizationText());
-            sanitizer.sanitize();
+        if (command.isTarOutput()) {
+            sanitizeTar();
+        } else {
+            sanitize();
         }
         logger.info("Finished in {}", friendlyDuration(now));
     }
 
+    private void sanitize() throws Exception {
+        LongAdder numBytesWritten = new LongAdder();
+        try (InputStream inputStream = newInputStream();
+                FileChannel inputChannel = newInputChannel();
+                FileChannel outputChannel = newOutputChannel();
+                OutputStream outputStream = newOutputStream(outputChannel);
+                OutputStream indexOutput = newIndexOutput()) {
+
+            ProgressMonitor progressMonitor = ProgressMonitor.start(numBytesWritten, totalBytes(inputChannel),
+                    command.getProgressIntervalSeconds(), logger);
+            try {
+                HeapDumpSanitizer sanitizer = newConfiguredSanitizer(numBytesWritten);
+                sanitizer.setInputStream(inputStream);
+                sanitizer.setInputChannel(inputChannel);
+                sanitizer.setOutputChannel(outputChannel);
+                sanitizer.setInPlace(command.isInPlace());
+                sanitizer.setFollow(command.isFollow());
+                sanitizer.setOutputStream(outputStream);
+                sanitizer.setIndexOutput(indexOutput);
+                sanitizer.setIndexMinSubRecordSize(command.getIndexMinByteSize());
+                sanitizer.sanitize();
+                if (command.isVerify()) {
+                    writeDigestFile(sanitizer.getSummary());
+                }
+            } finally {
+                progressMonitor.close();
+            }
+        } catch (Exception e) {
+            // a partial index would otherwise be mistaken for the index of a partial dump
+            if (command.isIndex()) {
+                Files.deleteIfExists(indexFile());
+            }
+            throw e;
+        }
+    }
+
+    // in sha256sum format, next to plain output files only since the digest is of the uncompressed output
+    private void writeDigestFile(SanitizationSummary summary) throws IOException {
+        if (!command.isInPlace() && !streamFactory.isSeekableOutput()) {
+            return;
+        }
+        File outputFile = command.isInPlace() ? command.getInputFile() : command.getOutputFile();
+        Path digestFile = Paths.get(outputFile.getPath() + DIGEST_SUFFIX);
+        String line = summary.getSha256() + "  " + outputFile.getName() + "\n";
+        Files.write(digestFile, line.getBytes(StandardCharsets.US_ASCII));
+        logger.info("Digest File: {}", digestFile);
+    }
+
+    // next to the output file, which is plain since offsets are of the uncompressed output
+    private OutputStream newIndexOutput() throws IOException {
+        if (!command.isIndex()) {
+            return null;
+        }
+        Path indexFile = indexFile();
+        logger.info("Index File: {}", indexFile);
+        return Files.newOutputStream(indexFile);
+    }
+
+    private Path indexFile() {
+        File outputFile = command.isInPlace() ? command.getInputFile() : command.getOutputFile();
+        return Paths.get(outputFile.getPath() + INDEX_SUFFIX);
+    }
+
+    // tar entries are streamed one after the other, each heap dump with its own sanitizer
+    private void sanitizeTar() throws Exception {
+        LongAdder numBytesWritten = new LongAdder();
+        try (TarArchiveInputStream inputStream = streamFactory.newTarInputStream();
+                OutputStream outputStream = newOutputStream(null);
+                TarArchiveOutputStream tarOutputStream = streamFactory.newTarOutputStream(outputStream)) {
+
+            ProgressMonitor progressMonitor = ProgressMonitor.start(numBytesWritten, -1,
+                    command.getProgressIntervalSeconds(), logger);
+            try {
+                TarSanitizer sanitizer = new TarSanitizer(() -> newConfiguredSanitizer(numBytesWritten));
+                sanitizer.setInputStream(inputStream);
+                sanitizer.setOutputStream(tarOutputStream);
+                sanitizer.setNumBytesWritten(numBytesWritten);
+                int numHeapDumps = sanitizer.sanitize();
+                logger.info("Sanitized {} heap dumps", numHeapDumps);
+            } finally {
+                progressMonitor.close();
+            }
+        }
+    }
+
+    private HeapDumpSanitizer newConfiguredSanitizer(LongAdder numBytesWritten) {
+        HeapDumpSanitizer sanitizer = newSanitizer();
+        sanitizer.setThreads(command.getThreads());
+        sanitizer.setStrict(command.isStrict());
+        sanitizer.setVerify(command.isVerify());
+        sanitizer.setNumBytesWritten(numBytesWritten);
+        sanitizer.setSanitizationText(command.getSanitizationText());
+        sanitizer.setFieldRules(fieldRules);
+        sanitizer.setArrayPolicies(arrayPolicies);
+        sanitizer.setSecretMatcher(secretMatcher);
+        sanitizer.setTokenKey(tokenKey);
+        sanitizer.setTokenCacheMemory(command.getTokenCacheMemoryByteSize());
+        sanitizer.setStringsOnly(command.isStringsOnly());
+        sanitizer.setStringValuesMemoryBudget(command.getStringIdsMemoryByteSize());
+        return sanitizer;
+    }
+
+    private SecretMatcher newSecretMatcher() throws IOException {
+        Validate.isTrue(command.getSecretsFile().isFile(), "Secrets file not found: %s", command.getSecretsFile());
+        SecretMatcher matcher = SecretMatcher.load(command.getSecretsFile().toPath());
+        logger.info("Secrets: {}", command.getSecretsFile());
+        return matcher;
+    }
+
+    private byte[] readTokenKey() throws IOException {
+        Validate.isTrue(command.getTokenKeyFile().isFile(), "Token key file not found: %s", command.getTokenKeyFile());
+        byte[] key = Files.readAllBytes(command.getTokenKeyFile().toPath());
+        Validate.isTrue(key.length >= Tokenizer.MIN_KEY_LENGTH, "Token key shorter than %s bytes",
+                Tokenizer.MIN_KEY_LENGTH);
+        logger.info("Token key: {}", command.getTokenKeyFile());
+        return key;
+    }
+
     protected StreamFactory newStreamFactory(SanitizeCommand command) {
         return new StreamFactory(command);
     }
 
+    protected BatchSanitizer newBatchSanitizer() {
+        return new BatchSanitizer(command);
+    }
+
+    protected WatchSanitizer newWatchSanitizer() {
+        return new WatchSanitizer(command);
+    }
+
     protected HeapDumpSanitizer newSanitizer() {
         return new HeapDumpSanitizer();
     }
 
-    private String friendlyDuration(Instant now) {
+    // seekable file input is memory mapped. everything else is streamed
+    private InputStream newInputStream() throws IOException {
+        if (streamFactory.isSeekableInput()) {
+            return null;
+        }
+        InputStream inputStream = streamFactory.newInputStream();
+        return command.isAsyncIo()
+                ? new ReadAheadInputStream(inputStream, ASYNC_BUFFER_SIZE, ASYNC_NUM_BUFFERS)
+                : inputStream;
+    }
+
+    private OutputStream newOutputStream(FileChannel outputChannel) throws IOException {
+        if (outputChannel != null) {
+            return null;
+        }
+        OutputStream outputStream = streamFactory.newOutputStream();
+        return command.isAsyncIo() && !command.isInPlace()
+                ? new WriteBehindOutputStream(outputStream, ASYNC_BUFFER_SIZE, ASYNC_NUM_BUFFERS)
+                : outputStream;
+    }
+
+    private FileChannel newInputChannel() throws IOException {
+        return streamFactory.isSeekableInput() ? streamFactory.newInputChannel() : null;
+    }
+
+    // file to file sanitization writes through a channel. Unchanged ranges are then transferred by the OS
+    // and segments can be written concurrently at their own offsets
+    private FileChannel newOutputChannel() throws IOException {
+        return streamFactory.isSeekableInput() && streamFactory.isSeekableOutput()
+                ? streamFactory.newOutputChannel()
+                : null;
+    }
+
+    // sanitized output is as large as its input. unknown for streamed input
+    private long totalBytes(FileChannel inputChannel) throws IOException {
+        return inputChannel != null ? inputChannel.size() : -1;
+    }
+
+    private boolean isMultiThreaded() {
+        return command.getThreads() > 1;
+    }
+
+    static String friendlyDuration(Instant now) {
         Duration duration = Duration.between(now, Instant.now());
         return duration.toString()
                 .substring(2)
@@ -0,0 +1,57 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.io.output.NullOutputStream;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link MappedPipe} that only reads. Piped and replaced byte ranges are skipped and nothing is written, so that
+ * a pre-pass can walk the records of a dump for what they describe without copying their contents.
+ */
+public class ScanPipe extends MappedPipe {
+
+    public ScanPipe(MappedInput input) {
+        super(input, new NullOutputStream(), null, new LongAdder());
+    }
+
+    // copy constructor
+    private ScanPipe(ScanPipe pipe, long limit) {
+        super(pipe, limit);
+    }
+
+    @Override
+    protected MappedPipe newBoundedPipe(long limit) {
+        return new ScanPipe(this, limit);
+    }
+
+    @Override
+    public void pipe(long count) throws IOException {
+        getInput().skip(Math.min(count, remaining()));
+    }
+
+    @Override
+    public void replace(byte[] tiles, long count) throws IOException {
+        skipInput(count);
+    }
+}
@@ -0,0 +1,258 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.lang3.Validate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * Aho-Corasick automaton that finds a dictionary of secrets, such as API keys and passwords, in array contents.
+ * <br>
+ * Each secret is matched in UTF-8 and Latin-1, as in byte arrays and compact strings, in UTF-16BE as in char arrays,
+ * which heap dumps write big endian, and in UTF-16LE as in the byte arrays of non-Latin-1 strings since JDK 9.
+ * The automaton is compiled into a dense DFA over the byte classes that occur in secrets, so that scanning costs
+ * one table lookup per byte whatever the number of secrets. Transitions into states that end a match are stored
+ * negated, so matches are checked without a second lookup. From the root state, bytes that start no secret are
+ * skipped with independent lookups, which run several times faster than the chain of dependent transitions.
+ */
+public class SecretMatcher {
+
+    static final int MIN_SECRET_LENGTH = 4;
+    private static final Charset[] ENCODINGS = {
+            StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1, StandardCharsets.UTF_16BE, StandardCharsets.UTF_16LE };
+
+    // byte -> byte class. 0 for bytes that occur in no secret
+    private final int[] classes = new int[256];
+    private final int numClasses;
+    // row offset of the next state by row offset of the state plus byte class, bitwise negated for match states
+    private final int[] transitions;
+    // longest secret ending in each state, by state number
+    private final int[] matchLengths;
+    // bytes that start a secret
+    private final boolean[] startBytes = new boolean[256];
+    private final int minLength;
+    private final int maxLength;
+
+    private SecretMatcher(List<byte[]> patterns) {
+        Validate.isTrue(!patterns.isEmpty(), "No secrets");
+        int nextClass = 1;
+        int min = Integer.MAX_VALUE;
+        int max = 0;
+        for (byte[] pattern : patterns) {
+            for (byte b : pattern) {
+                if (classes[b & 0xFF] == 0) {
+                    classes[b & 0xFF] = nextClass++;
+                }
+            }
+            min = Math.min(min, pattern.length);
+            max = Math.max(max, pattern.length);
+        }
+        numClasses = nextClass;
+        minLength = min;
+        maxLength = max;
+
+        // trie, with 0 for missing edges since no edge leads back to the root
+        int maxStates = 1;
+        for (byte[] pattern : patterns) {
+            maxStates += pattern.length;
+        }
+        Validate.isTrue((long) maxStates * numClasses < Integer.MAX_VALUE, "Too many secrets");
+        int[] delta = new int[maxStates * numClasses];
+        int[] lengths = new int[maxStates];
+        int numStates = 1;
+        for (byte[] pattern : patterns) {
+            int state = 0;
+            for (byte b : pattern) {
+                int edge = state * numClasses + classes[b & 0xFF];
+                if (delta[edge] == 0) {
+                    delta[edge] = numStates++;
+                }
+                state = delta[edge];
+            }
+            lengths[state] = pattern.length;
+        }
+
+        // failure links in breadth first order turn the trie into a DFA
+        int[] fail = new int[numStates];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < numClasses; c++) {
+            if (delta[c] != 0) {
+                queue.add(delta[c]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            lengths[state] = Math.max(lengths[state], lengths[fail[state]]);
+            for (int c = 0; c < numClasses; c++) {
+                int edge = state * numClasses + c;
+                int fallback = delta[fail[state] * numClasses + c];
+                if (delta[edge] != 0) {
+                    fail[delta[edge]] = fallback;
+                    queue.add(delta[edge]);
+                } else {
+                    delta[edge] = fallback;
+                }
+            }
+        }
+
+        transitions = new int[numStates * numClasses];
+        for (int i = 0; i < transitions.length; i++) {
+            int next = delta[i];
+            transitions[i] = lengths[next] > 0 ? ~(next * numClasses) : next * numClasses;
+        }
+        matchLengths = Arrays.copyOf(lengths, numStates);
+        for (byte[] pattern : patterns) {
+            startBytes[pattern[0] & 0xFF] = true;
+        }
+    }
+
+    /**
+     * Loads secrets from a UTF-8 file with one secret per line. Empty lines are ignored
+     */
+    public static SecretMatcher load(Path file) throws IOException {
+        List<String> secrets = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            if (!line.isEmpty()) {
+                Validate.isTrue(line.length() >= MIN_SECRET_LENGTH, "Secret shorter than %s characters on line %s",
+                        MIN_SECRET_LENGTH, lineNumber);
+                secrets.add(line);
+            }
+        }
+        return of(secrets);
+    }
+
+    public static SecretMatcher of(Collection<String> secrets) {
+        Set<ByteBuffer> patterns = new LinkedHashSet<>();
+        for (String secret : secrets) {
+            Validate.isTrue(secret.length() >= MIN_SECRET_LENGTH, "Secret shorter than %s characters",
+                    MIN_SECRET_LENGTH);
+            for (Charset encoding : ENCODINGS) {
+                if (encoding.newEncoder().canEncode(secret)) {
+                    patterns.add(ByteBuffer.wrap(secret.getBytes(encoding)));
+                }
+            }
+        }
+        List<byte[]> patternBytes = new ArrayList<>();
+        patterns.forEach(pattern -> patternBytes.add(pattern.array()));
+        return new SecretMatcher(patternBytes);
+    }
+
+    /**
+     * @return length in bytes of the shortest encoded secret
+     */
+    int getMinLength() {
+        return minLength;
+    }
+
+    /**
+     * @return length in bytes of the longest encoded secret
+     */
+    int getMaxLength() {
+        return maxLength;
+    }
+
+    Scanner newScanner() {
+        return new Scanner();
+    }
+
+    /**
+     * Scan state that carries matches across consecutive buffers of the same array. Not thread safe
+     */
+    class Scanner {
+
+        private int row;
+        private int changedEnd;
+
+        /**
+         * Starts scanning a new array
+         */
+        void reset() {
+            row = 0;
+            changedEnd = 0;
+        }
+
+        /**
+         * Scans buffer[from, to), which follows the bytes scanned so far, and overwrites every match with tiles.
+         * Matches may start in bytes before from that are still in buffer
+         */
+        void redact(byte[] buffer, int from, int to, byte[] tiles) {
+            int[] transitions = SecretMatcher.this.transitions;
+            int[] classes = SecretMatcher.this.classes;
+            boolean[] startBytes = SecretMatcher.this.startBytes;
+            int row = this.row;
+            for (int i = from; i < to; i++) {
+                if (row == 0) {
+                    while (i < to && !startBytes[buffer[i] & 0xFF]) {
+                        i++;
+                    }
+                    if (i == to) {
+                        break;
+                    }
+                }
+                int next = transitions[row + classes[buffer[i] & 0xFF]];
+                if (next < 0) {
+                    next = ~next;
+                    int end = i + 1;
+                    fill(buffer, end - matchLengths[next / numClasses], end, tiles);
+                    changedEnd = end;
+                }
+                row = next;
+            }
+            this.row = row;
+        }
+
+        /**
+         * @return end of the last redacted span in buffer, 0 if nothing was redacted
+         */
+        int getChangedEnd() {
+            return changedEnd;
+        }
+
+        /**
+         * Keeps track of redacted spans after count bytes are removed from the start of the buffer
+         */
+        void shift(int count) {
+            changedEnd = Math.max(0, changedEnd - count);
+        }
+
+        private void fill(byte[] buffer, int from, int to, byte[] tiles) {
+            for (int i = from, j = 0; i < to; i++, j++) {
+                buffer[i] = tiles[j % tiles.length];
+            }
+        }
+    }
+}
@@ -21,6 +21,8 @@
 package com.github.java.heap.dump.sanitizer;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.NullOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
@@ -36,12 +38,24 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.PushbackInputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 public class StreamFactory implements AutoCloseable {
 
     private static final String LOGGING_CONSOLE = "logging.console";
+    static final String GZIP_INDEX_SUFFIX = ".gzi";
+    private static final int INFLATER_BUFFER_SIZE = 64 * 1024;
+    private static final int DECOMPRESSION_BUFFER_SIZE = 1024 * 1024;
+    private static final int DECOMPRESSION_NUM_BUFFERS = 4;
     private static final PrintStream STDOUT = System.out;
     private static final PrintStream STDERR = System.err;
 
@@ -82,29 +96,139 @@ public class StreamFactory implements AutoCloseable {
     }
 
     public InputStream newInputStream() throws IOException {
+        InputStream inputStream = newDecompressedInputStream();
+        if (inputStream instanceof TarArchiveInputStream) {
+            TarArchiveInputStream tarStream = (TarArchiveInputStream) inputStream;
+            Validate.notNull(tarStream.getNextTarEntry(), "no tar entries");
+        }
+        return inputStream;
+    }
+
+    /**
+     * @return the whole tar archive input, before its first entry
+     */
+    public TarArchiveInputStream newTarInputStream() throws IOException {
+        InputStream inputStream = newDecompressedInputStream();
+        Validate.isInstanceOf(TarArchiveInputStream.class, inputStream, "input is not a tar archive");
+        return (TarArchiveInputStream) inputStream;
+    }
+
+    // plain input, or a tar archive positioned before its first entry
+    private InputStream newDecompressedInputStream() throws IOException {
+        Validate.isTrue(!command.isInPlace(), "in-place sanitization requires a regular input file");
         File inputFile = command.getInputFile();
-        String name = inputFile.getName();
 
-        InputStream inputStream = StringUtils.equalsAny(name, "-", "stdin", "0")
-                ? System.in
-                : new FileInputStream(inputFile);
+        InputStream inputStream;
+        if (isInputFromStdin()) {
+            inputStream = System.in;
+        } else if (command.isFollow()) {
+            inputStream = new FollowInputStream(inputFile.toPath(),
+                    TimeUnit.SECONDS.toMillis(command.getFollowTimeoutSeconds()));
+        } else {
+            inputStream = new FileInputStream(inputFile);
+        }
 
         inputStream = getBufferSize() == 0
                 ? inputStream
                 : new BufferedInputStream(inputStream, getBufferSize());
 
-        if (command.isTarInput()) {
-            TarArchiveInputStream tarStream = new TarArchiveInputStream(inputStream);
-            Validate.notNull(tarStream.getNextTarEntry(), "no tar entries");
-            return tarStream;
+        InputFormat format = detectInputFormat();
+        if (format == InputFormat.GZIP) {
+            PushbackInputStream gunzipStream = new PushbackInputStream(
+                    decompressInBackground(new GZIPInputStream(inputStream, INFLATER_BUFFER_SIZE)),
+                    InputFormat.HEADER_SIZE);
+            format = detectInputFormat(gunzipStream); // .tar.gz
+            inputStream = gunzipStream;
+
+        } else if (format == InputFormat.ZIP) {
+            ZipInputStream zipStream = new ZipInputStream(inputStream);
+            Validate.notNull(zipStream.getNextEntry(), "no zip entries");
+            inputStream = decompressInBackground(zipStream);
         }
-        return inputStream;
+
+        return command.isTarInput() || format == InputFormat.TAR
+                ? new TarArchiveInputStream(inputStream)
+                : inputStream;
+    }
+
+    /*
+     * Container format of input files, from their magic bytes. Stdin and followed files are not sniffed: stdin
+     * cannot be rewound, and a followed file may not have its header yet. Both must be plain or a tar archive
+     * with --tar-input
+     */
+    private InputFormat detectInputFormat() throws IOException {
+        return isInputFromStdin() || command.isFollow()
+                ? InputFormat.HPROF
+                : InputFormat.detect(command.getInputFile().toPath());
+    }
+
+    private InputFormat detectInputFormat(PushbackInputStream inputStream) throws IOException {
+        byte[] header = new byte[InputFormat.HEADER_SIZE];
+        int length = IOUtils.read(inputStream, header);
+        inputStream.unread(header, 0, length);
+        return InputFormat.detect(header, length);
+    }
+
+    // inflates on its own thread, ahead of sanitization
+    private InputStream decompressInBackground(InputStream inputStream) {
+        return new ReadAheadInputStream(inputStream, DECOMPRESSION_BUFFER_SIZE, DECOMPRESSION_NUM_BUFFERS);
+    }
+
+    /**
+     * @return true if input is a plain regular file that can be read through {@link #newInputChannel()}
+     */
+    public boolean isSeekableInput() {
+        return !isInputFromStdin()
+                && !command.isTarInput()
+                && !command.isFollow()
+                && Files.isRegularFile(command.getInputFile().toPath())
+                && isPlainInputFile();
+    }
+
+    // unreadable files are left to the streamed path, which reports the actual error
+    private boolean isPlainInputFile() {
+        try {
+            return detectInputFormat() == InputFormat.HPROF;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public FileChannel newInputChannel() throws IOException {
+        Validate.isTrue(isSeekableInput(), "input is not a seekable file");
+        Path inputPath = command.getInputFile().toPath();
+        return command.isInPlace()
+                ? FileChannel.open(inputPath, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(inputPath, StandardOpenOption.READ);
+    }
+
+    /**
+     * @return true if output is a plain file that can be written through {@link #newOutputChannel()}
+     */
+    public boolean isSeekableOutput() {
+        return !command.isInPlace()
+                && !command.isZipOutput()
+                && !command.isGzipOutput()
+                && !isOutputToStdout()
+                && !isOutputToStderr();
+    }
+
+    public FileChannel newOutputChannel() throws IOException {
+        Validate.isTrue(isSeekableOutput(), "output is not a seekable file");
+        File outputFile = command.getOutputFile();
+        Validate.isTrue(!command.getInputFile().equals(outputFile), "input and output files cannot be the same");
+        return FileChannel.open(outputFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
     }
 
     public OutputStream newOutputStream() throws IOException {
         File outputFile = command.getOutputFile();
         OutputStream output;
-        if (isOutputToStdout()) {
+        if (command.isInPlace()) {
+            // sanitized bytes are written back through the input channel
+            return new NullOutputStream();
+
+        } else if (isOutputToStdout()) {
             output = stdOutboundStream;
 
         } else if (isOutputToStderr()) {
@@ -127,19 +251,41 @@ public class StreamFactory implements AutoCloseable {
             zipStream.putNextEntry(new ZipEntry(entryName));
             return zipStream;
         }
+        if (command.isGzipOutput()) {
+            // block index is written next to output files only
+            OutputStream indexOutput = isOutputToStdout() || isOutputToStderr()
+                    ? null
+                    : new BufferedOutputStream(new FileOutputStream(outputFile.getPath() + GZIP_INDEX_SUFFIX));
+            return new ParallelGzipOutputStream(output, indexOutput, Runtime.getRuntime().availableProcessors());
+        }
         return output;
     }
 
+    /**
+     * Wraps output, such as {@link #newOutputStream()}, in a tar archive. Closing it finishes the archive
+     */
+    public TarArchiveOutputStream newTarOutputStream(OutputStream outputStream) {
+        TarArchiveOutputStream tarStream = new TarArchiveOutputStream(outputStream);
+        tarStream.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+        tarStream.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+        tarStream.setAddPaxHeadersForNonAsciiNames(true);
+        return tarStream;
+    }
+
+    private boolean isInputFromStdin() {
+        File inputFile = command.getInputFile();
+        String name = inputFile.getName();
+        return StringUtils.equalsAny(name, "-", "stdin", "0");
+    }
+
     private boolean isOutputToStdout() {
         File outputFile = command.getOutputFile();
-        String name = outputFile.getName();
-        return StringUtils.equalsAny(name, "-", "stdout", "1");
+        return outputFile != null && StringUtils.equalsAny(outputFile.getName(), "-", "stdout", "1");
     }
 
     private boolean isOutputToStderr() {
         File outputFile = command.getOutputFile();
-        String name = outputFile.getName();
-        return StringUtils.equalsAny(name, "=", "stderr", "2");
+        return outputFile != null && StringUtils.equalsAny(outputFile.getName(), "=", "stderr", "2");
     }
 
     private int getBufferSize() {
@@ -0,0 +1,113 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Ids of the arrays that hold the contents of java.lang.String instances, collected by a pre-pass so that
+ * string-only sanitization can leave every other byte and char array alone.
+ * <br>
+ * It is fed, in heap dump order, with the UTF8 symbols and LOAD_CLASS record that name java.lang.String, the CLASS_DUMP
+ * record that locates its value field, and then the value field of each String instance. The value is a char array
+ * up to JDK 8 and a byte array since, either way a single object id per instance.
+ */
+class StringValues {
+
+    static final String STRING_CLASS_NAME = "java/lang/String";
+    static final String VALUE_FIELD_NAME = "value";
+
+    private final OffHeapLongHashSet valueIds;
+
+    private long stringClassNameId;
+    private long valueFieldNameId;
+    private long stringClassId;
+    private int valueOffset = -1;
+
+    /**
+     * @param maxBytes memory budget of the value ids
+     */
+    StringValues(long maxBytes) {
+        this.valueIds = new OffHeapLongHashSet(maxBytes);
+    }
+
+    boolean isSymbolLength(long numBytes) {
+        return numBytes == STRING_CLASS_NAME.length() || numBytes == VALUE_FIELD_NAME.length();
+    }
+
+    void addSymbol(long id, String symbol) {
+        if (STRING_CLASS_NAME.equals(symbol)) {
+            stringClassNameId = id;
+        } else if (VALUE_FIELD_NAME.equals(symbol)) {
+            valueFieldNameId = id;
+        }
+    }
+
+    void addLoadClass(long classId, long nameId) {
+        if (nameId != 0 && nameId == stringClassNameId) {
+            stringClassId = classId;
+        }
+    }
+
+    /**
+     * @param fieldNameIds symbol ids of the instance fields, in dump order
+     * @param fieldSizes value sizes of the instance fields, 0 for object references
+     */
+    void addClass(long classId, long[] fieldNameIds, int[] fieldSizes, int idSize) {
+        if (classId == 0 || classId != stringClassId) {
+            return;
+        }
+        int offset = 0;
+        for (int i = 0; i < fieldNameIds.length; i++) {
+            if (fieldSizes[i] == 0 && fieldNameIds[i] == valueFieldNameId) {
+                valueOffset = offset;
+                return;
+            }
+            offset += fieldSizes[i] > 0 ? fieldSizes[i] : idSize;
+        }
+    }
+
+    boolean isStringClass(long classId) {
+        return classId != 0 && classId == stringClassId;
+    }
+
+    /**
+     * @return offset of the value field within the field values of a String instance dump
+     */
+    int getValueOffset() {
+        Validate.validState(valueOffset >= 0, "String instance dumped before the java.lang.String class dump");
+        return valueOffset;
+    }
+
+    void addValue(long arrayId) {
+        if (arrayId != 0) {
+            valueIds.add(arrayId);
+        }
+    }
+
+    boolean isValue(long arrayId) {
+        return valueIds.contains(arrayId);
+    }
+
+    long size() {
+        return valueIds.size();
+    }
+}
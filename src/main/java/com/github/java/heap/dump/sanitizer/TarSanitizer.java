@@ -0,0 +1,125 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.lang3.Validate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Streams a whole tar archive into another one, sanitizing every heap dump entry and copying other entries unchanged.
+ * <br>
+ * A sanitized heap dump is exactly as large as the original, so each entry header is written as read, before its
+ * contents, and no temporary files are needed. Heap dumps are recognized from their contents, not their names.
+ */
+public class TarSanitizer {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final byte[] HPROF_MAGIC = "JAVA PROFILE 1.0.".getBytes(StandardCharsets.US_ASCII);
+
+    private final Supplier<HeapDumpSanitizer> sanitizerFactory;
+    private TarArchiveInputStream inputStream;
+    private TarArchiveOutputStream outputStream;
+    private LongAdder numBytesWritten = new LongAdder();
+
+    /**
+     * @param sanitizerFactory supplies a configured sanitizer for each heap dump entry. Its streams are set here
+     */
+    public TarSanitizer(Supplier<HeapDumpSanitizer> sanitizerFactory) {
+        this.sanitizerFactory = sanitizerFactory;
+    }
+
+    public void setInputStream(TarArchiveInputStream inputStream) {
+        this.inputStream = inputStream;
+    }
+
+    public void setOutputStream(TarArchiveOutputStream outputStream) {
+        this.outputStream = outputStream;
+    }
+
+    /**
+     * Counter of entry bytes written so far, sanitized or copied
+     */
+    public void setNumBytesWritten(LongAdder numBytesWritten) {
+        this.numBytesWritten = numBytesWritten;
+    }
+
+    /**
+     * Sanitizes all entries and finishes the output archive, leaving both streams open
+     *
+     * @return number of heap dumps sanitized
+     */
+    public int sanitize() throws IOException {
+        Validate.notNull(inputStream, "tar input is required");
+        Validate.notNull(outputStream, "tar output is required");
+
+        int numHeapDumps = 0;
+        TarArchiveEntry entry;
+        while ((entry = inputStream.getNextTarEntry()) != null) {
+            outputStream.putArchiveEntry(entry);
+            if (entry.isFile()) {
+                PushbackInputStream entryStream = new PushbackInputStream(inputStream, HPROF_MAGIC.length);
+                if (isHeapDump(entryStream)) {
+                    logger.info("Sanitizing tar entry: {}", entry.getName());
+                    sanitizeEntry(entryStream);
+                    numHeapDumps++;
+                } else {
+                    logger.debug("Copying tar entry: {}", entry.getName());
+                    numBytesWritten.add(IOUtils.copyLarge(entryStream, outputStream));
+                }
+            }
+            // fails if a sanitized entry came out shorter than its header says
+            outputStream.closeArchiveEntry();
+        }
+        outputStream.finish();
+        return numHeapDumps;
+    }
+
+    private void sanitizeEntry(InputStream entryStream) throws IOException {
+        HeapDumpSanitizer sanitizer = sanitizerFactory.get();
+        sanitizer.setInputStream(new CloseShieldInputStream(entryStream));
+        sanitizer.setOutputStream(new CloseShieldOutputStream(outputStream));
+        sanitizer.setNumBytesWritten(numBytesWritten);
+        sanitizer.sanitize();
+    }
+
+    private boolean isHeapDump(PushbackInputStream entryStream) throws IOException {
+        byte[] header = new byte[HPROF_MAGIC.length];
+        int length = IOUtils.read(entryStream, header);
+        entryStream.unread(header, 0, length);
+        return length == header.length && Arrays.equals(header, HPROF_MAGIC);
+    }
+}
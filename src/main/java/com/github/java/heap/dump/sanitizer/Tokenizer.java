@@ -0,0 +1,162 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.lang3.Validate;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Replaces array contents with deterministic tokens of the same length, so that equal values keep equal tokens
+ * without revealing the values. Short values have few token characters, so distinct short values may share a token.
+ * <br>
+ * A token is derived from the HMAC-SHA256 of the content under a secret key, expanded with SHA-256 in counter mode,
+ * and written as URL safe base64 characters in the last byte of each element. For char arrays that is one ASCII
+ * character per char. Heap dumps repeat interned values many times, so the key streams of arrays up to
+ * {@value #MAX_CACHED_LENGTH} bytes are kept in an LRU cache by content, within a memory budget.
+ * <br>
+ * Not thread safe: each sanitizing thread has its own tokenizer.
+ */
+public class Tokenizer {
+
+    static final int MIN_KEY_LENGTH = 16;
+    static final int MAX_CACHED_LENGTH = 64 * 1024;
+    // approximate memory of a cache entry besides its content and key stream
+    static final int ENTRY_OVERHEAD = 128;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int BLOCK_SIZE = 32;
+    private static final byte[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    private final Mac mac;
+    private final MessageDigest digest;
+    private final long cacheMemory;
+    // key streams by content, in access order
+    private final LinkedHashMap<ByteBuffer, byte[]> cache = new LinkedHashMap<>(1024, 0.75f, true);
+    private long cachedBytes;
+    private long numCacheHits;
+    private byte[] keyStream = new byte[BLOCK_SIZE];
+    private final byte[] counter = new byte[Long.BYTES];
+
+    public Tokenizer(byte[] key, long cacheMemory) {
+        Validate.isTrue(key.length >= MIN_KEY_LENGTH, "Token key shorter than %s bytes", MIN_KEY_LENGTH);
+        try {
+            mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(key, MAC_ALGORITHM));
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        this.cacheMemory = cacheMemory;
+    }
+
+    /**
+     * Replaces the first length bytes of buffer with their token. Arrays longer than a buffer are tokenized in
+     * chunks numbered from 0, each chunk with its own token
+     */
+    public void tokenize(byte[] buffer, int length, int elementSize, long chunk) {
+        byte[] stream = null;
+        boolean cacheable = chunk == 0 && length <= MAX_CACHED_LENGTH && cacheMemory > 0;
+        if (cacheable) {
+            stream = cache.get(ByteBuffer.wrap(buffer, 0, length));
+        }
+        if (stream != null) {
+            numCacheHits++;
+        } else {
+            stream = computeKeyStream(buffer, length, chunk);
+            if (cacheable) {
+                cache(Arrays.copyOf(buffer, length), Arrays.copyOf(stream, length));
+            }
+        }
+
+        if (elementSize == 1) {
+            for (int i = 0; i < length; i++) {
+                buffer[i] = ALPHABET[stream[i] & 0x3F];
+            }
+        } else {
+            Arrays.fill(buffer, 0, length, (byte) 0);
+            for (int i = elementSize - 1; i < length; i += elementSize) {
+                buffer[i] = ALPHABET[stream[i] & 0x3F];
+            }
+        }
+    }
+
+    long getNumCacheHits() {
+        return numCacheHits;
+    }
+
+    long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    private byte[] computeKeyStream(byte[] buffer, int length, long chunk) {
+        int size = (length + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+        if (keyStream.length < size) {
+            keyStream = new byte[size];
+        }
+        try {
+            setCounter(chunk);
+            mac.update(counter);
+            mac.update(buffer, 0, length);
+            mac.doFinal(keyStream, 0);
+            for (int offset = BLOCK_SIZE; offset < size; offset += BLOCK_SIZE) {
+                setCounter(offset / BLOCK_SIZE);
+                digest.update(keyStream, 0, BLOCK_SIZE);
+                digest.update(counter);
+                digest.digest(keyStream, offset, BLOCK_SIZE);
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        return keyStream;
+    }
+
+    private void setCounter(long value) {
+        for (int i = counter.length - 1; i >= 0; i--) {
+            counter[i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private void cache(byte[] content, byte[] stream) {
+        cache.put(ByteBuffer.wrap(content), stream);
+        cachedBytes += entrySize(content.length);
+        Iterator<Map.Entry<ByteBuffer, byte[]>> iterator = cache.entrySet().iterator();
+        while (cachedBytes > cacheMemory && iterator.hasNext()) {
+            cachedBytes -= entrySize(iterator.next().getValue().length);
+            iterator.remove();
+        }
+    }
+
+    private static long entrySize(int length) {
+        return 2L * length + ENTRY_OVERHEAD;
+    }
+}
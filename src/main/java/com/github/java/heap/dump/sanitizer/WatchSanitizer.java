@@ -0,0 +1,284 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long running mode that sanitizes heap dumps as they land in a spool directory, such as a -XX:HeapDumpPath.
+ * <br>
+ * A dump is considered complete once its size and modification time stay unchanged for the settle period. It is then
+ * sanitized by the usual {@link SanitizeCommandRunner} pipeline on a bounded pool, into a staging directory next to the
+ * outputs, and published with an atomic move so that readers of the output directory never see a partial dump.
+ */
+public class WatchSanitizer implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    static final String STAGING_DIRECTORY = ".sanitizing";
+    private static final long POLL_MILLIS = 500;
+    // files written next to a staged dump, published before it and deleted with it
+    private static final String[] SIDECAR_SUFFIXES = { StreamFactory.GZIP_INDEX_SUFFIX,
+            SanitizeCommandRunner.DIGEST_SUFFIX, SanitizeCommandRunner.INDEX_SUFFIX };
+
+    private final SanitizeCommand command;
+    private final Path inputDirectory;
+    private final Path outputDirectory;
+    private final Path stagingDirectory;
+    private final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + BatchSanitizer.DEFAULT_GLOB);
+
+    // watch thread only
+    private final Map<Path, Candidate> candidates = new HashMap<>();
+
+    // by output name, as heap.hprof and heap.hprof.gz are staged and published to the same file
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private final Map<Path, FileState> attempted = new ConcurrentHashMap<>();
+    private volatile WatchService watchService;
+    private volatile boolean closed;
+
+    public WatchSanitizer(SanitizeCommand command) {
+        this.command = command;
+        this.inputDirectory = command.getInputFile().toPath().toAbsolutePath();
+        this.outputDirectory = command.getOutputFile().toPath().toAbsolutePath();
+        this.stagingDirectory = outputDirectory.resolve(STAGING_DIRECTORY);
+    }
+
+    /**
+     * Watches the input directory until {@link #close()} or interruption, then waits for running jobs
+     */
+    public void watch() throws IOException {
+        Validate.isTrue(command.getJobs() >= 0, "Invalid number of jobs");
+        Validate.isTrue(command.getSettleSeconds() >= 0, "Invalid settle period");
+        Validate.isTrue(Files.isDirectory(inputDirectory), "Watched input must be a directory");
+        Validate.isTrue(!inputDirectory.equals(outputDirectory), "Output directory must differ from watched directory");
+        Files.createDirectories(stagingDirectory);
+
+        int jobs = BatchSanitizer.getJobs(command);
+        logger.info("Watching {} with {} jobs", inputDirectory, jobs);
+        ExecutorService executor = Executors.newFixedThreadPool(jobs);
+        try (WatchService service = inputDirectory.getFileSystem().newWatchService()) {
+            watchService = service;
+            inputDirectory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            // dumps that landed while no one was watching
+            scan();
+
+            while (!closed) {
+                WatchKey key = service.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            scan();
+                        } else {
+                            track(inputDirectory.resolve((Path) event.context()));
+                        }
+                    }
+                    key.reset();
+                }
+                submitSettled(executor);
+            }
+        } catch (ClosedWatchServiceException e) {
+            logger.debug("Watch service closed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+            awaitJobs(executor);
+        }
+        logger.info("Stopped watching {}", inputDirectory);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        WatchService service = watchService;
+        if (service != null) {
+            service.close();
+        }
+    }
+
+    protected SanitizeCommandRunner newRunner(SanitizeCommand jobCommand) {
+        return new SanitizeCommandRunner(jobCommand);
+    }
+
+    private void scan() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(inputDirectory)) {
+            stream.forEach(this::track);
+        }
+    }
+
+    private void track(Path file) {
+        if (matcher.matches(file.getFileName())) {
+            candidates.putIfAbsent(file, new Candidate());
+        }
+    }
+
+    private void submitSettled(ExecutorService executor) throws IOException {
+        long now = System.nanoTime();
+        long settleNanos = TimeUnit.SECONDS.toNanos(command.getSettleSeconds());
+
+        Iterator<Map.Entry<Path, Candidate>> iterator = candidates.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Candidate> entry = iterator.next();
+            Path file = entry.getKey();
+            Candidate candidate = entry.getValue();
+
+            FileState state = FileState.of(file);
+            if (state == null) {
+                iterator.remove(); // deleted or not a regular file
+            } else if (!state.equals(candidate.state)) {
+                candidate.state = state;
+                candidate.stableSince = now;
+            } else if (now - candidate.stableSince >= settleNanos) {
+                String name = BatchSanitizer.outputName(command, file);
+                if (state.equals(attempted.get(file))) {
+                    iterator.remove();
+                } else if (inFlight.add(name)) {
+                    iterator.remove();
+                    executor.submit(() -> sanitize(file, name, state));
+                } else if (!candidate.deferred) {
+                    // kept as a candidate until the other dump is published, then published over it
+                    candidate.deferred = true;
+                    logger.info("Deferring {} until the running job for {} is done", file, name);
+                }
+            }
+        }
+    }
+
+    private void sanitize(Path inputFile, String name, FileState state) {
+        Path stagedFile = stagingDirectory.resolve(name);
+        try {
+            newRunner(command.forFiles(inputFile.toFile(), stagedFile.toFile())).run();
+            publish(stagedFile, outputDirectory.resolve(name));
+            logger.info("Published {}", outputDirectory.resolve(name));
+        } catch (Exception e) {
+            logger.error("Failed to sanitize {}", inputFile, e);
+            deleteQuietly(stagedFile);
+            for (String suffix : SIDECAR_SUFFIXES) {
+                deleteQuietly(sidecarFile(stagedFile, suffix));
+            }
+        } finally {
+            attempted.put(inputFile, state);
+            inFlight.remove(name);
+        }
+    }
+
+    // sidecar files go first, so that they are in place once the dump appears
+    private void publish(Path stagedFile, Path outputFile) throws IOException {
+        for (String suffix : SIDECAR_SUFFIXES) {
+            Path stagedSidecar = sidecarFile(stagedFile, suffix);
+            if (Files.exists(stagedSidecar)) {
+                Files.move(stagedSidecar, sidecarFile(outputFile, suffix), StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        Files.move(stagedFile, outputFile, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path sidecarFile(Path file, String suffix) {
+        return file.resolveSibling(file.getFileName() + suffix);
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Could not delete {}", file, e);
+        }
+    }
+
+    private void awaitJobs(ExecutorService executor) {
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.info("Waiting for running jobs");
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Candidate {
+        FileState state;
+        long stableSince;
+        boolean deferred;
+    }
+
+    private static class FileState {
+        final long size;
+        final long lastModified;
+
+        FileState(long size, long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        // null if the file is gone
+        static FileState of(Path file) throws IOException {
+            try {
+                return Files.isRegularFile(file)
+                        ? new FileState(Files.size(file), Files.getLastModifiedTime(file).toMillis())
+                        : null;
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof FileState)) {
+                return false;
+            }
+            FileState other = (FileState) obj;
+            return size == other.size && lastModified == other.lastModified;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, lastModified);
+        }
+    }
+}
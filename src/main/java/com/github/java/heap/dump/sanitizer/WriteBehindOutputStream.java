@@ -0,0 +1,191 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.lang3.Validate;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Writes to an output stream behind the caller on a background thread, from a fixed pool of buffers.
+ * <br>
+ * Full buffers are queued to the writer thread and come back to the pool once written, so the caller blocks
+ * only when numBuffers buffers are waiting to be written. {@link #flush()} waits until everything written so far
+ * has reached the underlying stream.
+ */
+public class WriteBehindOutputStream extends OutputStream {
+
+    // queued markers
+    private static final ByteBuffer FLUSH = ByteBuffer.allocate(0);
+    private static final ByteBuffer CLOSE = ByteBuffer.allocate(0);
+
+    private final OutputStream output;
+    private final BlockingQueue<ByteBuffer> freeBuffers;
+    private final BlockingQueue<ByteBuffer> filledBuffers;
+    private final Semaphore flushed = new Semaphore(0);
+    private final Thread writer;
+
+    private volatile Throwable failure;
+    private ByteBuffer current;
+    private boolean closed;
+
+    public WriteBehindOutputStream(OutputStream output, int bufferSize, int numBuffers) {
+        Validate.isTrue(bufferSize > 0, "Invalid buffer size: %s", bufferSize);
+        Validate.isTrue(numBuffers > 0, "Invalid number of buffers: %s", numBuffers);
+        this.output = output;
+        this.freeBuffers = new ArrayBlockingQueue<>(numBuffers);
+        this.filledBuffers = new ArrayBlockingQueue<>(numBuffers + 1);
+        for (int i = 0; i < numBuffers; i++) {
+            freeBuffers.add(ByteBuffer.allocate(bufferSize));
+        }
+
+        writer = new Thread(this::writeLoop, "write-behind");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // after any failure, buffers are still drained and flushes released so that the caller never blocks on a dead
+    // writer
+    private void writeLoop() {
+        try {
+            while (true) {
+                ByteBuffer buffer = filledBuffers.take();
+                if (buffer == CLOSE) {
+                    return;
+                }
+                try {
+                    if (failure == null) {
+                        if (buffer == FLUSH) {
+                            output.flush();
+                        } else {
+                            output.write(buffer.array(), 0, buffer.position());
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure = e;
+                } finally {
+                    if (buffer == FLUSH) {
+                        flushed.release();
+                    } else {
+                        buffer.clear();
+                        freeBuffers.add(buffer);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // abandoned
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureRemaining();
+        current.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        int offset = off;
+        int remaining = len;
+        while (remaining > 0) {
+            ensureRemaining();
+            int numBytes = Math.min(remaining, current.remaining());
+            current.put(b, offset, numBytes);
+            offset += numBytes;
+            remaining -= numBytes;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        checkFailure();
+        submitCurrent();
+        put(FLUSH);
+        try {
+            flushed.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while flushing");
+        }
+        checkFailure();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+        } finally {
+            put(CLOSE);
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            output.close();
+        }
+    }
+
+    private void ensureRemaining() throws IOException {
+        if (current != null && current.hasRemaining()) {
+            return;
+        }
+        checkFailure();
+        submitCurrent();
+        try {
+            current = freeBuffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while writing behind");
+        }
+    }
+
+    private void submitCurrent() throws IOException {
+        if (current != null && current.position() > 0) {
+            put(current);
+            current = null;
+        }
+    }
+
+    private void put(ByteBuffer buffer) throws IOException {
+        try {
+            filledBuffers.put(buffer);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while writing behind");
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("write behind failed", failure);
+        }
+    }
+}
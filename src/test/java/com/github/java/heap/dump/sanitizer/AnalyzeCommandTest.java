@@ -0,0 +1,75 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AnalyzeCommandTest {
+
+    @Test
+    public void registeredAsSubcommand() {
+        assertThat(SanitizeCommand.newCommandLine().getSubcommands())
+                .containsKey(SanitizeCommand.ANALYZE_COMMAND);
+    }
+
+    @Test
+    public void writesReport(@TempDir Path tempDir) throws Exception {
+        SyntheticHeapDump syntheticHeapDump = new SyntheticHeapDump();
+        syntheticHeapDump.setSize(256 * 1024);
+        syntheticHeapDump.setSegmentSize(64 * 1024);
+        Path heapDump = tempDir.resolve("heap.hprof");
+        try (OutputStream output = Files.newOutputStream(heapDump)) {
+            syntheticHeapDump.writeTo(output);
+        }
+        Path report = tempDir.resolve("report.json");
+
+        List<SanitizeCommand> streamCommands = new ArrayList<>();
+        AnalyzeCommand command = new AnalyzeCommand() {
+            @Override
+            protected StreamFactory newStreamFactory(SanitizeCommand streamCommand) {
+                streamCommands.add(streamCommand);
+                return super.newStreamFactory(streamCommand);
+            }
+        };
+        command.setInputFile(heapDump.toFile());
+        command.setReportFile(report.toFile());
+        command.call();
+
+        assertThat(new String(Files.readAllBytes(report), StandardCharsets.UTF_8))
+                .startsWith("{\n")
+                .contains("\"bytes\": " + Files.size(heapDump) + ",\n")
+                .contains("\"HEAP_DUMP_END\": { \"count\": 1, \"bytes\": 9 }")
+                .contains("\"PRIMITIVE_ARRAY_DUMP\": ");
+        assertThat(streamCommands)
+                .extracting(SanitizeCommand::getBufferByteSize)
+                .containsExactly(AnalyzeCommand.BUFFER_SIZE);
+    }
+}
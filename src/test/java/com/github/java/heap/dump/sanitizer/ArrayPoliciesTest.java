@@ -0,0 +1,91 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import com.github.java.heap.dump.sanitizer.ArrayPolicies.Policy;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ArrayPoliciesTest {
+
+    private static final int CHAR = BasicType.CHAR.getU1Code();
+    private static final int BYTE = BasicType.BYTE.getU1Code();
+    private static final int INT = BasicType.INT.getU1Code();
+    private static final int LONG = BasicType.LONG.getU1Code();
+    private static final int BOOLEAN = BasicType.BOOLEAN.getU1Code();
+
+    @Test
+    public void defaults() {
+        ArrayPolicies policies = ArrayPolicies.DEFAULT;
+
+        assertThat(policies.getPolicy(CHAR, 0))
+                .isEqualTo(Policy.TEXT);
+        assertThat(policies.getPolicy(BYTE, 1_000_000))
+                .isEqualTo(Policy.TEXT);
+        assertThat(policies.getPolicy(INT, 10))
+                .isEqualTo(Policy.KEEP);
+        assertThat(ArrayPolicies.parse(null).getPolicy(CHAR, 10))
+                .isEqualTo(Policy.TEXT);
+    }
+
+    @Test
+    public void parse() {
+        ArrayPolicies policies = ArrayPolicies.parse("int=random, LONG=Zero,byte=text@64,char=keep");
+
+        assertThat(policies.getPolicy(INT, 1))
+                .isEqualTo(Policy.RANDOM);
+        assertThat(policies.getPolicy(LONG, 1))
+                .isEqualTo(Policy.ZERO);
+        assertThat(policies.getPolicy(CHAR, 1))
+                .isEqualTo(Policy.KEEP);
+        assertThat(policies.getPolicy(BOOLEAN, 1))
+                .isEqualTo(Policy.KEEP);
+
+        assertThat(policies.getPolicy(BYTE, 63))
+                .isEqualTo(Policy.KEEP);
+        assertThat(policies.getPolicy(BYTE, 64))
+                .isEqualTo(Policy.TEXT);
+    }
+
+    @Test
+    public void invalidPolicies() {
+        assertThatThrownBy(() -> ArrayPolicies.parse("int"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid array policy: int");
+        assertThatThrownBy(() -> ArrayPolicies.parse("int=shuffle"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid array policy: int=shuffle");
+        assertThatThrownBy(() -> ArrayPolicies.parse("object=zero"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid array policy type: object=zero");
+        assertThatThrownBy(() -> ArrayPolicies.parse("string=zero"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid array policy type: string=zero");
+        assertThatThrownBy(() -> ArrayPolicies.parse("int=zero@-1"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid array policy length: int=zero@-1");
+        assertThatThrownBy(() -> ArrayPolicies.parse("int=zero@"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid array policy length: int=zero@");
+    }
+}
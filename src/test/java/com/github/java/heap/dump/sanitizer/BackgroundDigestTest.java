@@ -0,0 +1,69 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BackgroundDigestTest {
+
+    @Test
+    public void sameAsMessageDigest() throws Exception {
+        byte[] data = new byte[BackgroundDigest.BUFFER_SIZE * BackgroundDigest.NUM_BUFFERS * 2 + 1000];
+        new Random(0).nextBytes(data);
+
+        byte[] result;
+        try (BackgroundDigest digest = new BackgroundDigest("SHA-256")) {
+            digest.write(data[0]);
+            for (int offset = 1; offset < data.length; offset += 100_000) {
+                digest.write(data, offset, Math.min(100_000, data.length - offset));
+                digest.flush();
+            }
+            result = digest.finish();
+            assertThat(digest.finish())
+                    .isEqualTo(result);
+        }
+        assertThat(result)
+                .isEqualTo(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+
+    @Test
+    public void writeAfterFinish() throws IOException {
+        BackgroundDigest digest = new BackgroundDigest("SHA-256");
+        digest.finish();
+        assertThatThrownBy(() -> digest.write(1))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Digest already finished");
+    }
+
+    @Test
+    public void unknownAlgorithm() {
+        assertThatThrownBy(() -> new BackgroundDigest("SHA-999"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Unknown digest algorithm: SHA-999");
+    }
+}
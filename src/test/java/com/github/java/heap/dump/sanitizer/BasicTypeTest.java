@@ -36,6 +36,25 @@ public class BasicTypeTest {
                 .isGreaterThan(0);
     }
 
+    @Test
+    void findByU1Code() {
+        assertThat(BasicType.findByU1Code(10))
+                .isEqualTo(BasicType.INT);
+        assertThat(BasicType.findValueSize(BasicType.OBJECT.getU1Code(), 4))
+                .isEqualTo(4);
+        assertThat(BasicType.findValueSize(BasicType.LONG.getU1Code(), 4))
+                .isEqualTo(8);
+        assertThatThrownBy(() -> BasicType.findByU1Code(3))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Unknown basic type code: 3");
+        assertThatThrownBy(() -> BasicType.findValueSize(BasicType.U1_CODE_LIMIT, 8))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Unknown basic type code: 12");
+        assertThatThrownBy(() -> BasicType.findValueSize(-1, 8))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Unknown basic type code: -1");
+    }
+
     @Test
     void unknownU1Tag() {
         assertThatThrownBy(() -> BasicType.findValueSize(0, 0))
@@ -0,0 +1,207 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BatchSanitizerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void sanitizeDirectory() throws IOException {
+        Path inputDir = Files.createDirectory(tempDir.resolve("input"));
+        writeHeapDump(inputDir.resolve("small.hprof"), 64 * 1024);
+        writeHeapDump(inputDir.resolve("large.hprof"), 512 * 1024);
+        try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(inputDir.resolve("medium.hprof.gz")))) {
+            newHeapDump(256 * 1024).writeTo(output);
+        }
+        Files.write(inputDir.resolve("notes.txt"), "not a heap dump".getBytes(StandardCharsets.UTF_8));
+
+        Path outputDir = tempDir.resolve("output");
+        SanitizeCommand command = newCommand(inputDir, outputDir);
+        command.setJobs(2);
+        new BatchSanitizer(command).sanitize();
+
+        assertThat(outputDir.toFile().list())
+                .containsExactlyInAnyOrder("small.hprof", "large.hprof", "medium.hprof");
+        for (String name : new String[] { "small.hprof", "large.hprof" }) {
+            assertThat(Files.size(outputDir.resolve(name)))
+                    .isEqualTo(Files.size(inputDir.resolve(name)));
+        }
+        for (String name : outputDir.toFile().list()) {
+            assertThat(new String(Files.readAllBytes(outputDir.resolve(name)), StandardCharsets.US_ASCII))
+                    .doesNotContain(SyntheticHeapDump.TEXT);
+        }
+    }
+
+    @Test
+    public void largestFirst() throws IOException {
+        writeHeapDump(tempDir.resolve("a.hprof"), 64 * 1024);
+        writeHeapDump(tempDir.resolve("b.hprof"), 256 * 1024);
+        writeHeapDump(tempDir.resolve("c.hprof"), 128 * 1024);
+        writeHeapDump(tempDir.resolve("d.bin"), 512 * 1024);
+
+        BatchSanitizer sanitizer = new BatchSanitizer(newCommand(tempDir, tempDir.resolve("output")));
+        assertThat(sanitizer.findInputFiles())
+                .extracting(file -> file.getFileName().toString())
+                .containsExactly("b.hprof", "c.hprof", "a.hprof");
+
+        sanitizer = new BatchSanitizer(newCommand(tempDir.resolve("*.bin"), tempDir.resolve("output")));
+        assertThat(sanitizer.findInputFiles())
+                .extracting(file -> file.getFileName().toString())
+                .containsExactly("d.bin");
+    }
+
+    @Test
+    public void outputFile() {
+        Path outputDir = tempDir.resolve("output");
+        SanitizeCommand command = newCommand(tempDir, outputDir);
+        BatchSanitizer sanitizer = new BatchSanitizer(command);
+        assertThat(sanitizer.outputFile(tempDir.resolve("heap.hprof.gz")))
+                .isEqualTo(new File(outputDir.toFile(), "heap.hprof"));
+
+        command.setGzipOutput(true);
+        assertThat(sanitizer.outputFile(tempDir.resolve("heap.hprof")))
+                .isEqualTo(new File(outputDir.toFile(), "heap.hprof.gz"));
+
+        command.setGzipOutput(false);
+        command.setInPlace(true);
+        assertThat(sanitizer.outputFile(tempDir.resolve("heap.hprof")))
+                .isNull();
+    }
+
+    @Test
+    public void rejectsSharedOutputFile() throws IOException {
+        Path inputDir = Files.createDirectory(tempDir.resolve("input"));
+        writeHeapDump(inputDir.resolve("heap.hprof"), 64 * 1024);
+        try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(inputDir.resolve("heap.hprof.gz")))) {
+            newHeapDump(64 * 1024).writeTo(output);
+        }
+
+        Path outputDir = tempDir.resolve("output");
+        assertThatThrownBy(() -> new BatchSanitizer(newCommand(inputDir, outputDir)).sanitize())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageEndingWith("would both be sanitized to " + outputDir.resolve("heap.hprof"));
+        assertThat(outputDir)
+                .doesNotExist();
+
+        SanitizeCommand command = newCommand(inputDir, outputDir);
+        command.setInPlace(true);
+        new BatchSanitizer(command).validateOutputFiles(Arrays.asList(inputDir.resolve("heap.hprof"),
+                inputDir.resolve("heap.hprof.gz")));
+    }
+
+    @Test
+    public void jobMemory() throws IOException {
+        Path inputFile = tempDir.resolve("heap.hprof");
+        writeHeapDump(inputFile, 64 * 1024);
+        SanitizeCommand command = newCommand(inputFile, tempDir.resolve("output.hprof"));
+        command.setBufferByteSize(1000);
+        command.setThreads(2);
+        assertThat(BatchSanitizer.jobMemory(command))
+                .isEqualTo(2 * HeapDumpSanitizer.CHANNEL_BUFFER_SIZE);
+
+        command.setZipOutput(true);
+        assertThat(BatchSanitizer.jobMemory(command))
+                .isEqualTo(1000);
+
+        command.setStringsOnly(true);
+        command.setStringIdsMemoryByteSize(1024 * 1024);
+        assertThat(BatchSanitizer.jobMemory(command))
+                .isEqualTo(1000 + 1024 * 1024);
+
+        command.setTokenKeyFile(new File("token.key"));
+        command.setTokenCacheMemoryByteSize(1024);
+        assertThat(BatchSanitizer.jobMemory(command))
+                .isEqualTo(1000 + 1024 * 1024 + 1024 + 2 * HeapDumpSanitizer.CHANNEL_BUFFER_SIZE);
+
+        command.setTarInput(true);
+        assertThat(BatchSanitizer.jobMemory(command))
+                .isGreaterThan(2000);
+    }
+
+    @Test
+    public void failedJobs() throws IOException {
+        writeHeapDump(tempDir.resolve("good.hprof"), 64 * 1024);
+        Files.write(tempDir.resolve("bad.hprof"), "JAVA PROFILE 1.0.2".getBytes(StandardCharsets.UTF_8));
+
+        Path outputDir = tempDir.resolve("output");
+        BatchSanitizer sanitizer = new BatchSanitizer(newCommand(tempDir, outputDir));
+        assertThatThrownBy(sanitizer::sanitize)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("1 of 2 heap dumps failed to sanitize");
+        assertThat(outputDir.resolve("good.hprof"))
+                .exists();
+    }
+
+    @Test
+    public void validation() {
+        SanitizeCommand command = newCommand(tempDir, tempDir.resolve("output"));
+        command.setJobs(-1);
+        assertThatThrownBy(() -> new BatchSanitizer(command).sanitize())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid number of jobs");
+
+        command.setJobs(0);
+        command.setMemoryBudgetByteSize(0);
+        assertThatThrownBy(() -> new BatchSanitizer(command).sanitize())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid memory budget");
+    }
+
+    private SanitizeCommand newCommand(Path input, Path output) {
+        SanitizeCommand command = new SanitizeCommand();
+        command.setBatch(true);
+        command.setInputFile(input.toFile());
+        command.setOutputFile(output.toFile());
+        command.setSanitizationText("\\0");
+        command.setBufferByteSize(64 * 1024);
+        return command;
+    }
+
+    private void writeHeapDump(Path file, long size) throws IOException {
+        try (OutputStream output = Files.newOutputStream(file)) {
+            newHeapDump(size).writeTo(output);
+        }
+    }
+
+    private SyntheticHeapDump newHeapDump(long size) {
+        SyntheticHeapDump heapDump = new SyntheticHeapDump();
+        heapDump.setSize(size);
+        heapDump.setSegmentSize(16 * 1024);
+        return heapDump;
+    }
+}
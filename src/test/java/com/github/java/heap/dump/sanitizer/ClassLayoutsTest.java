@@ -0,0 +1,124 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import com.github.java.heap.dump.sanitizer.ClassLayouts.FieldLayout;
+import com.github.java.heap.dump.sanitizer.FieldRules.Action;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ClassLayoutsTest {
+
+    private static final int ID_SIZE = 8;
+
+    private static final long CARD_NAME = 101;
+    private static final long TOKEN_NAME = 102;
+    private static final long PIN_NAME = 103;
+    private static final long OWNER_NAME = 104;
+    private static final long EXPIRY_NAME = 105;
+    private static final long EXPIRING_CARD_NAME = 106;
+
+    private static final long OBJECT_CLASS = 1000;
+    private static final long CARD_CLASS = 1008;
+    private static final long EXPIRING_CARD_CLASS = 1016;
+
+    @Test
+    public void layoutOfClassAndSubclass() {
+        ClassLayouts layouts = newLayouts("com.acme.Card.token,com.acme.Card.pin=text");
+
+        // class fields first, then super class fields
+        FieldLayout card = layouts.get(CARD_CLASS);
+        assertThat(card.offsets)
+                .containsExactly(0, 8);
+        assertThat(card.lengths)
+                .containsExactly(8, 4);
+        assertThat(card.actions)
+                .containsExactly(Action.ZERO, Action.TEXT);
+        assertThat(card.end())
+                .isEqualTo(12);
+
+        FieldLayout expiringCard = layouts.get(EXPIRING_CARD_CLASS);
+        assertThat(expiringCard.offsets)
+                .containsExactly(8, 16);
+        assertThat(expiringCard.lengths)
+                .containsExactly(8, 4);
+
+        assertThat(layouts.get(OBJECT_CLASS))
+                .isSameAs(ClassLayouts.NO_FIELDS);
+        assertThat(layouts.get(CARD_CLASS))
+                .isSameAs(card);
+    }
+
+    @Test
+    public void allFieldsSkipObjectReferences() {
+        ClassLayouts layouts = newLayouts("com.acme.Card.*");
+
+        FieldLayout card = layouts.get(CARD_CLASS);
+        assertThat(card.offsets)
+                .containsExactly(0, 8);
+        assertThat(card.lengths)
+                .containsExactly(8, 4);
+    }
+
+    @Test
+    public void unknownClass() {
+        ClassLayouts layouts = new ClassLayouts(FieldRules.parse("com.acme.Card.token"));
+        layouts.addClass(EXPIRING_CARD_CLASS, CARD_CLASS, new long[0], new int[0], ID_SIZE);
+
+        // super class not dumped yet
+        assertThat(layouts.get(EXPIRING_CARD_CLASS))
+                .isNull();
+        assertThat(layouts.get(42))
+                .isNull();
+    }
+
+    @Test
+    public void freeze() {
+        ClassLayouts layouts = newLayouts("com.acme.Card.token");
+        layouts.freeze();
+
+        layouts.addClass(2000, CARD_CLASS, new long[0], new int[0], ID_SIZE);
+        assertThat(layouts.get(2000))
+                .isNull();
+        assertThat(layouts.get(EXPIRING_CARD_CLASS).offsets)
+                .containsExactly(8);
+    }
+
+    private ClassLayouts newLayouts(String rules) {
+        ClassLayouts layouts = new ClassLayouts(FieldRules.parse(rules));
+        layouts.addSymbol(CARD_NAME, "com/acme/Card");
+        layouts.addSymbol(TOKEN_NAME, "token");
+        layouts.addSymbol(PIN_NAME, "pin");
+        layouts.addSymbol(OWNER_NAME, "owner");
+        layouts.addSymbol(EXPIRY_NAME, "expiry");
+        layouts.addSymbol(EXPIRING_CARD_NAME, "com/acme/ExpiringCard");
+        layouts.addLoadClass(CARD_CLASS, CARD_NAME);
+        layouts.addLoadClass(EXPIRING_CARD_CLASS, EXPIRING_CARD_NAME);
+
+        layouts.addClass(OBJECT_CLASS, 0, new long[0], new int[0], ID_SIZE);
+        layouts.addClass(CARD_CLASS, OBJECT_CLASS,
+                new long[] { TOKEN_NAME, PIN_NAME, OWNER_NAME }, new int[] { 8, 4, 0 }, ID_SIZE);
+        layouts.addClass(EXPIRING_CARD_CLASS, CARD_CLASS,
+                new long[] { EXPIRY_NAME }, new int[] { 8 }, ID_SIZE);
+        return layouts;
+    }
+}
@@ -0,0 +1,95 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import com.github.java.heap.dump.sanitizer.FieldRules.Action;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FieldRulesTest {
+
+    @Test
+    public void parse() {
+        FieldRules rules = FieldRules.parse("java.lang.String.hash, com.acme.Card.*=text,com.acme.Card.pin=ZERO");
+
+        assertThat(rules.isEmpty())
+                .isFalse();
+        Map<String, Action> stringRules = rules.getClassRules("java/lang/String");
+        assertThat(FieldRules.getAction(stringRules, "hash"))
+                .isEqualTo(Action.ZERO);
+        assertThat(FieldRules.getAction(stringRules, "value"))
+                .isNull();
+
+        Map<String, Action> cardRules = rules.getClassRules("com/acme/Card");
+        assertThat(FieldRules.getAction(cardRules, "pin"))
+                .isEqualTo(Action.ZERO);
+        assertThat(FieldRules.getAction(cardRules, "number"))
+                .isEqualTo(Action.TEXT);
+        assertThat(FieldRules.getAction(cardRules, null))
+                .isEqualTo(Action.TEXT);
+
+        assertThat(rules.getClassRules("java/lang/Object"))
+                .isNull();
+    }
+
+    @Test
+    public void symbols() {
+        FieldRules rules = FieldRules.parse("java.lang.String.hash,com.acme.Card.*");
+
+        assertThat(rules.isSymbol("java/lang/String"))
+                .isTrue();
+        assertThat(rules.isSymbol("hash"))
+                .isTrue();
+        assertThat(rules.isSymbol("com/acme/Card"))
+                .isTrue();
+        assertThat(rules.isSymbol("*"))
+                .isFalse();
+        assertThat(rules.isSymbol("java.lang.String"))
+                .isFalse();
+
+        assertThat(rules.isSymbolLength("hash".length()))
+                .isTrue();
+        assertThat(rules.isSymbolLength("value".length()))
+                .isFalse();
+        assertThat(rules.isSymbolLength(1L << 40))
+                .isFalse();
+    }
+
+    @Test
+    public void invalidRules() {
+        assertThatThrownBy(() -> FieldRules.parse("hash"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid field rule: hash");
+        assertThatThrownBy(() -> FieldRules.parse("java.lang.String."))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid field rule: java.lang.String.");
+        assertThatThrownBy(() -> FieldRules.parse("java.lang.String.hash=random"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid field rule action: java.lang.String.hash=random");
+
+        assertThat(FieldRules.parse("").isEmpty())
+                .isTrue();
+    }
+}
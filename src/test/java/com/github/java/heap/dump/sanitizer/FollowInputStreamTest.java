@@ -0,0 +1,110 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FollowInputStreamTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void readGrowingFile() throws Exception {
+        Path file = Files.createFile(tempDir.resolve("growing.hprof"));
+        Thread writer = new Thread(() -> {
+            try (OutputStream output = Files.newOutputStream(file, StandardOpenOption.APPEND)) {
+                for (int i = 0; i < 10; i++) {
+                    output.write(new byte[] { (byte) i, (byte) i });
+                    output.flush();
+                    Thread.sleep(30);
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        writer.start();
+
+        try (InputStream input = new FollowInputStream(file, 500)) {
+            byte[] bytes = IOUtils.toByteArray(input);
+            assertThat(bytes)
+                    .hasSize(20);
+            assertThat(bytes[19])
+                    .isEqualTo((byte) 9);
+        }
+        writer.join();
+    }
+
+    @Test
+    public void idleTimeout() throws IOException {
+        Path file = tempDir.resolve("complete.hprof");
+        Files.write(file, new byte[] { 1, 2, 3 });
+
+        try (InputStream input = new FollowInputStream(file, 200)) {
+            assertThat(input.available())
+                    .isEqualTo(3);
+            assertThat(input.read())
+                    .isEqualTo(1);
+            assertThat(input.read(new byte[10]))
+                    .isEqualTo(2);
+            assertThat(input.available())
+                    .isZero();
+
+            long start = System.nanoTime();
+            assertThat(input.read())
+                    .isEqualTo(-1);
+            assertThat(System.nanoTime() - start)
+                    .isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(200));
+        }
+    }
+
+    @Test
+    public void interrupted() throws IOException {
+        Path file = Files.createFile(tempDir.resolve("empty.hprof"));
+        try (InputStream input = new FollowInputStream(file, 60_000)) {
+            Thread.currentThread().interrupt();
+            assertThatThrownBy(input::read)
+                    .isInstanceOf(IOException.class);
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    public void invalidTimeout() {
+        assertThatThrownBy(() -> new FollowInputStream(tempDir.resolve("any.hprof"), -1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid idle timeout: -1");
+    }
+}
@@ -0,0 +1,175 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Throughput of {@link HeapDumpSanitizer} over {@link SyntheticHeapDump}s with different heap dump record mixes.
+ * Run with {@code -prof gc} for allocation rates
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HeapDumpSanitizerBenchmark {
+
+    private static final int DUMP_SIZE = 32 * 1024 * 1024;
+
+    public enum RecordMix {
+        PRIMITIVE_ARRAYS, OBJECT_ARRAYS, INSTANCES, MIXED
+    }
+
+    @Param
+    public RecordMix recordMix;
+
+    @Param({ "8", "4" })
+    public int idSize;
+
+    private byte[] heapDump;
+    private Path inputFile;
+
+    @State(Scope.Thread)
+    public static class FileOutput {
+
+        @Param({ "false", "true" })
+        public boolean zipOutput;
+
+        private Path outputFile;
+
+        @Setup
+        public void setup() throws IOException {
+            outputFile = Files.createTempFile(HeapDumpSanitizerBenchmark.class.getSimpleName(), ".hprof");
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            Files.delete(outputFile);
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        inputFile = Files.createTempFile(getClass().getSimpleName(), ".hprof");
+        try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(inputFile))) {
+            newHeapDump().writeTo(output);
+        }
+        heapDump = Files.readAllBytes(inputFile);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.delete(inputFile);
+    }
+
+    /**
+     * Heap dump record parsing and sanitization, without file I/O
+     */
+    @Benchmark
+    public void sanitizeInMemory(ThroughputCounters counters) throws IOException {
+        HeapDumpSanitizer sanitizer = newSanitizer();
+        sanitizer.setInputStream(new ByteArrayInputStream(heapDump));
+        sanitizer.setOutputStream(new NullOutputStream());
+        sanitizer.sanitize();
+        counters.add(heapDump.length);
+    }
+
+    /**
+     * File to file sanitization, as set up by {@link SanitizeCommandRunner}
+     */
+    @Benchmark
+    public void sanitizeFile(FileOutput fileOutput, ThroughputCounters counters) throws IOException {
+        HeapDumpSanitizer sanitizer = newSanitizer();
+        try (FileChannel inputChannel = FileChannel.open(inputFile)) {
+            sanitizer.setInputChannel(inputChannel);
+            if (fileOutput.zipOutput) {
+                try (ZipOutputStream zipStream = new ZipOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(fileOutput.outputFile)))) {
+                    zipStream.putNextEntry(new ZipEntry("output.hprof"));
+                    sanitizer.setOutputStream(zipStream);
+                    sanitizer.sanitize();
+                }
+            } else {
+                try (FileChannel outputChannel = FileChannel.open(fileOutput.outputFile,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    sanitizer.setOutputChannel(outputChannel);
+                    sanitizer.sanitize();
+                }
+            }
+        }
+        counters.add(heapDump.length);
+    }
+
+    private HeapDumpSanitizer newSanitizer() {
+        HeapDumpSanitizer sanitizer = new HeapDumpSanitizer();
+        sanitizer.setSanitizationText("\0");
+        return sanitizer;
+    }
+
+    private SyntheticHeapDump newHeapDump() {
+        SyntheticHeapDump heapDump = new SyntheticHeapDump();
+        heapDump.setIdSize(idSize);
+        heapDump.setSize(DUMP_SIZE);
+        switch (recordMix) {
+            case PRIMITIVE_ARRAYS:
+                heapDump.setInstanceRatio(0);
+                heapDump.setTextArrayRatio(1);
+                break;
+            case OBJECT_ARRAYS:
+                heapDump.setInstanceRatio(0);
+                heapDump.setTextArrayRatio(0);
+                heapDump.setObjectArrayRatio(1);
+                break;
+            case INSTANCES:
+                heapDump.setInstanceRatio(1);
+                break;
+            default:
+                break;
+        }
+        return heapDump;
+    }
+}
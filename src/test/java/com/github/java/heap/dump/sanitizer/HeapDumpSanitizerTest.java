@@ -32,15 +32,31 @@ import org.junit.jupiter.api.TestInfo;
 import org.junit.jupiter.api.TestMethodOrder;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static org.apache.commons.io.FileUtils.byteCountToDisplaySize;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @TestMethodOrder(Random.class)
 public class HeapDumpSanitizerTest {
@@ -119,6 +135,647 @@ public class HeapDumpSanitizerTest {
         verifyDoesNotContainsSequence(heapDump, expectedItsClassifiedValueBytes);
     }
 
+    @Test
+    @DisplayName("Verify that memory mapped and streamed input produce the same sanitized heap dump")
+    public void mappedInputSameAsStreamedInput() throws Exception {
+        Path heapDump = triggerHeapDump();
+
+        ByteArrayOutputStream streamedOutput = new ByteArrayOutputStream();
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(heapDump))) {
+            HeapDumpSanitizer sanitizer = newSanitizer(streamedOutput);
+            sanitizer.setInputStream(inputStream);
+            sanitizer.sanitize();
+        }
+
+        ByteArrayOutputStream mappedOutput = new ByteArrayOutputStream();
+        try (FileChannel inputChannel = FileChannel.open(heapDump)) {
+            HeapDumpSanitizer sanitizer = newSanitizer(mappedOutput);
+            sanitizer.setInputChannel(inputChannel);
+            sanitizer.sanitize();
+        }
+
+        assertThat(mappedOutput.size())
+                .isEqualTo(Files.size(heapDump));
+        assertThat(Arrays.equals(mappedOutput.toByteArray(), streamedOutput.toByteArray()))
+                .isTrue();
+    }
+
+    @Test
+    @DisplayName("Verify that read ahead and write behind streams produce the same sanitized heap dump")
+    public void asyncStreamsSameAsMappedInput() throws Exception {
+        Path heapDump = triggerHeapDump();
+
+        ByteArrayOutputStream asyncOutput = new ByteArrayOutputStream();
+        try (InputStream inputStream = new ReadAheadInputStream(Files.newInputStream(heapDump), 4096, 3);
+                OutputStream outputStream = new WriteBehindOutputStream(asyncOutput, 4096, 3)) {
+            HeapDumpSanitizer sanitizer = newSanitizer(outputStream);
+            sanitizer.setInputStream(inputStream);
+            sanitizer.sanitize();
+        }
+
+        ByteArrayOutputStream mappedOutput = new ByteArrayOutputStream();
+        try (FileChannel inputChannel = FileChannel.open(heapDump)) {
+            HeapDumpSanitizer sanitizer = newSanitizer(mappedOutput);
+            sanitizer.setInputChannel(inputChannel);
+            sanitizer.sanitize();
+        }
+
+        assertThat(Arrays.equals(asyncOutput.toByteArray(), mappedOutput.toByteArray()))
+                .isTrue();
+    }
+
+    @Test
+    @DisplayName("Verify that in-place sanitization produces the same heap dump as copying sanitization")
+    public void inPlaceSameAsCopy() throws Exception {
+        Path heapDump = triggerHeapDump();
+        Path sanitizedHeapDump = newTempFilePath();
+        SanitizeCommand.main(heapDump.toString(), sanitizedHeapDump.toString());
+
+        SanitizeCommand.main("--in-place", heapDump.toString());
+
+        assertThat(Arrays.equals(Files.readAllBytes(heapDump), Files.readAllBytes(sanitizedHeapDump)))
+                .isTrue();
+    }
+
+    @Test
+    @DisplayName("Verify that multi-threaded sanitization produces the same heap dump as single-threaded sanitization")
+    public void multiThreadedSameAsSingleThreaded() throws Exception {
+        Path heapDump = triggerHeapDump();
+        Path sanitizedHeapDump = newTempFilePath();
+        SanitizeCommand.main(heapDump.toString(), sanitizedHeapDump.toString());
+
+        Path multiThreadedHeapDump = newTempFilePath();
+        SanitizeCommand.main("--threads", "4", heapDump.toString(), multiThreadedHeapDump.toString());
+
+        SanitizeCommand.main("--threads", "4", "--in-place", heapDump.toString());
+
+        byte[] expected = Files.readAllBytes(sanitizedHeapDump);
+        assertThat(Arrays.equals(Files.readAllBytes(multiThreadedHeapDump), expected))
+                .isTrue();
+        assertThat(Arrays.equals(Files.readAllBytes(heapDump), expected))
+                .isTrue();
+    }
+
+    @Test
+    @DisplayName("Verify that strict sanitization produces the same heap dump as bulk copying")
+    public void strictSameAsBulk() throws Exception {
+        Path heapDump = triggerHeapDump();
+
+        ByteArrayOutputStream bulkOutput = new ByteArrayOutputStream();
+        try (FileChannel inputChannel = FileChannel.open(heapDump)) {
+            HeapDumpSanitizer sanitizer = newSanitizer(bulkOutput);
+            sanitizer.setInputChannel(inputChannel);
+            sanitizer.sanitize();
+        }
+
+        ByteArrayOutputStream strictOutput = new ByteArrayOutputStream();
+        try (FileChannel inputChannel = FileChannel.open(heapDump)) {
+            HeapDumpSanitizer sanitizer = newSanitizer(strictOutput);
+            sanitizer.setInputChannel(inputChannel);
+            sanitizer.setStrict(true);
+            sanitizer.sanitize();
+        }
+
+        assertThat(Arrays.equals(strictOutput.toByteArray(), bulkOutput.toByteArray()))
+                .isTrue();
+    }
+
+    @Test
+    @DisplayName("Verify that a heap dump being written is sanitized up to its HEAP_DUMP_END record, without timing out")
+    public void followGrowingHeapDump() throws Exception {
+        SyntheticHeapDump syntheticHeapDump = new SyntheticHeapDump();
+        syntheticHeapDump.setSize(512 * 1024);
+        syntheticHeapDump.setSegmentSize(32 * 1024);
+        ByteArrayOutputStream heapDump = new ByteArrayOutputStream();
+        syntheticHeapDump.writeTo(heapDump);
+        byte[] heapDumpBytes = heapDump.toByteArray();
+
+        ByteArrayOutputStream expectedOutput = new ByteArrayOutputStream();
+        HeapDumpSanitizer expectedSanitizer = newSanitizer(expectedOutput);
+        expectedSanitizer.setInputStream(new ByteArrayInputStream(heapDumpBytes));
+        expectedSanitizer.sanitize();
+
+        Path growingHeapDump = newTempFilePath();
+        Files.createFile(growingHeapDump);
+        Thread writer = new Thread(() -> {
+            try (OutputStream output = Files.newOutputStream(growingHeapDump)) {
+                for (int offset = 0; offset < heapDumpBytes.length; offset += 64 * 1024) {
+                    output.write(heapDumpBytes, offset, Math.min(64 * 1024, heapDumpBytes.length - offset));
+                    output.flush();
+                    Thread.sleep(20);
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        writer.start();
+
+        long start = System.nanoTime();
+        ByteArrayOutputStream followOutput = new ByteArrayOutputStream();
+        try (InputStream inputStream = new FollowInputStream(growingHeapDump, 60_000)) {
+            HeapDumpSanitizer sanitizer = newSanitizer(followOutput);
+            sanitizer.setInputStream(inputStream);
+            sanitizer.setFollow(true);
+            sanitizer.sanitize();
+        }
+        writer.join();
+
+        assertThat(System.nanoTime() - start)
+                .isLessThan(TimeUnit.SECONDS.toNanos(30));
+        assertThat(Arrays.equals(followOutput.toByteArray(), expectedOutput.toByteArray()))
+                .isTrue();
+    }
+
+    @Test
+    @DisplayName("Verify that field rules sanitize primitive fields of named classes and their subclasses")
+    public void fieldRulesSanitizeInstanceFields() throws Exception {
+        long token = 0x5EC2E7_0BAD_F00DL;
+        long expiry = 0x0E_C0DE_D00DL;
+        CardToken cardToken = new CardToken(token);
+        ExpiringCardToken expiringCardToken = new ExpiringCardToken(token + 1, expiry);
+
+        Path heapDump = triggerHeapDump();
+        byte[] tokenBytes = ByteBuffer.allocate(8).putLong(cardToken.token).array();
+        byte[] subclassTokenBytes = ByteBuffer.allocate(8).putLong(expiringCardToken.token).array();
+        byte[] expiryBytes = ByteBuffer.allocate(8).putLong(expiringCardToken.expiry).array();
+        assertThat(Files.readAllBytes(heapDump))
+                .overridingErrorMessage("sequences do not match")
+                .containsSequence(tokenBytes)
+                .containsSequence(subclassTokenBytes);
+
+        FieldRules fieldRules = FieldRules.parse(CardToken.class.getName() + ".token");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (FileChannel inputChannel = FileChannel.open(heapDump)) {
+            HeapDumpSanitizer sanitizer = newSanitizer(output);
+            sanitizer.setInputChannel(inputChannel);
+            sanitizer.setFieldRules(fieldRules);
+            sanitizer.sanitize();
+        }
+        byte[] sanitized = output.toByteArray();
+        verifyDoesNotContainsSequence(sanitized, tokenBytes);
+        verifyDoesNotContainsSequence(sanitized, subclassTokenBytes);
+        assertThat(sanitized)
+                .overridingErrorMessage("sequences do not match")
+                .containsSequence(expiryBytes);
+
+        Path multiThreadedHeapDump = newTempFilePath();
+        try (FileChannel inputChannel = FileChannel.open(heapDump);
+                FileChannel outputChannel = FileChannel.open(multiThreadedHeapDump, StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE)) {
+            HeapDumpSanitizer sanitizer = newSanitizer(null);
+            sanitizer.setInputChannel(inputChannel);
+            sanitizer.setOutputChannel(outputChannel);
+            sanitizer.setFieldRules(fieldRules);
+            sanitizer.setThreads(4);
+            sanitizer.sanitize();
+        }
+        assertThat(Arrays.equals(Files.readAllBytes(multiThreadedHeapDump), sanitized))
+                .isTrue();
+    }
+
+    @Test
+    @DisplayName("Verify that strings-only sanitization clears String contents but keeps other arrays")
+    public void stringsOnlyKeepsOtherArrays() throws Exception {
+        byte[] actualHisSecretValue = adjustLettersToByteArray(hisSecretValue);
+        String actualHerSecretValue = new String(actualHisSecretValue, StandardCharsets.UTF_8)
+                .replace("his", "her");
+        actualHisSecretValue = lengthen(actualHisSecretValue, DataSize.ofMegabytes(1));
+        actualHerSecretValue = lengthen(actualHerSecretValue, DataSize.ofMegabytes(1));
+
+        // live objects only, since garbage copies of the String contents are plain byte arrays
+        Path heapDump = newTempFilePath();
+        HeapDumper.dumpHeap(heapDump, true);
+        assertThat(actualHisSecretValue).isNotEmpty();
+        assertThat(actualHerSecretValue).isNotEmpty();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (FileChannel inputChannel = FileChannel.open(heapDump)) {
+            HeapDumpSanitizer sanitizer = newSanitizer(output);
+            sanitizer.setInputChannel(inputChannel);
+            sanitizer.setStringsOnly(true);
+            sanitizer.sanitize();
+        }
+        byte[] sanitized = output.toByteArray();
+        assertThat(sanitized)
+                .overridingErrorMessage("sequences do not match")
+                .containsSequence(adjustLettersToByteArray(hisSecretValue));
+        verifyDoesNotContainsSequence(sanitized, adjustLettersToByteArray(herSecretValue));
+
+        Path multiThreadedHeapDump = newTempFilePath();
+        try (FileChannel inputChannel = FileChannel.open(heapDump);
+                FileChannel outputChannel = FileChannel.open(multiThreadedHeapDump, StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE)) {
+            HeapDumpSanitizer sanitizer = newSanitizer(null);
+            sanitizer.setInputChannel(inputChannel);
+            sanitizer.setOutputChannel(outputChannel);
+            sanitizer.setStringsOnly(true);
+            sanitizer.setThreads(4);
+            sanitizer.sanitize();
+        }
+        assertThat(Arrays.equals(Files.readAllBytes(multiThreadedHeapDump), sanitized))
+                .isTrue();
+    }
+
+    @Test
+    @DisplayName("Verify that array policies sanitize arrays by element type and length")
+    public void arrayPoliciesByTypeAndLength() throws Exception {
+        int[] ints = new int[1024];
+        Arrays.fill(ints, 0x5EC2E7AB);
+        long[] longs = new long[1024];
+        Arrays.fill(longs, 0x0BADF00D_5EC2E7ABL);
+        byte[] shortBytes = adjustLettersToByteArray(hisSecretValue);
+
+        Path heapDump = triggerHeapDump();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (FileChannel inputChannel = FileChannel.open(heapDump)) {
+            HeapDumpSanitizer sanitizer = newSanitizer(output);
+            sanitizer.setInputChannel(inputChannel);
+            sanitizer.setArrayPolicies(ArrayPolicies.parse("int=random,long=zero,byte=text@64"));
+            sanitizer.sanitize();
+        }
+        assertThat(ints[0] + longs[0] + shortBytes[0]).isNotZero();
+
+        byte[] sanitized = output.toByteArray();
+        ByteBuffer intSequence = ByteBuffer.allocate(64);
+        while (intSequence.hasRemaining()) {
+            intSequence.putInt(ints[0]);
+        }
+        ByteBuffer longSequence = ByteBuffer.allocate(64);
+        while (longSequence.hasRemaining()) {
+            longSequence.putLong(longs[0]);
+        }
+        verifyDoesNotContainsSequence(sanitized, intSequence.array());
+        verifyDoesNotContainsSequence(sanitized, longSequence.array());
+        assertThat(sanitized)
+                .overridingErrorMessage("sequences do not match")
+                .containsSequence(adjustLettersToByteArray(hisSecretValue))
+                .hasSize((int) Files.size(heapDump));
+    }
+
+    @Test
+    @DisplayName("Verify that random array sanitization does not repeat in long arrays")
+    public void randomPolicyDoesNotRepeat() throws Exception {
+        int tileInts = HeapDumpSanitizer.REPLACEMENT_BUFFER_SIZE / Integer.BYTES;
+        int[] ints = new int[4 * tileInts];
+        Arrays.fill(ints, 0x7A11C0DE);
+
+        Path heapDump = triggerHeapDump();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (FileChannel inputChannel = FileChannel.open(heapDump)) {
+            HeapDumpSanitizer sanitizer = newSanitizer(output);
+            sanitizer.setInputChannel(inputChannel);
+            sanitizer.setArrayPolicies(ArrayPolicies.parse("int=random"));
+            sanitizer.sanitize();
+        }
+        assertThat(ints[0]).isNotZero();
+
+        ByteBuffer intSequence = ByteBuffer.allocate(64);
+        while (intSequence.hasRemaining()) {
+            intSequence.putInt(ints[0]);
+        }
+        // sanitization keeps offsets, so the array body is where it was in the input
+        int start = new String(Files.readAllBytes(heapDump), StandardCharsets.ISO_8859_1)
+                .indexOf(new String(intSequence.array(), StandardCharsets.ISO_8859_1));
+        assertThat(start).isNotNegative();
+        byte[] sanitized = output.toByteArray();
+        byte[] firstTile = Arrays.copyOfRange(sanitized, start, start + HeapDumpSanitizer.REPLACEMENT_BUFFER_SIZE);
+        byte[] secondTile = Arrays.copyOfRange(sanitized, start + HeapDumpSanitizer.REPLACEMENT_BUFFER_SIZE,
+                start + 2 * HeapDumpSanitizer.REPLACEMENT_BUFFER_SIZE);
+        assertThat(secondTile)
+                .isNotEqualTo(firstTile);
+    }
+
+    @Test
+    @DisplayName("Verify that a secrets file redacts secrets in all encodings and keeps other text")
+    public void secretsFileRedactsOnlySecrets() throws Exception {
+        String secret = new String(adjustLettersToByteArray(hisSecretValue), StandardCharsets.UTF_8);
+        byte[] utf8 = ("prefix " + secret + " suffix").getBytes(StandardCharsets.UTF_8);
+        char[] chars = ("prefix " + secret).toCharArray();
+        String utf16 = secret + "\u20ac"; // not Latin-1, so compact strings store it as UTF-16
+        byte[] other = adjustLettersToByteArray(herSecretValue);
+
+        Path heapDump = newTempFilePath();
+        HeapDumper.dumpHeap(heapDump, true);
+        assertThat(utf8.length + chars.length + utf16.length() + other.length).isPositive();
+        assertThat(Files.readAllBytes(heapDump))
+                .overridingErrorMessage("sequences do not match")
+                .containsSequence(secret.getBytes(StandardCharsets.UTF_16BE));
+
+        SecretMatcher secretMatcher = SecretMatcher.load(Paths.get(getClass().getResource("/secrets.txt").toURI()));
+        Path sanitizedHeapDump = newTempFilePath();
+        try (FileChannel inputChannel = FileChannel.open(heapDump);
+                FileChannel outputChannel = FileChannel.open(sanitizedHeapDump, StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE)) {
+            HeapDumpSanitizer sanitizer = newSanitizer(null);
+            sanitizer.setInputChannel(inputChannel);
+            sanitizer.setOutputChannel(outputChannel);
+            sanitizer.setSecretMatcher(secretMatcher);
+            sanitizer.sanitize();
+        }
+        byte[] sanitized = Files.readAllBytes(sanitizedHeapDump);
+        verifyDoesNotContainsSequence(sanitized, secret.getBytes(StandardCharsets.UTF_8));
+        verifyDoesNotContainsSequence(sanitized, secret.getBytes(StandardCharsets.UTF_16BE));
+        verifyDoesNotContainsSequence(sanitized, secret.getBytes(StandardCharsets.UTF_16LE));
+        assertThat(sanitized)
+                .overridingErrorMessage("sequences do not match")
+                .containsSequence(other)
+                .containsSequence(" suffix".getBytes(StandardCharsets.UTF_8))
+                .hasSize((int) Files.size(heapDump));
+
+        // in place sanitization only writes back redacted buffers
+        try (FileChannel channel = FileChannel.open(heapDump, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            HeapDumpSanitizer sanitizer = newSanitizer(null);
+            sanitizer.setInputChannel(channel);
+            sanitizer.setInPlace(true);
+            sanitizer.setSecretMatcher(secretMatcher);
+            sanitizer.sanitize();
+        }
+        assertThat(Arrays.equals(Files.readAllBytes(heapDump), sanitized))
+                .isTrue();
+    }
+
+    @Test
+    @DisplayName("Verify that a token key replaces equal values with equal tokens")
+    public void tokenKeyKeepsEqualValuesEqual() throws Exception {
+        byte[] value = adjustLettersToByteArray(hisSecretValue + "-tokenized");
+        byte[] copy = value.clone();
+        byte[] key = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+        Path heapDump = newTempFilePath();
+        HeapDumper.dumpHeap(heapDump, true);
+        assertThat(value.length + copy.length).isPositive();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (FileChannel inputChannel = FileChannel.open(heapDump)) {
+            HeapDumpSanitizer sanitizer = newSanitizer(output);
+            sanitizer.setInputChannel(inputChannel);
+            sanitizer.setTokenKey(key);
+            sanitizer.setTokenCacheMemory(1024 * 1024);
+            sanitizer.sanitize();
+        }
+        byte[] sanitized = output.toByteArray();
+        byte[] token = value.clone();
+        new Tokenizer(key, 0).tokenize(token, token.length, 1, 0);
+
+        verifyDoesNotContainsSequence(sanitized, value);
+        String text = new String(sanitized, StandardCharsets.ISO_8859_1);
+        String tokenText = new String(token, StandardCharsets.ISO_8859_1);
+        int first = text.indexOf(tokenText);
+        assertThat(first).isNotNegative();
+        assertThat(text.indexOf(tokenText, first + 1)).isGreaterThan(first);
+        assertThat(sanitized)
+                .hasSize((int) Files.size(heapDump));
+    }
+
+    @Test
+    @DisplayName("Verify that verification digests the output as written, whatever the pipe")
+    public void verifyDigestsOutput() throws Exception {
+        SyntheticHeapDump syntheticHeapDump = new SyntheticHeapDump();
+        syntheticHeapDump.setSize(2 * 1024 * 1024);
+        syntheticHeapDump.setSegmentSize(256 * 1024);
+        syntheticHeapDump.setArrayLengthRange(1000, 100_000);
+        Path heapDump = newTempFilePath();
+        try (OutputStream output = Files.newOutputStream(heapDump)) {
+            syntheticHeapDump.writeTo(output);
+        }
+
+        // streamed
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        HeapDumpSanitizer sanitizer = newSanitizer(output);
+        try (InputStream inputStream = Files.newInputStream(heapDump)) {
+            sanitizer.setInputStream(inputStream);
+            sanitizer.setVerify(true);
+            sanitizer.sanitize();
+        }
+        SanitizationSummary summary = sanitizer.getSummary();
+        assertThat(summary.getSha256())
+                .isEqualTo(sha256(output.toByteArray()));
+        assertThat(summary.getNumBytes())
+                .isEqualTo(Files.size(heapDump));
+        assertThat(summary.getNumRecords())
+                .isGreaterThan(8);
+        assertThat(summary.getNumSubRecords())
+                .isGreaterThan(summary.getNumRecords());
+
+        // kept arrays are transferred channel to channel
+        Path sanitizedHeapDump = newTempFilePath();
+        try (FileChannel inputChannel = FileChannel.open(heapDump);
+                FileChannel outputChannel = FileChannel.open(sanitizedHeapDump, StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE)) {
+            sanitizer = newSanitizer(null);
+            sanitizer.setInputChannel(inputChannel);
+            sanitizer.setOutputChannel(outputChannel);
+            sanitizer.setArrayPolicies(ArrayPolicies.parse("byte=keep,char=keep"));
+            sanitizer.setVerify(true);
+            sanitizer.sanitize();
+        }
+        assertThat(sanitizer.getSummary().getSha256())
+                .isEqualTo(sha256(Files.readAllBytes(sanitizedHeapDump)))
+                .isEqualTo(sha256(Files.readAllBytes(heapDump)));
+
+        // left in place
+        try (FileChannel channel = FileChannel.open(heapDump, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            sanitizer = newSanitizer(null);
+            sanitizer.setInputChannel(channel);
+            sanitizer.setInPlace(true);
+            sanitizer.setVerify(true);
+            sanitizer.sanitize();
+        }
+        assertThat(sanitizer.getSummary().getSha256())
+                .isEqualTo(sha256(Files.readAllBytes(heapDump)))
+                .isEqualTo(summary.getSha256());
+    }
+
+    @Test
+    @DisplayName("Verify that analysis accounts for every byte, from a channel or a stream")
+    public void analyzeAccountsForEveryByte() throws Exception {
+        SyntheticHeapDump syntheticHeapDump = new SyntheticHeapDump();
+        syntheticHeapDump.setSize(1024 * 1024);
+        syntheticHeapDump.setSegmentSize(128 * 1024);
+        Path heapDump = newTempFilePath();
+        try (OutputStream output = Files.newOutputStream(heapDump)) {
+            syntheticHeapDump.writeTo(output);
+        }
+
+        HeapDumpStatistics statistics;
+        try (FileChannel inputChannel = FileChannel.open(heapDump)) {
+            HeapDumpSanitizer sanitizer = new HeapDumpSanitizer();
+            sanitizer.setInputChannel(inputChannel);
+            statistics = sanitizer.analyze();
+        }
+        assertThat(statistics.getFormat())
+                .isEqualTo("JAVA PROFILE 1.0.2");
+        assertThat(statistics.getIdSize())
+                .isEqualTo(8);
+        assertThat(statistics.getNumBytes())
+                .isEqualTo(Files.size(heapDump));
+        assertThat(statistics.getRecordCount(0x1C))
+                .isGreaterThanOrEqualTo(8);
+        assertThat(statistics.getRecordCount(0x2C))
+                .isEqualTo(1);
+        assertThat(statistics.getSubRecordCount(0x20))
+                .isEqualTo(1);
+        assertThat(statistics.getSubRecordCount(0x23))
+                .isEqualTo(statistics.getArrayCount(BasicType.CHAR) + statistics.getArrayCount(BasicType.BYTE)
+                        + statistics.getArrayCount(BasicType.INT) + statistics.getArrayCount(BasicType.LONG));
+        assertThat(statistics.getArrayBytes(BasicType.BYTE))
+                .isPositive();
+
+        try (InputStream inputStream = Files.newInputStream(heapDump)) {
+            HeapDumpSanitizer sanitizer = new HeapDumpSanitizer();
+            sanitizer.setInputStream(inputStream);
+            assertThat(sanitizer.analyze().toJson())
+                    .isEqualTo(statistics.toJson());
+        }
+    }
+
+    @Test
+    @DisplayName("Verify that the index locates every record and large sub-record, whatever the pipe")
+    public void indexLocatesRecords() throws Exception {
+        SyntheticHeapDump syntheticHeapDump = new SyntheticHeapDump();
+        syntheticHeapDump.setSize(2 * 1024 * 1024);
+        syntheticHeapDump.setSegmentSize(256 * 1024);
+        syntheticHeapDump.setArrayLengthRange(1000, 100_000);
+        Path heapDump = newTempFilePath();
+        try (OutputStream output = Files.newOutputStream(heapDump)) {
+            syntheticHeapDump.writeTo(output);
+        }
+
+        // streamed
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        HeapDumpSanitizer sanitizer = newSanitizer(new ByteArrayOutputStream());
+        try (InputStream inputStream = Files.newInputStream(heapDump)) {
+            sanitizer.setInputStream(inputStream);
+            sanitizer.setIndexOutput(index);
+            sanitizer.setIndexMinSubRecordSize(64 * 1024);
+            sanitizer.sanitize();
+        }
+        List<RecordIndex.Entry> entries = RecordIndex.read(new ByteArrayInputStream(index.toByteArray()));
+        verifyIndex(entries, Files.readAllBytes(heapDump), 64 * 1024);
+
+        // kept arrays are transferred channel to channel
+        Path sanitizedHeapDump = newTempFilePath();
+        ByteArrayOutputStream channelIndex = new ByteArrayOutputStream();
+        try (FileChannel inputChannel = FileChannel.open(heapDump);
+                FileChannel outputChannel = FileChannel.open(sanitizedHeapDump, StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE)) {
+            sanitizer = newSanitizer(null);
+            sanitizer.setInputChannel(inputChannel);
+            sanitizer.setOutputChannel(outputChannel);
+            sanitizer.setArrayPolicies(ArrayPolicies.parse("byte=keep"));
+            sanitizer.setIndexOutput(channelIndex);
+            sanitizer.setIndexMinSubRecordSize(64 * 1024);
+            sanitizer.sanitize();
+        }
+        assertThat(channelIndex.toByteArray())
+                .isEqualTo(index.toByteArray());
+
+        // left in place
+        ByteArrayOutputStream inPlaceIndex = new ByteArrayOutputStream();
+        try (FileChannel channel = FileChannel.open(heapDump, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            sanitizer = newSanitizer(null);
+            sanitizer.setInputChannel(channel);
+            sanitizer.setInPlace(true);
+            sanitizer.setIndexOutput(inPlaceIndex);
+            sanitizer.setIndexMinSubRecordSize(64 * 1024);
+            sanitizer.sanitize();
+        }
+        assertThat(inPlaceIndex.toByteArray())
+                .isEqualTo(index.toByteArray());
+
+        sanitizer.setThreads(2);
+        assertThatThrownBy(sanitizer::sanitize)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Indexing requires a single thread");
+    }
+
+    private void verifyIndex(List<RecordIndex.Entry> entries, byte[] heapDump, long minSubRecordSize) {
+        ByteBuffer buffer = ByteBuffer.wrap(heapDump);
+        long nextRecord = "JAVA PROFILE 1.0.2".length() + 1 + 4 + 8;
+        long recordEnd = 0;
+        int numSubRecords = 0;
+        for (RecordIndex.Entry entry : entries) {
+            assertThat(heapDump[(int) entry.getOffset()] & 0xFF)
+                    .isEqualTo(entry.getTag());
+            if (entry.getLevel() == RecordIndex.RECORD) {
+                assertThat(entry.getOffset())
+                        .isEqualTo(nextRecord);
+                assertThat(entry.getSize())
+                        .isEqualTo(9 + (buffer.getInt((int) entry.getOffset() + 5) & 0xFFFFFFFFL));
+                nextRecord = entry.getOffset() + entry.getSize();
+                recordEnd = nextRecord;
+            } else {
+                assertThat(entry.getSize())
+                        .isGreaterThanOrEqualTo(minSubRecordSize);
+                assertThat(entry.getOffset() + entry.getSize())
+                        .isLessThanOrEqualTo(recordEnd);
+                numSubRecords++;
+            }
+        }
+        assertThat(nextRecord)
+                .isEqualTo(heapDump.length);
+        assertThat(numSubRecords)
+                .isPositive();
+    }
+
+    @Test
+    @DisplayName("Verify that verification rejects sub-records that overrun their heap dump record")
+    public void verifyRejectsOverrunningSubRecord() throws Exception {
+        ByteArrayOutputStream heapDump = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(heapDump);
+        output.write("JAVA PROFILE 1.0.2\0".getBytes(StandardCharsets.US_ASCII));
+        output.writeInt(8);
+        output.writeLong(0);
+        output.write(0x1C); // heap dump segment
+        output.writeInt(0);
+        output.writeInt(1 + 8 + 4 + 4 + 1 + 10);
+        output.write(0x23); // byte array of 100 elements, 10 of which are in the segment
+        output.writeLong(1);
+        output.writeInt(0);
+        output.writeInt(100);
+        output.write(8);
+        output.write(new byte[10]);
+        output.write(0x2C); // heap dump end
+        output.writeInt(0);
+        output.writeInt(0);
+
+        // kept arrays are piped, which stops silently at the end of the record
+        HeapDumpSanitizer sanitizer = newSanitizer(new ByteArrayOutputStream());
+        sanitizer.setInputStream(new ByteArrayInputStream(heapDump.toByteArray()));
+        sanitizer.setArrayPolicies(ArrayPolicies.parse("byte=keep"));
+        sanitizer.sanitize();
+
+        sanitizer = newSanitizer(new ByteArrayOutputStream());
+        sanitizer.setInputStream(new ByteArrayInputStream(heapDump.toByteArray()));
+        sanitizer.setArrayPolicies(ArrayPolicies.parse("byte=keep"));
+        sanitizer.setVerify(true);
+        assertThatThrownBy(sanitizer::sanitize)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Sub-record overruns the heap dump record at offset 31");
+    }
+
+    @Test
+    @DisplayName("Verify that replacement tiles repeat the whole sanitization text")
+    public void tile() {
+        byte[] tiles = HeapDumpSanitizer.tile("abc".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(tiles.length % 3)
+                .isZero();
+        assertThat(tiles.length)
+                .isLessThanOrEqualTo(HeapDumpSanitizer.REPLACEMENT_BUFFER_SIZE);
+        assertThat(new String(tiles, 0, 9, StandardCharsets.UTF_8))
+                .isEqualTo("abcabcabc");
+        assertThat(HeapDumpSanitizer.tile(new byte[HeapDumpSanitizer.REPLACEMENT_BUFFER_SIZE + 1]))
+                .hasSize(HeapDumpSanitizer.REPLACEMENT_BUFFER_SIZE + 1);
+    }
+
+    private HeapDumpSanitizer newSanitizer(OutputStream outputStream) {
+        HeapDumpSanitizer sanitizer = new HeapDumpSanitizer();
+        sanitizer.setOutputStream(outputStream);
+        sanitizer.setSanitizationText("\0");
+        return sanitizer;
+    }
+
     private void verifyDoesNotContainsSequence(byte[] big, byte[] small) {
         String corrId = System.currentTimeMillis() + "";
         try {
@@ -162,6 +819,11 @@ public class HeapDumpSanitizerTest {
                 .collect(Collectors.joining(""));
     }
 
+    private String sha256(byte[] bytes) throws NoSuchAlgorithmException {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+        return String.format("%064x", new BigInteger(1, digest));
+    }
+
     private Path triggerHeapDump() throws Exception {
         Path heapDumpPath = newTempFilePath();
 
@@ -188,6 +850,25 @@ public class HeapDumpSanitizerTest {
         return loadHeapDump(sanitizedHeapDumpPath);
     }
 
+    static class CardToken {
+        final long token;
+        final int pin = 1234;
+        final Object owner = "owner";
+
+        CardToken(long token) {
+            this.token = token;
+        }
+    }
+
+    static class ExpiringCardToken extends CardToken {
+        final long expiry;
+
+        ExpiringCardToken(long token, long expiry) {
+            super(token);
+            this.expiry = expiry;
+        }
+    }
+
     private Path newTempFilePath() throws IOException {
         Path path = Files.createTempFile(tempDir, getClass().getSimpleName(), ".hprof");
         Files.delete(path);
@@ -0,0 +1,82 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HeapDumpStatisticsTest {
+
+    @Test
+    public void countsRecordsAndArrays() {
+        HeapDumpStatistics statistics = new HeapDumpStatistics();
+        statistics.setHeader("JAVA PROFILE 1.0.2", 8);
+        statistics.addRecord(0x01, 20);
+        statistics.addRecord(0x01, 30);
+        statistics.addRecord(0x1C, 1000);
+        statistics.addSubRecord(0x23);
+        statistics.addSubRecord(0x23);
+        statistics.addPrimitiveArray(BasicType.CHAR.getU1Code(), 200);
+        statistics.addPrimitiveArray(BasicType.BYTE.getU1Code(), 100);
+
+        assertThat(statistics.getNumBytes())
+                .isEqualTo(31 + 20 + 30 + 1000);
+        assertThat(statistics.getRecordCount(0x01))
+                .isEqualTo(2);
+        assertThat(statistics.getRecordBytes(0x01))
+                .isEqualTo(50);
+        assertThat(statistics.getSubRecordCount(0x23))
+                .isEqualTo(2);
+        assertThat(statistics.getArrayCount(BasicType.CHAR))
+                .isEqualTo(1);
+        assertThat(statistics.getArrayBytes(BasicType.BYTE))
+                .isEqualTo(100);
+    }
+
+    @Test
+    public void toJson() {
+        HeapDumpStatistics statistics = new HeapDumpStatistics();
+        statistics.setHeader("JAVA PROFILE 1.0.2", 4);
+        statistics.addRecord(0x1C, 100);
+        statistics.addRecord(0x99, 9);
+        statistics.addSubRecord(0x21);
+        statistics.addPrimitiveArray(BasicType.CHAR.getU1Code(), 40);
+
+        assertThat(statistics.toJson())
+                .isEqualTo("{\n"
+                        + "  \"format\": \"JAVA PROFILE 1.0.2\",\n"
+                        + "  \"idSize\": 4,\n"
+                        + "  \"bytes\": 140,\n"
+                        + "  \"records\": {\n"
+                        + "    \"HEAP_DUMP_SEGMENT\": { \"count\": 1, \"bytes\": 100 },\n"
+                        + "    \"0x99\": { \"count\": 1, \"bytes\": 9 }\n"
+                        + "  },\n"
+                        + "  \"subRecords\": {\n"
+                        + "    \"INSTANCE_DUMP\": 1\n"
+                        + "  },\n"
+                        + "  \"primitiveArrays\": {\n"
+                        + "    \"char\": { \"count\": 1, \"bytes\": 40 }\n"
+                        + "  },\n"
+                        + "  \"charAndByteArrayBytes\": 40\n"
+                        + "}\n");
+    }
+}
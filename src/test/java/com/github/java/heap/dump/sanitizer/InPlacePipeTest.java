@@ -0,0 +1,177 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class InPlacePipeTest {
+
+    @TempDir
+    static Path tempDir;
+
+    private String data = "hello world\0more-stuff-here";
+
+    private LongAdder monitor = new LongAdder();
+
+    private Path file;
+
+    private FileChannel channel;
+
+    private Pipe pipe;
+
+    @BeforeEach
+    public void beforeEach() throws IOException {
+        file = Files.createTempFile(tempDir, getClass().getSimpleName(), ".hprof");
+        Files.write(file, data.getBytes(StandardCharsets.UTF_8));
+
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        pipe = new InPlacePipe(channel, monitor);
+    }
+
+    @AfterEach
+    public void afterEach() throws IOException {
+        channel.close();
+    }
+
+    @Test
+    public void pipeLeavesFileUnchanged() throws IOException {
+        assertThat(pipe.pipeNullTerminatedString())
+                .isEqualTo("hello world\0");
+        pipe.pipe(100);
+        pipe.flush();
+
+        assertThat(fileContent())
+                .isEqualTo(data);
+        assertThat(monitor.sum())
+                .isEqualTo(data.length());
+    }
+
+    @Test
+    public void replace() throws IOException {
+        pipe.pipe(6);
+        pipe.replace(bytesOf("WORLD"), 5);
+
+        assertThat(pipe.pipeU1())
+                .isEqualTo(0);
+        pipe.flush();
+        assertThat(fileContent())
+                .isEqualTo("hello WORLD\0more-stuff-here");
+        assertThat(monitor.sum())
+                .isEqualTo(12);
+    }
+
+    @Test
+    public void replaceRepeatsTiles() throws IOException {
+        pipe.pipe(6);
+        pipe.replace(bytesOf("xy"), 5);
+
+        assertThat(fileContent())
+                .isEqualTo("hello xyxyx\0more-stuff-here");
+    }
+
+    @Test
+    public void replaceInBoundedPipe() throws IOException {
+        pipe.pipe(12);
+
+        Pipe boundedPipe = pipe.newInputBoundedPipe(4);
+        boundedPipe.replace(bytesOf("MORE"), 4);
+        assertThat(boundedPipe.pipeU1IfPossible())
+                .isEqualTo(-1);
+
+        assertThat(fileContent())
+                .isEqualTo("hello world\0MORE-stuff-here");
+    }
+
+    @Test
+    public void replaceBeyondInput() throws IOException {
+        pipe.pipe(20);
+        assertThatThrownBy(() -> pipe.replace(bytesOf("0123456789"), 10))
+                .isInstanceOf(EOFException.class);
+
+        assertThat(fileContent())
+                .isEqualTo(data);
+    }
+
+    @Test
+    public void writeChangedBytesOnly() throws IOException {
+        pipe.pipe(6);
+        byte[] buffer = new byte[16];
+        pipe.read(buffer, 0, 8);
+        buffer[0] = 'W';
+        buffer[6] = 'M';
+        pipe.write(buffer, 0, 4, true);
+
+        // unchanged bytes are not written, so this change stays in the buffer
+        buffer[4] = 'D';
+        pipe.write(buffer, 4, 1, false);
+        pipe.write(buffer, 5, 3, true);
+        pipe.flush();
+
+        assertThat(fileContent())
+                .isEqualTo("hello World\0More-stuff-here");
+        assertThat(monitor.sum())
+                .isEqualTo(14);
+    }
+
+    @Test
+    public void digestLeftAndWrittenBytes() throws IOException {
+        ByteArrayOutputStream digestBytes = new ByteArrayOutputStream();
+        pipe.setDigestOutput(digestBytes);
+        pipe.pipe(6);
+        pipe.replace(bytesOf("WORLD"), 5);
+        byte[] buffer = new byte[2];
+        pipe.read(buffer, 0, 2);
+        buffer[1] = 'M';
+        pipe.write(buffer, 0, 2, true);
+        pipe.pipe(100);
+        pipe.flush();
+
+        assertThat(digestBytes.toString("UTF-8"))
+                .isEqualTo(fileContent())
+                .isEqualTo("hello WORLD\0More-stuff-here");
+        assertThat(pipe.getOutputPosition())
+                .isEqualTo(data.length());
+    }
+
+    private String fileContent() throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    private byte[] bytesOf(String str) {
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+}
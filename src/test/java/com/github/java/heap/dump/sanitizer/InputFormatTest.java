@@ -0,0 +1,84 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InputFormatTest {
+
+    @TempDir
+    static Path tempDir;
+
+    @Test
+    public void detectHprof() {
+        byte[] header = "JAVA PROFILE 1.0.2\0".getBytes(StandardCharsets.UTF_8);
+        assertThat(InputFormat.detect(header, header.length))
+                .isEqualTo(InputFormat.HPROF);
+        assertThat(InputFormat.detect(new byte[0], 0))
+                .isEqualTo(InputFormat.HPROF);
+    }
+
+    @Test
+    public void detectGzip() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new GZIPOutputStream(output).close();
+        byte[] header = output.toByteArray();
+
+        assertThat(InputFormat.detect(header, header.length))
+                .isEqualTo(InputFormat.GZIP);
+        assertThat(InputFormat.detect(header, 1))
+                .isEqualTo(InputFormat.HPROF);
+    }
+
+    @Test
+    public void detectZip() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ZipOutputStream zipOutput = new ZipOutputStream(output)) {
+            zipOutput.putNextEntry(new ZipEntry("heap.hprof"));
+        }
+        byte[] header = output.toByteArray();
+
+        assertThat(InputFormat.detect(header, header.length))
+                .isEqualTo(InputFormat.ZIP);
+    }
+
+    @Test
+    public void detectTarFile() throws IOException {
+        Path file = Files.createTempFile(tempDir, getClass().getSimpleName(), ".tar");
+        Files.write(file, IOUtils.resourceToByteArray("/sample.tar"));
+
+        assertThat(InputFormat.detect(file))
+                .isEqualTo(InputFormat.TAR);
+    }
+}
@@ -0,0 +1,82 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LongObjectHashMapTest {
+
+    @Test
+    public void putAndGet() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        map.put(1, "one");
+        map.put(-2, "minus two");
+        map.put(1, "uno");
+
+        assertThat(map.size())
+                .isEqualTo(2);
+        assertThat(map.get(1))
+                .isEqualTo("uno");
+        assertThat(map.get(-2))
+                .isEqualTo("minus two");
+        assertThat(map.get(3))
+                .isNull();
+    }
+
+    @Test
+    public void growAndIterate() {
+        LongObjectHashMap<Long> map = new LongObjectHashMap<>();
+        for (long id = 1; id <= 100_000; id++) {
+            map.put(id * 8, id); // aligned like object ids
+        }
+
+        assertThat(map.size())
+                .isEqualTo(100_000);
+        for (long id = 1; id <= 100_000; id++) {
+            assertThat(map.get(id * 8))
+                    .isEqualTo(id);
+        }
+        assertThat(map.get(4))
+                .isNull();
+
+        Map<Long, Long> entries = new HashMap<>();
+        map.forEach(entries::put);
+        assertThat(entries)
+                .hasSize(100_000)
+                .containsEntry(800L, 100L);
+    }
+
+    @Test
+    public void zeroKey() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        assertThat(map.get(0))
+                .isNull();
+        assertThatThrownBy(() -> map.put(0, "zero"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Zero key");
+    }
+}
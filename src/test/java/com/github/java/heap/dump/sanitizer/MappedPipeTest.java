@@ -0,0 +1,271 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MappedPipeTest {
+
+    @TempDir
+    static Path tempDir;
+
+    private String data = "hello world\0more-stuff-here";
+
+    private ByteArrayOutputStream outputBytes = new ByteArrayOutputStream();
+
+    private LongAdder monitor = new LongAdder();
+
+    private FileChannel channel;
+
+    private MappedInput input;
+
+    private Pipe pipe;
+
+    @BeforeEach
+    public void beforeEach() throws IOException {
+        Path file = writeTempFile(data.getBytes(StandardCharsets.UTF_8));
+
+        channel = FileChannel.open(file);
+        input = new MappedInput(channel, 3); // tiny windows to cross window boundaries
+        pipe = new MappedPipe(input, outputBytes, null, monitor);
+    }
+
+    @AfterEach
+    public void afterEach() throws IOException {
+        channel.close();
+    }
+
+    @Test
+    public void readU1() throws IOException {
+        assertThat(pipe.readU1())
+                .isEqualTo('h');
+
+        pipe.skipInput(data.length() - 1);
+        verifyEoF();
+
+        assertThat(outputBytes.toByteArray())
+                .hasSize(0);
+    }
+
+    @Test
+    public void pipeByLength() throws IOException {
+        pipe.pipe(data.length());
+        verifyEoF();
+        assertThat(outputString())
+                .isEqualTo(data);
+    }
+
+    @Test
+    public void pipeId4() throws IOException {
+        pipe.setIdSize(4);
+        pipe.pipeU1();
+        pipe.pipeId();
+
+        assertThat(outputString())
+                .isEqualTo("hello");
+    }
+
+    @Test
+    public void pipeId8() throws IOException {
+        pipe.setIdSize(8);
+        pipe.pipeU1();
+        pipe.pipeId();
+
+        assertThat(outputString())
+                .isEqualTo("hello wor");
+    }
+
+    @Test
+    public void pipeU2() throws IOException {
+        pipe.pipeU2();
+        assertThat(pipe.readU1())
+                .isEqualTo('l');
+        assertThat(outputString())
+                .isEqualTo("he");
+    }
+
+    @Test
+    @DisplayName("pipe u1 on exhausted input")
+    public void pipeU1IfPossibleNot() throws IOException {
+        pipe.pipe(100);
+        int u1 = pipe.pipeU1IfPossible();
+        assertThat(u1)
+                .isEqualTo(-1);
+
+        assertThat(outputString())
+                .isEqualTo(data);
+    }
+
+    @Test
+    public void pipeNullTerminatedString() throws IOException {
+        assertThat(pipe.pipeNullTerminatedString())
+                .isEqualTo("hello world\0")
+                .isEqualTo(outputString());
+    }
+
+    @Test
+    public void newInputBoundedPipe() throws IOException {
+        pipe.pipeU1();
+
+        Pipe boundedPipe = pipe.newInputBoundedPipe(4);
+        assertThat(boundedPipe.pipeNullTerminatedString())
+                .isEqualTo("ello");
+
+        assertThat(outputString())
+                .isEqualTo("hello");
+
+        assertThat(pipe.pipeNullTerminatedString())
+                .isEqualTo(" world\0");
+        assertThat(outputString())
+                .isEqualTo("hello world\0");
+    }
+
+    @Test
+    public void boundedPipeEoF() throws IOException {
+        Pipe boundedPipe = pipe.newInputBoundedPipe(3);
+
+        assertThatThrownBy(boundedPipe::pipeU4)
+                .isInstanceOf(EOFException.class);
+        assertThatThrownBy(() -> boundedPipe.skipInput(4))
+                .isInstanceOf(EOFException.class);
+    }
+
+    @Test
+    public void pipeToFileChannel() throws IOException {
+        byte[] largeData = largeData();
+        Path outputFile = Files.createTempFile(tempDir, getClass().getSimpleName(), ".hprof");
+        try (FileChannel largeInput = FileChannel.open(writeTempFile(largeData));
+                FileChannel output = FileChannel.open(outputFile, StandardOpenOption.WRITE)) {
+
+            OutputStream outputStream = new BufferedOutputStream(Channels.newOutputStream(output));
+            Pipe largePipe = new MappedPipe(new MappedInput(largeInput, 1000), outputStream, output, monitor);
+            largePipe.pipeU1();
+            largePipe.pipe(largeData.length);
+            largePipe.flush();
+        }
+
+        assertThat(Files.readAllBytes(outputFile))
+                .isEqualTo(largeData);
+        assertThat(monitor.sum())
+                .isEqualTo(largeData.length);
+    }
+
+    @Test
+    public void digestTransferredBytes() throws IOException {
+        byte[] largeData = largeData();
+        Path outputFile = Files.createTempFile(tempDir, getClass().getSimpleName(), ".hprof");
+        ByteArrayOutputStream digestBytes = new ByteArrayOutputStream();
+        try (FileChannel largeInput = FileChannel.open(writeTempFile(largeData));
+                FileChannel output = FileChannel.open(outputFile, StandardOpenOption.WRITE)) {
+
+            OutputStream outputStream = new BufferedOutputStream(Channels.newOutputStream(output));
+            Pipe largePipe = new MappedPipe(new MappedInput(largeInput, 1000), outputStream, output, monitor);
+            largePipe.setDigestOutput(digestBytes);
+            largePipe.pipeU1();
+            largePipe.pipe(largeData.length);
+            largePipe.flush();
+        }
+
+        assertThat(digestBytes.toByteArray())
+                .isEqualTo(largeData)
+                .isEqualTo(Files.readAllBytes(outputFile));
+    }
+
+    @Test
+    public void pipeToPositionalOutputStream() throws IOException {
+        byte[] largeData = largeData();
+        Path outputFile = Files.createTempFile(tempDir, getClass().getSimpleName(), ".hprof");
+        try (FileChannel largeInput = FileChannel.open(writeTempFile(largeData));
+                FileChannel output = FileChannel.open(outputFile, StandardOpenOption.WRITE)) {
+
+            PositionalOutputStream positionalOutput = new PositionalOutputStream(output, 0);
+            OutputStream outputStream = new BufferedOutputStream(positionalOutput);
+            Pipe largePipe = new MappedPipe(new MappedInput(largeInput, 1000), outputStream, positionalOutput,
+                    monitor);
+            largePipe.pipeU1();
+            largePipe.pipe(largeData.length);
+            largePipe.flush();
+        }
+
+        assertThat(Files.readAllBytes(outputFile))
+                .isEqualTo(largeData);
+        assertThat(monitor.sum())
+                .isEqualTo(largeData.length);
+    }
+
+    @Test
+    public void progress() throws IOException {
+        pipe.pipeU1();
+        assertThat(monitor.sum())
+                .as("published on flush")
+                .isZero();
+
+        pipe.flush();
+        assertThat(monitor.sum())
+                .isEqualTo(1);
+
+        pipe.pipe(100);
+        pipe.flush();
+        assertThat(monitor.sum())
+                .isEqualTo(data.length());
+    }
+
+    private byte[] largeData() {
+        byte[] largeData = new byte[MappedPipe.TRANSFER_THRESHOLD * 3];
+        new Random(0).nextBytes(largeData);
+        return largeData;
+    }
+
+    private Path writeTempFile(byte[] bytes) throws IOException {
+        Path file = Files.createTempFile(tempDir, getClass().getSimpleName(), ".hprof");
+        return Files.write(file, bytes);
+    }
+
+    private void verifyEoF() throws IOException {
+        assertThat(pipe.readU1())
+                .isEqualTo(-1);
+    }
+
+    private String outputString() throws IOException {
+        return outputBytes.toString("UTF-8");
+    }
+}
@@ -0,0 +1,103 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class OffHeapLongHashSetTest {
+
+    private static final long MIN_BYTES = OffHeapLongHashSet.MIN_CAPACITY * Long.BYTES;
+
+    @Test
+    public void addAndContains() {
+        OffHeapLongHashSet set = new OffHeapLongHashSet(MIN_BYTES);
+
+        assertThat(set.add(8))
+                .isTrue();
+        assertThat(set.add(-16))
+                .isTrue();
+        assertThat(set.add(8))
+                .isFalse();
+
+        assertThat(set.size())
+                .isEqualTo(2);
+        assertThat(set.contains(8))
+                .isTrue();
+        assertThat(set.contains(-16))
+                .isTrue();
+        assertThat(set.contains(16))
+                .isFalse();
+        assertThat(set.contains(0))
+                .isFalse();
+    }
+
+    @Test
+    public void grow() {
+        OffHeapLongHashSet set = new OffHeapLongHashSet(64 * MIN_BYTES);
+        int numKeys = 1_000_000;
+        for (long id = 1; id <= numKeys; id++) {
+            set.add(id * 8); // aligned like object ids
+        }
+
+        assertThat(set.size())
+                .isEqualTo(numKeys);
+        for (long id = 1; id <= numKeys; id++) {
+            assertThat(set.contains(id * 8))
+                    .isTrue();
+        }
+        assertThat(set.contains(4))
+                .isFalse();
+        assertThat(set.contains((numKeys + 1) * 8L))
+                .isFalse();
+    }
+
+    @Test
+    public void memoryBudget() {
+        OffHeapLongHashSet set = new OffHeapLongHashSet(2 * MIN_BYTES + 1);
+        long maxSize = set.maxSize();
+        assertThat(maxSize)
+                .isEqualTo(OffHeapLongHashSet.MIN_CAPACITY / 2 * 3);
+        for (long id = 1; id <= maxSize; id++) {
+            set.add(id);
+        }
+        // present keys are still found when full
+        assertThat(set.add(maxSize))
+                .isFalse();
+        assertThatThrownBy(() -> set.add(maxSize + 1))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("More than %s ids exceed the memory budget of %s bytes", maxSize, 2 * MIN_BYTES);
+
+        assertThatThrownBy(() -> new OffHeapLongHashSet(MIN_BYTES - 1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Memory budget too small: %s bytes", MIN_BYTES - 1);
+    }
+
+    @Test
+    public void zeroKey() {
+        OffHeapLongHashSet set = new OffHeapLongHashSet(MIN_BYTES);
+        assertThatThrownBy(() -> set.add(0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Zero key");
+    }
+}
@@ -0,0 +1,152 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ParallelGzipOutputStreamTest {
+
+    private ByteArrayOutputStream outputBytes = new ByteArrayOutputStream();
+
+    private ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+
+    @Test
+    public void gunzipsToInput() throws IOException {
+        byte[] data = newData(300_000);
+        try (OutputStream output = new ParallelGzipOutputStream(outputBytes, indexBytes, 3)) {
+            output.write(data, 0, 1000);
+            output.write(data[1000]);
+            output.write(data, 1001, data.length - 1001);
+        }
+
+        try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(outputBytes.toByteArray()))) {
+            assertThat(IOUtils.toByteArray(input))
+                    .isEqualTo(data);
+        }
+    }
+
+    @Test
+    public void blocksAndIndex() throws IOException {
+        byte[] data = newData(300_000);
+        try (OutputStream output = new ParallelGzipOutputStream(outputBytes, indexBytes, 2)) {
+            output.write(data);
+        }
+
+        // walk the blocks through their BSIZE fields
+        ByteBuffer gzip = ByteBuffer.wrap(outputBytes.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        List<Long> blockOffsets = new ArrayList<>();
+        List<Long> dataOffsets = new ArrayList<>();
+        long dataOffset = 0;
+        while (gzip.hasRemaining()) {
+            int start = gzip.position();
+            assertThat(gzip.get(start + 12))
+                    .isEqualTo((byte) 'B');
+            assertThat(gzip.get(start + 13))
+                    .isEqualTo((byte) 'C');
+            int blockSize = (gzip.getShort(start + 16) & 0xFFFF) + 1;
+            assertThat(blockSize)
+                    .isLessThanOrEqualTo(ParallelGzipOutputStream.MAX_BLOCK_SIZE);
+
+            blockOffsets.add((long) start);
+            dataOffsets.add(dataOffset);
+            dataOffset += gzip.getInt(start + blockSize - 4);
+            gzip.position(start + blockSize);
+        }
+
+        assertThat(dataOffset)
+                .isEqualTo(data.length);
+        byte[] output = outputBytes.toByteArray();
+        assertThat(Arrays.copyOfRange(output, output.length - 28, output.length))
+                .isEqualTo(ParallelGzipOutputStream.EOF_BLOCK);
+
+        // index skips the first block and the empty end of file block
+        ByteBuffer index = ByteBuffer.wrap(indexBytes.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        int numEntries = (int) index.getLong();
+        assertThat(numEntries)
+                .isEqualTo(blockOffsets.size() - 2);
+        for (int i = 1; i <= numEntries; i++) {
+            assertThat(index.getLong())
+                    .isEqualTo(blockOffsets.get(i));
+            assertThat(index.getLong())
+                    .isEqualTo(dataOffsets.get(i));
+        }
+    }
+
+    @Test
+    public void incompressibleData() throws IOException {
+        byte[] data = new byte[200_000];
+        new Random(0).nextBytes(data);
+        try (OutputStream output = new ParallelGzipOutputStream(outputBytes, null, 2)) {
+            output.write(data);
+        }
+
+        try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(outputBytes.toByteArray()))) {
+            assertThat(IOUtils.toByteArray(input))
+                    .isEqualTo(data);
+        }
+    }
+
+    @Test
+    public void flushEndsBlock() throws IOException {
+        try (OutputStream output = new ParallelGzipOutputStream(outputBytes, indexBytes, 1)) {
+            output.write('a');
+            output.flush();
+            int size = outputBytes.size();
+            assertThat(size)
+                    .isGreaterThan(0);
+
+            output.write('b');
+            output.flush();
+            assertThat(outputBytes.size())
+                    .isGreaterThan(size);
+        }
+
+        try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(outputBytes.toByteArray()))) {
+            assertThat(IOUtils.toByteArray(input))
+                    .isEqualTo(new byte[] { 'a', 'b' });
+        }
+    }
+
+    // compressible, but not trivially so
+    private byte[] newData(int size) {
+        Random random = new Random(0);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return data;
+    }
+}
@@ -0,0 +1,116 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput of {@link Pipe} primitives. Each operation pipes 1 MB of input
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PipeBenchmark {
+
+    private static final int DATA_SIZE = 1024 * 1024;
+
+    private byte[] data;
+    private byte[] tiles;
+    private LongAdder numBytesWritten;
+
+    @Setup
+    public void setup() {
+        data = new byte[DATA_SIZE];
+        tiles = HeapDumpSanitizer.tile("\0".getBytes(StandardCharsets.UTF_8));
+        numBytesWritten = new LongAdder();
+    }
+
+    @Benchmark
+    public void pipeU1(ThroughputCounters counters) throws IOException {
+        Pipe pipe = newPipe();
+        for (int i = 0; i < DATA_SIZE; i++) {
+            pipe.pipeU1();
+        }
+        pipe.flush();
+        counters.add(DATA_SIZE);
+    }
+
+    @Benchmark
+    public void pipeU4(ThroughputCounters counters) throws IOException {
+        Pipe pipe = newPipe();
+        for (int i = 0; i < DATA_SIZE / 4; i++) {
+            pipe.pipeU4();
+        }
+        pipe.flush();
+        counters.add(DATA_SIZE);
+    }
+
+    @Benchmark
+    public void pipeId(ThroughputCounters counters) throws IOException {
+        Pipe pipe = newPipe();
+        for (int i = 0; i < DATA_SIZE / 8; i++) {
+            pipe.pipeId();
+        }
+        pipe.flush();
+        counters.add(DATA_SIZE);
+    }
+
+    @Benchmark
+    public void pipe(ThroughputCounters counters) throws IOException {
+        Pipe pipe = newPipe();
+        pipe.pipe(DATA_SIZE);
+        pipe.flush();
+        counters.add(DATA_SIZE);
+    }
+
+    @Benchmark
+    public void replace(ThroughputCounters counters) throws IOException {
+        Pipe pipe = newPipe();
+        pipe.replace(tiles, DATA_SIZE);
+        pipe.flush();
+        counters.add(DATA_SIZE);
+    }
+
+    private Pipe newPipe() {
+        Pipe pipe = new Pipe(new ByteArrayInputStream(data), new NullOutputStream(), numBytesWritten);
+        pipe.setIdSize(8);
+        return pipe;
+    }
+}
@@ -27,7 +27,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -40,9 +40,9 @@ public class PipeTest {
 
     private ByteArrayOutputStream outputBytes = new ByteArrayOutputStream();
 
-    private AtomicLong monitor = new AtomicLong();
+    private LongAdder monitor = new LongAdder();
 
-    private Pipe pipe = new Pipe(inputBytes, outputBytes, monitor::set);
+    private Pipe pipe = new Pipe(inputBytes, outputBytes, monitor);
 
     @Test
     public void idSizeSetGet() {
@@ -53,6 +53,8 @@ public class PipeTest {
         pipe.setIdSize(8);
         assertThat(pipe.getIdSize())
                 .isEqualTo(8);
+        assertThat(pipe.getRecordSizes())
+                .isSameAs(RecordSizes.ID8);
     }
 
     @Test
@@ -129,6 +131,31 @@ public class PipeTest {
                 .isEqualTo(newData);
     }
 
+    @Test
+    public void replace() throws IOException {
+        pipe.replace("ab".getBytes(StandardCharsets.UTF_8), 5);
+
+        assertThat(outputString())
+                .isEqualTo("ababa");
+        assertThat(pipe.pipeU1())
+                .isEqualTo(' ');
+    }
+
+    @Test
+    public void readAndWrite() throws IOException {
+        byte[] buffer = new byte[8];
+        pipe.read(buffer, 2, 5);
+        assertThat(outputString())
+                .isEmpty();
+
+        buffer[3] = 'E';
+        pipe.write(buffer, 2, 5, true);
+        assertThat(outputString())
+                .isEqualTo("hEllo");
+        assertThat(pipe.pipeU1())
+                .isEqualTo(' ');
+    }
+
     @Test
     public void pipeU1() throws IOException {
         int u1 = pipe.pipeU1();
@@ -198,15 +225,45 @@ public class PipeTest {
                 .isEqualTo("hello world\0");
     }
 
+    @Test
+    public void outputPositionAndDigest() throws IOException {
+        ByteArrayOutputStream digestBytes = new ByteArrayOutputStream();
+        pipe.setDigestOutput(digestBytes);
+        pipe.pipeU1();
+
+        Pipe boundedPipe = pipe.newInputBoundedPipe(4);
+        boundedPipe.pipe(10);
+        assertThat(boundedPipe.getNumBytesTruncated())
+                .isEqualTo(6);
+        assertThat(pipe.getOutputPosition())
+                .isEqualTo(5);
+
+        pipe.replace("x".getBytes(StandardCharsets.UTF_8), 2);
+        pipe.pipe(100);
+        assertThat(pipe.getOutputPosition())
+                .isEqualTo(data.length());
+        assertThat(pipe.getNumBytesTruncated())
+                .isEqualTo(100 - (data.length() - 7));
+        assertThat(digestBytes.toString("UTF-8"))
+                .isEqualTo(outputString())
+                .isEqualTo("helloxxorld\0more-stuff-here");
+    }
+
     @Test
     public void progress() throws IOException {
         pipe.pipeU1();
-        assertThat(monitor)
-                .hasValue(1);
+        assertThat(monitor.sum())
+                .as("published on flush")
+                .isZero();
+
+        pipe.flush();
+        assertThat(monitor.sum())
+                .isEqualTo(1);
 
         pipe.pipe(100);
-        assertThat(monitor)
-                .hasValue(data.length());
+        pipe.flush();
+        assertThat(monitor.sum())
+                .isEqualTo(data.length());
     }
 
     private void verifyEoF() throws IOException {
@@ -0,0 +1,68 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PositionalOutputStreamTest {
+
+    @TempDir
+    static Path tempDir;
+
+    @Test
+    public void writesAtOwnPosition() throws IOException {
+        Path file = Files.createTempFile(tempDir, getClass().getSimpleName(), ".hprof");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            PositionalOutputStream world = new PositionalOutputStream(channel, 6);
+            PositionalOutputStream hello = new PositionalOutputStream(channel, 0);
+
+            world.write(bytesOf("wor"));
+            hello.write(bytesOf("hello"));
+            hello.write(' ');
+            world.write(ByteBuffer.wrap(bytesOf("ld")));
+
+            assertThat(hello.getPosition())
+                    .isEqualTo(6);
+            assertThat(world.getPosition())
+                    .isEqualTo(11);
+            assertThat(channel.position())
+                    .isZero();
+        }
+
+        assertThat(new String(Files.readAllBytes(file), StandardCharsets.UTF_8))
+                .isEqualTo("hello world");
+    }
+
+    private byte[] bytesOf(String str) {
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+}
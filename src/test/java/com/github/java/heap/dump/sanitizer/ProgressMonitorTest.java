@@ -20,8 +20,6 @@
 
 package com.github.java.heap.dump.sanitizer;
 
-import com.github.java.heap.dump.sanitizer.ProgressMonitor;
-import com.github.java.heap.dump.sanitizer.SanitizeCommand;
 import org.apache.logging.log4j.core.Logger;
 import org.apache.logging.log4j.core.LoggerContext;
 import org.apache.logging.log4j.core.appender.WriterAppender;
@@ -31,7 +29,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.StringWriter;
-import java.util.function.Consumer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -64,31 +63,43 @@ public class ProgressMonitorTest {
     }
 
     @Test
-    public void numBytesWrittenMonitor() {
-        SanitizeCommand cmd = new SanitizeCommand();
-        cmd.setBufferByteSize(5);
-
-        Consumer<Long> numBytesWrittenMonitor = ProgressMonitor.numBytesWrittenMonitor(cmd, logger);
-        numBytesWrittenMonitor.accept(4L);
+    public void reportWithKnownTotal() {
+        LongAdder numBytesWritten = new LongAdder();
+        ProgressMonitor monitor = new ProgressMonitor(numBytesWritten, 4000, logger, 0);
 
+        numBytesWritten.add(1000);
+        monitor.report(TimeUnit.SECONDS.toNanos(1));
         assertThat(writer.toString())
-                .isEmpty();
+                .hasLineCount(1)
+                .contains("Processed 1000 bytes of 3 KB (25%) at 1000 bytes/s, ETA 3s");
 
-        numBytesWrittenMonitor.accept(5L);
+        numBytesWritten.add(2000);
+        monitor.report(TimeUnit.SECONDS.toNanos(2));
         assertThat(writer.toString())
-                .hasLineCount(1)
-                .contains("Processed 5 bytes");
+                .hasLineCount(2)
+                .contains("Processed 2 KB of 3 KB (75%) at 1 KB/s, ETA 1s");
+    }
 
-        numBytesWrittenMonitor.accept(6L);
+    @Test
+    public void reportWithUnknownTotal() {
+        LongAdder numBytesWritten = new LongAdder();
+        ProgressMonitor monitor = new ProgressMonitor(numBytesWritten, -1, logger, 0);
+
+        numBytesWritten.add(5);
+        monitor.report(TimeUnit.SECONDS.toNanos(5));
         assertThat(writer.toString())
                 .hasLineCount(1)
-                .contains("Processed 5 bytes");
+                .contains("Processed 5 bytes at 1 bytes/s");
+    }
 
-        numBytesWrittenMonitor.accept(11L);
+    @Test
+    public void startAndClose() {
+        try (ProgressMonitor monitor = ProgressMonitor.start(new LongAdder(), -1, 60, logger)) {
+            assertThat(monitor)
+                    .isNotNull();
+        }
         assertThat(writer.toString())
-                .hasLineCount(2)
-                .contains("Processed 5 bytes")
-                .contains("Processed 11 bytes");
+                .isEmpty();
     }
 
     private PatternLayout simpleLayout() {
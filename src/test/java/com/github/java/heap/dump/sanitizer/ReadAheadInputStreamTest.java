@@ -0,0 +1,126 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ReadAheadInputStreamTest {
+
+    private String data = "hello world\0more-stuff-here";
+
+    @Test
+    public void readAcrossBuffers() throws IOException {
+        try (InputStream input = new ReadAheadInputStream(byteStreamOf(data), 3, 2)) {
+            assertThat(input.read())
+                    .isEqualTo('h');
+
+            byte[] bytes = new byte[10];
+            assertThat(IOUtils.read(input, bytes))
+                    .isEqualTo(10);
+            assertThat(new String(bytes, StandardCharsets.UTF_8))
+                    .isEqualTo("ello world");
+
+            assertThat(IOUtils.toString(input, StandardCharsets.UTF_8))
+                    .isEqualTo("\0more-stuff-here");
+            assertThat(input.read())
+                    .isEqualTo(-1);
+        }
+    }
+
+    @Test
+    public void exactMultipleOfBufferSize() throws IOException {
+        try (InputStream input = new ReadAheadInputStream(byteStreamOf("abcdef"), 3, 1)) {
+            assertThat(IOUtils.toString(input, StandardCharsets.UTF_8))
+                    .isEqualTo("abcdef");
+            assertThat(input.read())
+                    .isEqualTo(-1);
+        }
+    }
+
+    @Test
+    public void emptyInput() throws IOException {
+        try (InputStream input = new ReadAheadInputStream(byteStreamOf(""), 3, 2)) {
+            assertThat(input.read())
+                    .isEqualTo(-1);
+            assertThat(input.read(new byte[3], 0, 3))
+                    .isEqualTo(-1);
+        }
+    }
+
+    @Test
+    public void readFailure() throws IOException {
+        InputStream failingInput = new SequenceInputStream(byteStreamOf("hello"), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("disk error");
+            }
+        });
+
+        try (InputStream input = new ReadAheadInputStream(failingInput, 2, 2)) {
+            assertThatThrownBy(() -> IOUtils.toByteArray(input))
+                    .isInstanceOf(IOException.class)
+                    .hasRootCauseMessage("disk error");
+        }
+    }
+
+    @Test
+    @Timeout(10) // a dead worker would otherwise block the caller forever
+    public void uncheckedReadFailure() throws IOException {
+        InputStream failingInput = new SequenceInputStream(byteStreamOf("hello"), new InputStream() {
+            @Override
+            public int read() {
+                throw new IllegalStateException("corrupt input");
+            }
+        });
+
+        try (InputStream input = new ReadAheadInputStream(failingInput, 2, 2)) {
+            assertThatThrownBy(() -> IOUtils.toByteArray(input))
+                    .isInstanceOf(IOException.class)
+                    .hasMessage("read ahead failed")
+                    .hasRootCauseMessage("corrupt input");
+        }
+    }
+
+    @Test
+    public void invalidSettings() {
+        assertThatThrownBy(() -> new ReadAheadInputStream(byteStreamOf(data), 0, 2))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid buffer size: 0");
+        assertThatThrownBy(() -> new ReadAheadInputStream(byteStreamOf(data), 3, 0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid number of buffers: 0");
+    }
+
+    private ByteArrayInputStream byteStreamOf(String str) {
+        return new ByteArrayInputStream(str.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,84 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import com.github.java.heap.dump.sanitizer.RecordIndex.Entry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class RecordIndexTest {
+
+    @Test
+    public void writeAndRead() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RecordIndex index = new RecordIndex(output, 1000);
+        index.addRecord(31, 0x1C, 5000);
+        index.addSubRecord(40, 0x21, 999);
+        index.addSubRecord(1039, 0x23, 1000);
+        index.addRecord(5031, 0x2C, 9);
+        index.finish();
+
+        assertThat(index.getNumEntries())
+                .isEqualTo(3);
+        assertThat(output.size())
+                .isEqualTo(8 + 4 + 8 + 4 * RecordIndex.ENTRY_SIZE);
+
+        List<Entry> entries = RecordIndex.read(new ByteArrayInputStream(output.toByteArray()));
+        assertThat(entries)
+                .extracting(Entry::getOffset, Entry::getLevel, Entry::getTag, Entry::getSize)
+                .containsExactly(
+                        tuple(31L, RecordIndex.RECORD, 0x1C, 5000L),
+                        tuple(1039L, RecordIndex.SUB_RECORD, 0x23, 1000L),
+                        tuple(5031L, RecordIndex.RECORD, 0x2C, 9L));
+        assertThat(entries.get(1))
+                .hasToString("Sub-record 0x23 at 1039, 1000 bytes");
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws Exception {
+        assertThatThrownBy(() -> RecordIndex.read(new ByteArrayInputStream(new byte[20])))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Not a record index");
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RecordIndex index = new RecordIndex(output, 1);
+        index.addRecord(31, 0x01, 20);
+        index.finish();
+        byte[] truncated = Arrays.copyOf(output.toByteArray(), output.size() - 1);
+        assertThatThrownBy(() -> RecordIndex.read(new ByteArrayInputStream(truncated)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Incomplete record index after 1 entries");
+
+        // as left by a failed sanitization, with whole entries but no end
+        byte[] unfinished = Arrays.copyOf(output.toByteArray(), output.size() - RecordIndex.ENTRY_SIZE);
+        assertThatThrownBy(() -> RecordIndex.read(new ByteArrayInputStream(unfinished)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Incomplete record index after 1 entries");
+    }
+}
@@ -0,0 +1,84 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RecordSizesTest {
+
+    @ParameterizedTest
+    @ValueSource(ints = { 4, 8 })
+    public void sizes(int idSize) {
+        RecordSizes sizes = RecordSizes.forIdSize(idSize);
+
+        assertThat(sizes.idSize)
+                .isEqualTo(idSize);
+        assertThat(sizes.classDumpSkipSize)
+                .isEqualTo(5 * idSize + 4);
+        for (BasicType basicType : BasicType.values()) {
+            assertThat(sizes.valueSize(basicType.getU1Code()))
+                    .isEqualTo(BasicType.findValueSize(basicType.getU1Code(), idSize));
+        }
+        assertThat(sizes.rootSize(0x01))
+                .isEqualTo(idSize);
+        assertThat(sizes.rootSize(0x08))
+                .isEqualTo(8);
+    }
+
+    @Test
+    public void sharedInstances() {
+        assertThat(RecordSizes.forIdSize(4))
+                .isSameAs(RecordSizes.ID4);
+        assertThat(RecordSizes.forIdSize(8))
+                .isSameAs(RecordSizes.ID8);
+        assertThatThrownBy(() -> RecordSizes.forIdSize(2))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Unknown id size: 2");
+    }
+
+    @Test
+    public void roots() {
+        RecordSizes sizes = RecordSizes.ID8;
+        for (int tag : new int[] { 0xFF, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08 }) {
+            assertThat(sizes.isRoot(tag))
+                    .isTrue();
+        }
+        for (int tag : new int[] { 0x00, 0x09, 0x20, 0x21, 0x22, 0x23, 0xFE }) {
+            assertThat(sizes.isRoot(tag))
+                    .isFalse();
+        }
+    }
+
+    @Test
+    public void unknownBasicType() {
+        assertThatThrownBy(() -> RecordSizes.ID4.valueSize(3))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Unknown basic type code: 3");
+        assertThatThrownBy(() -> RecordSizes.ID4.valueSize(200))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Unknown basic type code: 200");
+    }
+}
@@ -24,17 +24,29 @@ import com.github.java.heap.dump.sanitizer.HeapDumpSanitizer;
 import com.github.java.heap.dump.sanitizer.SanitizeCommand;
 import com.github.java.heap.dump.sanitizer.SanitizeCommandRunner;
 import com.github.java.heap.dump.sanitizer.StreamFactory;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatCode;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 
@@ -69,6 +81,322 @@ public class SanitizeCommandRunnerTest {
                 .hasMessage("Invalid buffer size");
     }
 
+    @Test
+    public void progressIntervalValidation() throws Exception {
+        command.setProgressIntervalSeconds(0);
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid progress interval");
+    }
+
+    @Test
+    public void zipOrGzipValidation() throws Exception {
+        command.setZipOutput(true);
+        command.setGzipOutput(true);
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Choose either zip or gzip output");
+    }
+
+    @Test
+    public void outputFileValidation() throws Exception {
+        command.setOutputFile(null);
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(NullPointerException.class)
+                .hasMessage("Output file is required");
+    }
+
+    @Test
+    public void inPlaceValidation() throws Exception {
+        command.setInPlace(true);
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Output file cannot be used with in-place sanitization");
+
+        command.setOutputFile(null);
+        command.setZipOutput(true);
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Zip output cannot be used with in-place sanitization");
+
+        command.setZipOutput(false);
+        command.setGzipOutput(true);
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Gzip output cannot be used with in-place sanitization");
+
+        command.setGzipOutput(false);
+        command.setTarOutput(true);
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Tar output cannot be used with in-place sanitization");
+
+        command.setTarOutput(false);
+        runner.run();
+        verify(sanitizer).setInPlace(true);
+        verify(sanitizer).sanitize();
+    }
+
+    @Test
+    public void threadsValidation() throws Exception {
+        command.setThreads(0);
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid number of threads");
+
+        command.setThreads(2);
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Multiple threads require a regular input file");
+
+        doReturn(true).when(streamFactory).isSeekableInput();
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Multiple threads require an output file");
+
+        doReturn(true).when(streamFactory).isSeekableOutput();
+        runner.run();
+        verify(streamFactory).newInputChannel();
+        verify(streamFactory).newOutputChannel();
+        verify(sanitizer).setThreads(2);
+        verify(sanitizer).sanitize();
+    }
+
+    @Test
+    public void asyncIo() throws Exception {
+        doReturn(new ByteArrayInputStream(new byte[0])).when(streamFactory).newInputStream();
+        doReturn(new ByteArrayOutputStream()).when(streamFactory).newOutputStream();
+        command.setAsyncIo(true);
+        runner.run();
+
+        verify(sanitizer).setInputStream(any(ReadAheadInputStream.class));
+        verify(sanitizer).setOutputStream(any(WriteBehindOutputStream.class));
+        verify(sanitizer).sanitize();
+    }
+
+    @Test
+    public void tarOutput() throws Exception {
+        doReturn(new TarArchiveInputStream(new ByteArrayInputStream(new byte[0]))).when(streamFactory)
+                .newTarInputStream();
+        doReturn(new ByteArrayOutputStream()).when(streamFactory).newOutputStream();
+        doReturn(mock(TarArchiveOutputStream.class)).when(streamFactory).newTarOutputStream(any());
+        command.setTarOutput(true);
+        runner.run();
+
+        verify(streamFactory).newTarInputStream();
+        verify(streamFactory).newTarOutputStream(any());
+        verify(streamFactory, never()).newInputStream();
+    }
+
+    @Test
+    public void batch() throws Exception {
+        BatchSanitizer batchSanitizer = mock(BatchSanitizer.class);
+        doReturn(batchSanitizer).when(runner).newBatchSanitizer();
+        command.setBatch(true);
+        runner.run();
+
+        verify(batchSanitizer).sanitize();
+        verify(runner, never()).newStreamFactory(command);
+    }
+
+    @Test
+    public void watch() throws Exception {
+        WatchSanitizer watchSanitizer = mock(WatchSanitizer.class);
+        doReturn(watchSanitizer).when(runner).newWatchSanitizer();
+        command.setWatch(true);
+        command.setBatch(true);
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Choose either batch or watch mode");
+
+        command.setBatch(false);
+        runner.run();
+        verify(watchSanitizer).watch();
+        verify(watchSanitizer).close();
+        verify(runner, never()).newStreamFactory(command);
+
+        command.setOutputFile(null);
+        command.setInPlace(true);
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Watch mode cannot sanitize in place");
+    }
+
+    @Test
+    public void follow() throws Exception {
+        command.setFollow(true);
+        command.setFollowTimeoutSeconds(-1);
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid follow timeout");
+
+        command.setFollowTimeoutSeconds(0);
+        runner.run();
+        verify(sanitizer).setFollow(true);
+
+        command.setOutputFile(null);
+        command.setInPlace(true);
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Follow mode cannot sanitize in place");
+    }
+
+    @Test
+    public void fieldRules() throws Exception {
+        command.setFieldRules("pin");
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid field rule: pin");
+
+        command.setFieldRules("com.acme.Card.pin");
+        runner.run();
+        verify(sanitizer).setFieldRules(any(FieldRules.class));
+        verify(sanitizer).sanitize();
+    }
+
+    @Test
+    public void arrayPolicies() throws Exception {
+        command.setArrayPolicies("int=shuffle");
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid array policy: int=shuffle");
+
+        command.setArrayPolicies("int=random");
+        runner.run();
+        verify(sanitizer).setArrayPolicies(any(ArrayPolicies.class));
+        verify(sanitizer).sanitize();
+    }
+
+    @Test
+    public void secretsFile() throws Exception {
+        command.setSecretsFile(new File("missing-secrets.txt"));
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Secrets file not found: missing-secrets.txt");
+
+        command.setSecretsFile(new File(getClass().getResource("/secrets.txt").toURI()));
+        runner.run();
+        verify(sanitizer).setSecretMatcher(any(SecretMatcher.class));
+        verify(sanitizer).sanitize();
+    }
+
+    @Test
+    public void tokenKeyFile(@TempDir Path tempDir) throws Exception {
+        command.setTokenKeyFile(new File("missing-token.key"));
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Token key file not found: missing-token.key");
+
+        Path shortKeyFile = Files.write(tempDir.resolve("short.key"), new byte[15]);
+        command.setTokenKeyFile(shortKeyFile.toFile());
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Token key shorter than 16 bytes");
+
+        command.setTokenKeyFile(Files.write(tempDir.resolve("token.key"), new byte[16]).toFile());
+        command.setSecretsFile(new File(getClass().getResource("/secrets.txt").toURI()));
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Choose either a secrets file or a token key file");
+
+        command.setSecretsFile(null);
+        command.setTokenCacheMemoryByteSize(1024);
+        runner.run();
+        verify(sanitizer).setTokenKey(any(byte[].class));
+        verify(sanitizer).setTokenCacheMemory(1024);
+        verify(sanitizer).sanitize();
+    }
+
+    @Test
+    public void verifyWritesDigestFile(@TempDir Path tempDir) throws Exception {
+        command.setVerify(true);
+        command.setThreads(2);
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Verification requires a single thread");
+
+        command.setThreads(1);
+        command.setOutputFile(tempDir.resolve("output.hprof").toFile());
+        doReturn(true).when(streamFactory).isSeekableOutput();
+        doReturn(new SanitizationSummary(10, 2, 1, new byte[] { 0x0F, (byte) 0xA0 })).when(sanitizer).getSummary();
+        runner.run();
+        verify(sanitizer).setVerify(true);
+        assertThat(tempDir.resolve("output.hprof.sha256"))
+                .hasContent("0fa0  output.hprof");
+    }
+
+    @Test
+    public void indexWritesIndexFile(@TempDir Path tempDir) throws Exception {
+        command.setIndex(true);
+        command.setThreads(2);
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Indexing requires a single thread");
+
+        command.setThreads(1);
+        command.setIndexMinByteSize(0);
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid index min size");
+
+        command.setIndexMinByteSize(4096);
+        command.setOutputFile(tempDir.resolve("output.hprof").toFile());
+        doReturn(true).when(streamFactory).isSeekableOutput();
+        runner.run();
+        verify(sanitizer).setIndexOutput(any(OutputStream.class));
+        verify(sanitizer).setIndexMinSubRecordSize(4096);
+        assertThat(tempDir.resolve("output.hprof.idx"))
+                .exists();
+
+        doThrow(new IOException("Unexpected end of heap dump")).when(sanitizer).sanitize();
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IOException.class);
+        assertThat(tempDir.resolve("output.hprof.idx"))
+                .doesNotExist();
+    }
+
+    @Test
+    public void indexRequiresPlainOutputFile() throws Exception {
+        command.setIndex(true);
+        command.setGzipOutput(true);
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Indexing requires uncompressed output");
+
+        command.setGzipOutput(false);
+        command.setTarOutput(true);
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Indexing requires uncompressed output");
+
+        command.setTarOutput(false);
+        command.setOutputFile(new File("-"));
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Indexing requires an output file");
+        verify(sanitizer, never()).sanitize();
+    }
+
+    @Test
+    public void stringsOnly() throws Exception {
+        command.setStringsOnly(true);
+        command.setStringIdsMemoryByteSize(1024);
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid string ids memory");
+
+        command.setStringIdsMemoryByteSize(1024 * 1024);
+        assertThatThrownBy(runner::run)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Strings-only mode requires a regular input file");
+
+        doReturn(true).when(streamFactory).isSeekableInput();
+        runner.run();
+        verify(sanitizer).setStringsOnly(true);
+        verify(sanitizer).setStringValuesMemoryBudget(1024 * 1024);
+        verify(sanitizer).sanitize();
+    }
+
     @Test
     public void run() throws Exception {
         runner.run();
@@ -84,6 +412,8 @@ public class SanitizeCommandRunnerTest {
 
             new SanitizeCommandRunner(command).newSanitizer();
             new SanitizeCommandRunner(command).newStreamFactory(command);
+            new SanitizeCommandRunner(command).newBatchSanitizer();
+            new SanitizeCommandRunner(command).newWatchSanitizer();
 
         }).doesNotThrowAnyException();
     }
@@ -32,6 +32,7 @@ import static org.meanbean.test.BeanVerifications.verifyThat;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 
@@ -60,6 +61,61 @@ public class SanitizeCommandTest {
                 .hasValidToStringMethod();
     }
 
+    @Test
+    public void forFiles() {
+        SanitizeCommand cmd = new SanitizeCommand();
+        cmd.setBatch(true);
+        cmd.setInputFile(new File("dumps"));
+        cmd.setOutputFile(new File("sanitized"));
+        cmd.setGzipOutput(true);
+        cmd.setThreads(3);
+        cmd.setSanitizationText("\\0");
+        cmd.setFieldRules("com.acme.Card.pin");
+        cmd.setArrayPolicies("int=zero");
+        cmd.setSecretsFile(new File("secrets.txt"));
+        cmd.setTokenKeyFile(new File("token.key"));
+        cmd.setTokenCacheMemoryByteSize(1024);
+        cmd.setStringsOnly(true);
+        cmd.setStringIdsMemoryByteSize(1024 * 1024);
+        cmd.setVerify(true);
+        cmd.setIndex(true);
+        cmd.setIndexMinByteSize(4096);
+
+        SanitizeCommand job = cmd.forFiles(new File("dumps/a.hprof"), new File("sanitized/a.hprof.gz"));
+        assertThat(job.isBatch())
+                .isFalse();
+        assertThat(job.getInputFile())
+                .isEqualTo(new File("dumps/a.hprof"));
+        assertThat(job.getOutputFile())
+                .isEqualTo(new File("sanitized/a.hprof.gz"));
+        assertThat(job.isGzipOutput())
+                .isTrue();
+        assertThat(job.getThreads())
+                .isEqualTo(3);
+        assertThat(job.getSanitizationText())
+                .isEqualTo(cmd.getSanitizationText());
+        assertThat(job.getFieldRules())
+                .isEqualTo("com.acme.Card.pin");
+        assertThat(job.getArrayPolicies())
+                .isEqualTo("int=zero");
+        assertThat(job.getSecretsFile())
+                .isEqualTo(new File("secrets.txt"));
+        assertThat(job.getTokenKeyFile())
+                .isEqualTo(new File("token.key"));
+        assertThat(job.getTokenCacheMemoryByteSize())
+                .isEqualTo(1024);
+        assertThat(job.isStringsOnly())
+                .isTrue();
+        assertThat(job.getStringIdsMemoryByteSize())
+                .isEqualTo(1024 * 1024);
+        assertThat(job.isVerify())
+                .isTrue();
+        assertThat(job.isIndex())
+                .isTrue();
+        assertThat(job.getIndexMinByteSize())
+                .isEqualTo(4096);
+    }
+
     @Test
     public void call() throws Exception {
         SanitizeCommandRunner runner = mock(SanitizeCommandRunner.class);
@@ -100,6 +156,72 @@ public class SanitizeCommandTest {
                 .isEqualTo(new File("my-output"));
     }
 
+    @Test
+    public void mainStrict() throws Exception {
+        SanitizeCommand cmd = spy(new SanitizeCommand());
+        SanitizeCommand.commandLine = new CommandLine(cmd);
+        doNothing().when(cmd).call();
+
+        SanitizeCommand.main("--strict", "my-input", "my-output");
+
+        assertThat(cmd.isStrict())
+                .isTrue();
+        assertThat(cmd.getInputFile())
+                .isEqualTo(new File("my-input"));
+    }
+
+    @Test
+    public void mainInPlace() throws Exception {
+        SanitizeCommand cmd = spy(new SanitizeCommand());
+        SanitizeCommand.commandLine = new CommandLine(cmd);
+        doNothing().when(cmd).call();
+
+        SanitizeCommand.main("--in-place", "--threads", "8", "--progress-interval", "30", "-g", "my-input");
+
+        assertThat(cmd.isInPlace())
+                .isTrue();
+        assertThat(cmd.getThreads())
+                .isEqualTo(8);
+        assertThat(cmd.getProgressIntervalSeconds())
+                .isEqualTo(30);
+        assertThat(cmd.isGzipOutput())
+                .isTrue();
+        assertThat(cmd.getInputFile())
+                .isEqualTo(new File("my-input"));
+        assertThat(cmd.getOutputFile())
+                .isNull();
+    }
+
+    @Test
+    public void mainAnalyze() throws Exception {
+        SanitizeCommand cmd = spy(new SanitizeCommand());
+        AnalyzeCommand analyzeCmd = spy(new AnalyzeCommand());
+        SanitizeCommand.commandLine = new CommandLine(cmd)
+                .addSubcommand(SanitizeCommand.ANALYZE_COMMAND, analyzeCmd)
+                .setExecutionStrategy(SanitizeCommand::requireInputFile);
+        doNothing().when(analyzeCmd).call();
+
+        SanitizeCommand.main("analyze", "my-input", "my-report.json");
+
+        verify(analyzeCmd).call();
+        verify(cmd, never()).call();
+        assertThat(analyzeCmd.getInputFile())
+                .isEqualTo(new File("my-input"));
+        assertThat(analyzeCmd.getReportFile())
+                .isEqualTo(new File("my-report.json"));
+    }
+
+    @Test
+    public void mainRequiresInputFile() throws Exception {
+        SanitizeCommand cmd = spy(new SanitizeCommand());
+        SanitizeCommand.commandLine = new CommandLine(cmd)
+                .setExecutionStrategy(SanitizeCommand::requireInputFile);
+
+        assertThat(SanitizeCommand.commandLine.execute())
+                .isEqualTo(CommandLine.ExitCode.USAGE);
+        verify(cmd, never()).call();
+    }
+
     private String escapedSanitizationText(String sanitizationText) {
         SanitizeCommand cmd = new SanitizeCommand();
         cmd.setSanitizationText(sanitizationText);
@@ -0,0 +1,150 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import com.github.java.heap.dump.sanitizer.SecretMatcher.Scanner;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SecretMatcherTest {
+
+    @TempDir
+    static Path tempDir;
+
+    private final byte[] tiles = "#".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void redactsAllSecrets() {
+        SecretMatcher matcher = SecretMatcher.of(Arrays.asList("secret", "password", "cret-key"));
+
+        assertThat(redact(matcher, "my secret-key and password!"))
+                .isEqualTo("my ########## and ########!");
+        assertThat(redact(matcher, "nothing to see"))
+                .isEqualTo("nothing to see");
+        assertThat(redact(matcher, "secrepassword"))
+                .isEqualTo("secre########");
+    }
+
+    @Test
+    public void encodings() {
+        SecretMatcher matcher = SecretMatcher.of(Collections.singletonList("café-key"));
+
+        for (Charset charset : new Charset[] { StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1,
+                StandardCharsets.UTF_16BE, StandardCharsets.UTF_16LE }) {
+            byte[] input = "[café-key]".getBytes(charset);
+            byte[] redacted = redact(matcher, input);
+            // UTF-16 secrets may take a neighbouring byte along, since each byte order also matches the other
+            // one a byte off
+            assertThat(redacted[0])
+                    .isEqualTo(input[0]);
+            assertThat(new String(redacted, charset))
+                    .doesNotContain("café")
+                    .doesNotContain("key");
+        }
+
+        assertThat(matcher.getMinLength())
+                .isEqualTo("café-key".length());
+        assertThat(matcher.getMaxLength())
+                .isEqualTo(2 * "café-key".length());
+    }
+
+    @Test
+    public void matchesAcrossBuffers() {
+        SecretMatcher matcher = SecretMatcher.of(Collections.singletonList("secret"));
+        Scanner scanner = matcher.newScanner();
+        scanner.reset();
+
+        byte[] buffer = "a sec".getBytes(StandardCharsets.UTF_8);
+        scanner.redact(buffer, 0, buffer.length, tiles);
+        assertThat(scanner.getChangedEnd())
+                .isZero();
+
+        // held back bytes followed by the next buffer
+        byte[] next = "secret!".getBytes(StandardCharsets.UTF_8);
+        scanner.redact(next, 3, next.length, tiles);
+        assertThat(new String(next, StandardCharsets.UTF_8))
+                .isEqualTo("######!");
+        assertThat(scanner.getChangedEnd())
+                .isEqualTo(6);
+
+        scanner.shift(4);
+        assertThat(scanner.getChangedEnd())
+                .isEqualTo(2);
+        scanner.shift(4);
+        assertThat(scanner.getChangedEnd())
+                .isZero();
+    }
+
+    @Test
+    public void tilesRepeatAcrossSpans() {
+        SecretMatcher matcher = SecretMatcher.of(Collections.singletonList("secret"));
+        Scanner scanner = matcher.newScanner();
+        scanner.reset();
+
+        byte[] buffer = "-secret-".getBytes(StandardCharsets.UTF_8);
+        scanner.redact(buffer, 0, buffer.length, "xy".getBytes(StandardCharsets.UTF_8));
+        assertThat(new String(buffer, StandardCharsets.UTF_8))
+                .isEqualTo("-xyxyxy-");
+    }
+
+    @Test
+    public void load() throws IOException {
+        Path file = tempDir.resolve("secrets.txt");
+        Files.write(file, Arrays.asList("first-secret", "", "second-secret"), StandardCharsets.UTF_8);
+        SecretMatcher matcher = SecretMatcher.load(file);
+
+        assertThat(redact(matcher, "first-secret second-secret"))
+                .isEqualTo("############ #############");
+
+        Files.write(file, Arrays.asList("first-secret", "abc"), StandardCharsets.UTF_8);
+        assertThatThrownBy(() -> SecretMatcher.load(file))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Secret shorter than 4 characters on line 2");
+
+        Files.write(file, Collections.singletonList(""), StandardCharsets.UTF_8);
+        assertThatThrownBy(() -> SecretMatcher.load(file))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("No secrets");
+    }
+
+    private String redact(SecretMatcher matcher, String input) {
+        return new String(redact(matcher, input.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+    }
+
+    private byte[] redact(SecretMatcher matcher, byte[] input) {
+        Scanner scanner = matcher.newScanner();
+        scanner.reset();
+        byte[] buffer = input.clone();
+        scanner.redact(buffer, 0, buffer.length, tiles);
+        return buffer;
+    }
+}
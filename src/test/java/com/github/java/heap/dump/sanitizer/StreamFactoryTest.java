@@ -21,7 +21,9 @@
 package com.github.java.heap.dump.sanitizer;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -32,10 +34,16 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
@@ -125,6 +133,60 @@ public class StreamFactoryTest {
                 .isInstanceOf(FileInputStream.class);
     }
 
+    @Test
+    public void fileInputChannel() throws IOException {
+        Path inputFile = Files.createTempFile(tempDir, getClass().getSimpleName(), ".hprof");
+        SanitizeCommand cmd = newCommand();
+        cmd.setInputFile(inputFile.toFile());
+
+        streamFactory = new StreamFactory(cmd);
+        assertThat(streamFactory.isSeekableInput())
+                .isTrue();
+        try (FileChannel channel = streamFactory.newInputChannel()) {
+            assertThat(channel.isOpen())
+                    .isTrue();
+        }
+    }
+
+    @Test
+    public void inPlaceStreams() throws IOException {
+        Path inputFile = Files.createTempFile(tempDir, getClass().getSimpleName(), ".hprof");
+        SanitizeCommand cmd = newCommand();
+        cmd.setInputFile(inputFile.toFile());
+        cmd.setOutputFile(null);
+        cmd.setInPlace(true);
+
+        streamFactory = new StreamFactory(cmd);
+        try (FileChannel channel = streamFactory.newInputChannel()) {
+            channel.write(ByteBuffer.wrap(new byte[] { 1 }));
+        }
+        assertThat(Files.size(inputFile))
+                .isEqualTo(1);
+
+        assertThat(streamFactory.newOutputStream())
+                .isInstanceOf(NullOutputStream.class);
+        assertThatThrownBy(() -> streamFactory.newInputStream())
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void notSeekableInput() throws IOException {
+        Path inputFile = Files.createTempFile(tempDir, getClass().getSimpleName(), ".hprof");
+        SanitizeCommand cmd = newCommand();
+        cmd.setInputFile(new File("-"));
+
+        streamFactory = new StreamFactory(cmd);
+        assertThat(streamFactory.isSeekableInput())
+                .isFalse();
+        assertThatThrownBy(() -> streamFactory.newInputChannel())
+                .isInstanceOf(IllegalArgumentException.class);
+
+        cmd.setInputFile(inputFile.toFile());
+        cmd.setTarInput(true);
+        assertThat(streamFactory.isSeekableInput())
+                .isFalse();
+    }
+
     @Test
     public void fileOutputStream() throws IOException {
         Path file = Files.createTempFile(tempDir, getClass().getSimpleName(), ".hprof");
@@ -153,6 +215,137 @@ public class StreamFactoryTest {
                 .isInstanceOf(TarArchiveInputStream.class);
     }
 
+    @Test
+    public void gzipInputStream() throws IOException {
+        Path inputFile = Files.createTempFile(tempDir, getClass().getSimpleName(), ".hprof.gz");
+        try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(inputFile))) {
+            output.write("JAVA PROFILE".getBytes(StandardCharsets.UTF_8));
+        }
+
+        SanitizeCommand cmd = newCommand();
+        cmd.setInputFile(inputFile.toFile());
+
+        streamFactory = new StreamFactory(cmd);
+        assertThat(streamFactory.isSeekableInput())
+                .isFalse();
+        try (InputStream inputStream = streamFactory.newInputStream()) {
+            assertThat(IOUtils.toString(inputStream, StandardCharsets.UTF_8))
+                    .isEqualTo("JAVA PROFILE");
+        }
+    }
+
+    @Test
+    public void zipInputStream() throws IOException {
+        Path inputFile = Files.createTempFile(tempDir, getClass().getSimpleName(), ".zip");
+        try (ZipOutputStream output = new ZipOutputStream(Files.newOutputStream(inputFile))) {
+            output.putNextEntry(new ZipEntry("heap.hprof"));
+            output.write("JAVA PROFILE".getBytes(StandardCharsets.UTF_8));
+        }
+
+        SanitizeCommand cmd = newCommand();
+        cmd.setInputFile(inputFile.toFile());
+
+        streamFactory = new StreamFactory(cmd);
+        assertThat(streamFactory.isSeekableInput())
+                .isFalse();
+        try (InputStream inputStream = streamFactory.newInputStream()) {
+            assertThat(IOUtils.toString(inputStream, StandardCharsets.UTF_8))
+                    .isEqualTo("JAVA PROFILE");
+        }
+    }
+
+    @Test
+    public void tarGzInputStream() throws IOException {
+        Path inputFile = Files.createTempFile(tempDir, getClass().getSimpleName(), ".tar.gz");
+        try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(inputFile))) {
+            output.write(IOUtils.resourceToByteArray("/sample.tar"));
+        }
+
+        SanitizeCommand cmd = newCommand();
+        cmd.setInputFile(inputFile.toFile());
+        cmd.setBufferByteSize(0);
+
+        streamFactory = new StreamFactory(cmd);
+        assertThat(streamFactory.newInputStream())
+                .isInstanceOf(TarArchiveInputStream.class);
+    }
+
+    @Test
+    public void detectedTarInputStream() throws IOException {
+        Path inputFile = Files.createTempFile(tempDir, getClass().getSimpleName(), ".tar");
+        writeTar(inputFile);
+
+        SanitizeCommand cmd = newCommand();
+        cmd.setInputFile(inputFile.toFile());
+
+        streamFactory = new StreamFactory(cmd);
+        assertThat(streamFactory.isSeekableInput())
+                .isFalse();
+        assertThat(streamFactory.newInputStream())
+                .isInstanceOf(TarArchiveInputStream.class);
+    }
+
+    @Test
+    public void tarStreams() throws IOException {
+        Path inputFile = Files.createTempFile(tempDir, getClass().getSimpleName(), ".tar");
+        writeTar(inputFile);
+
+        SanitizeCommand cmd = newCommand();
+        cmd.setInputFile(inputFile.toFile());
+
+        streamFactory = new StreamFactory(cmd);
+        try (TarArchiveInputStream tarStream = streamFactory.newTarInputStream()) {
+            assertThat(tarStream.getNextTarEntry())
+                    .isNotNull();
+        }
+        assertThat(streamFactory.newTarOutputStream(new NullOutputStream()))
+                .isInstanceOf(TarArchiveOutputStream.class);
+
+        cmd.setInputFile(Files.createTempFile(tempDir, getClass().getSimpleName(), ".hprof").toFile());
+        assertThatThrownBy(() -> streamFactory.newTarInputStream())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("input is not a tar archive");
+    }
+
+    @Test
+    public void followInputStream() throws IOException {
+        Path inputFile = Files.createTempFile(tempDir, getClass().getSimpleName(), ".hprof");
+        SanitizeCommand cmd = newCommand();
+        cmd.setInputFile(inputFile.toFile());
+        cmd.setBufferByteSize(0);
+        cmd.setFollow(true);
+
+        streamFactory = new StreamFactory(cmd);
+        assertThat(streamFactory.isSeekableInput())
+                .isFalse();
+        try (InputStream inputStream = streamFactory.newInputStream()) {
+            assertThat(inputStream)
+                    .isInstanceOf(FollowInputStream.class);
+        }
+    }
+
+    @Test
+    public void fileOutputChannel() throws IOException {
+        Path file = Files.createTempFile(tempDir, getClass().getSimpleName(), ".hprof");
+        Files.write(file, new byte[10]);
+        SanitizeCommand cmd = newCommand();
+        cmd.setOutputFile(file.toFile());
+
+        streamFactory = new StreamFactory(cmd);
+        assertThat(streamFactory.isSeekableOutput())
+                .isTrue();
+        try (FileChannel channel = streamFactory.newOutputChannel()) {
+            assertThat(channel.size())
+                    .isZero();
+        }
+
+        cmd.setZipOutput(true);
+        assertThat(streamFactory.isSeekableOutput())
+                .isFalse();
+        assertThatThrownBy(() -> streamFactory.newOutputChannel())
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
     @Test
     public void testZipOutputStream() throws IOException {
         Path outputFile = Files.createTempFile(tempDir, getClass().getSimpleName(), ".zip");
@@ -168,6 +361,27 @@ public class StreamFactoryTest {
                 .isInstanceOf(ZipOutputStream.class);
     }
 
+    @Test
+    public void gzipOutputStream() throws IOException {
+        Path outputFile = Files.createTempFile(tempDir, getClass().getSimpleName(), ".gz");
+
+        SanitizeCommand cmd = newCommand();
+        cmd.setInputFile(new File("foo"));
+        cmd.setOutputFile(outputFile.toFile());
+        cmd.setGzipOutput(true);
+
+        streamFactory = new StreamFactory(cmd);
+        assertThat(streamFactory.isSeekableOutput())
+                .isFalse();
+        try (OutputStream output = streamFactory.newOutputStream()) {
+            assertThat(output)
+                    .isInstanceOf(ParallelGzipOutputStream.class);
+            output.write(1);
+        }
+        assertThat(new File(outputFile + StreamFactory.GZIP_INDEX_SUFFIX))
+                .exists();
+    }
+
     @Test
     public void sameInputOutput() {
         SanitizeCommand cmd = newCommand();
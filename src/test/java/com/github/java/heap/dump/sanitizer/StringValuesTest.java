@@ -0,0 +1,86 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class StringValuesTest {
+
+    private static final int ID_SIZE = 8;
+    private static final long MEMORY = 1024 * 1024;
+
+    private static final long STRING_NAME = 101;
+    private static final long VALUE_NAME = 102;
+    private static final long HASH_NAME = 103;
+    private static final long STRING_CLASS = 1000;
+
+    @Test
+    public void valueOffset() {
+        StringValues values = new StringValues(MEMORY);
+        values.addSymbol(STRING_NAME, "java/lang/String");
+        values.addSymbol(VALUE_NAME, "value");
+        values.addSymbol(HASH_NAME, "hash");
+        values.addLoadClass(STRING_CLASS, STRING_NAME);
+        values.addLoadClass(2000, 104);
+
+        assertThat(values.isStringClass(STRING_CLASS))
+                .isTrue();
+        assertThat(values.isStringClass(2000))
+                .isFalse();
+        assertThatThrownBy(values::getValueOffset)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("String instance dumped before the java.lang.String class dump");
+
+        // value field of another class is ignored
+        values.addClass(2000, new long[] { VALUE_NAME }, new int[] { 0 }, ID_SIZE);
+        values.addClass(STRING_CLASS, new long[] { HASH_NAME, VALUE_NAME }, new int[] { 4, 0 }, ID_SIZE);
+        assertThat(values.getValueOffset())
+                .isEqualTo(4);
+    }
+
+    @Test
+    public void values() {
+        StringValues values = new StringValues(MEMORY);
+        values.addValue(0);
+        values.addValue(4096);
+
+        assertThat(values.isValue(4096))
+                .isTrue();
+        assertThat(values.isValue(8192))
+                .isFalse();
+        assertThat(values.size())
+                .isEqualTo(1);
+    }
+
+    @Test
+    public void symbolLength() {
+        StringValues values = new StringValues(MEMORY);
+        assertThat(values.isSymbolLength("java/lang/String".length()))
+                .isTrue();
+        assertThat(values.isSymbolLength("value".length()))
+                .isTrue();
+        assertThat(values.isSymbolLength("hash".length()))
+                .isFalse();
+    }
+}
@@ -0,0 +1,381 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.lang3.Validate;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Streams a synthetic heap dump of a configurable size and record mix to an output stream.
+ * <br>
+ * Nothing but a small fill buffer is kept in memory, so multi-GB dumps can be generated for benchmarks and scaling
+ * tests. Records are drawn from a seeded generator, so the same settings always produce the same bytes.
+ * Each heap dump segment is generated twice from the same generator state: once to compute its length, which
+ * precedes its records, and once to write them.
+ * <br>
+ * Usage: {@code SyntheticHeapDump <outputFile> <size> [idSize]}, e.g. {@code SyntheticHeapDump big.hprof 40GB}
+ */
+public class SyntheticHeapDump {
+
+    static final String TEXT = "confidential-";
+
+    private static final int TAG_UTF8 = 0x01;
+    private static final int TAG_LOAD_CLASS = 0x02;
+    private static final int TAG_HEAP_DUMP_SEGMENT = 0x1C;
+    private static final int TAG_HEAP_DUMP_END = 0x2C;
+    private static final int TAG_CLASS_DUMP = 0x20;
+    private static final int TAG_INSTANCE_DUMP = 0x21;
+    private static final int TAG_OBJECT_ARRAY_DUMP = 0x22;
+    private static final int TAG_PRIMITIVE_ARRAY_DUMP = 0x23;
+    private static final int RECORD_HEADER_SIZE = 1 + 4 + 4;
+    private static final int FILL_BUFFER_SIZE = 64 * 1024;
+
+    // ids of the class name and instance field names. object ids follow
+    private static final String[] NAMES = { "Synthetic", "count", "total", "next" };
+    private static final BasicType[] FIELD_TYPES = { BasicType.INT, BasicType.LONG, BasicType.OBJECT };
+    private static final long CLASS_ID = NAMES.length + 1;
+
+    private enum RecordKind {
+        INSTANCE, CHAR_ARRAY, BYTE_ARRAY, INT_ARRAY, OBJECT_ARRAY
+    }
+
+    private int idSize = 8;
+    private long size = 64L * 1024 * 1024;
+    private long segmentSize = 64L * 1024 * 1024;
+    private double instanceRatio = 0.5;
+    private double textArrayRatio = 0.5;
+    private double objectArrayRatio = 0.5;
+    private int minArrayLength = 0;
+    private int maxArrayLength = 1024;
+    private int minObjectArrayLength = 0;
+    private int maxObjectArrayLength = 1024;
+    private long seed;
+
+    private final byte[] textFill = newTextFill();
+    private final byte[] zeroFill = new byte[FILL_BUFFER_SIZE];
+
+    private long state;
+    private long nextId;
+    private RecordKind kind;
+    private int length;
+
+    public static void main(String... args) throws IOException {
+        Validate.isTrue(args.length >= 2, "Usage: SyntheticHeapDump <outputFile> <size> [idSize]");
+        SyntheticHeapDump heapDump = new SyntheticHeapDump();
+        heapDump.setSize(DataSize.parse(args[1]).toBytes());
+        if (args.length > 2) {
+            heapDump.setIdSize(Integer.parseInt(args[2]));
+        }
+        try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(Paths.get(args[0])), 1 << 20)) {
+            heapDump.writeTo(output);
+        }
+    }
+
+    /**
+     * 4 or 8 byte identifiers
+     */
+    public void setIdSize(int idSize) {
+        Validate.isTrue(idSize == 4 || idSize == 8, "Unknown id size: %s", idSize);
+        this.idSize = idSize;
+    }
+
+    /**
+     * Approximate size of the heap dump. Generation stops at the first record that reaches it
+     */
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    /**
+     * Maximum body length of heap dump segments, unless a single record is larger
+     */
+    public void setSegmentSize(long segmentSize) {
+        Validate.isTrue(segmentSize > 0 && segmentSize <= 0xFFFFFFFFL, "Invalid segment size: %s", segmentSize);
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Fraction of heap dump records that are instance dumps. The rest are arrays
+     */
+    public void setInstanceRatio(double instanceRatio) {
+        this.instanceRatio = instanceRatio;
+    }
+
+    /**
+     * Fraction of arrays that are char[] or byte[], which get sanitized
+     */
+    public void setTextArrayRatio(double textArrayRatio) {
+        this.textArrayRatio = textArrayRatio;
+    }
+
+    /**
+     * Fraction of the remaining arrays that are object arrays. The rest are int[]
+     */
+    public void setObjectArrayRatio(double objectArrayRatio) {
+        this.objectArrayRatio = objectArrayRatio;
+    }
+
+    /**
+     * Primitive array lengths are drawn log-uniformly from this range, so that short arrays dominate like in real
+     * heaps
+     */
+    public void setArrayLengthRange(int minArrayLength, int maxArrayLength) {
+        Validate.isTrue(0 <= minArrayLength && minArrayLength <= maxArrayLength, "Invalid array length range");
+        this.minArrayLength = minArrayLength;
+        this.maxArrayLength = maxArrayLength;
+    }
+
+    /**
+     * Object array lengths are drawn log-uniformly from this range
+     */
+    public void setObjectArrayLengthRange(int minObjectArrayLength, int maxObjectArrayLength) {
+        Validate.isTrue(0 <= minObjectArrayLength && minObjectArrayLength <= maxObjectArrayLength,
+                "Invalid object array length range");
+        this.minObjectArrayLength = minObjectArrayLength;
+        this.maxObjectArrayLength = maxObjectArrayLength;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public void writeTo(OutputStream outputStream) throws IOException {
+        DataOutputStream output = new DataOutputStream(outputStream);
+        state = seed;
+        nextId = CLASS_ID + 1;
+
+        output.write("JAVA PROFILE 1.0.2\0".getBytes(StandardCharsets.US_ASCII));
+        output.writeInt(idSize);
+        output.writeLong(0); // timestamp
+        writeClassRecords(output);
+
+        long written = output.size();
+        while (written < size) {
+            written += writeSegment(output, size - written);
+        }
+
+        writeRecordHeader(output, TAG_HEAP_DUMP_END, 0);
+        output.flush();
+    }
+
+    private void writeClassRecords(DataOutputStream output) throws IOException {
+        for (int i = 0; i < NAMES.length; i++) {
+            byte[] name = NAMES[i].getBytes(StandardCharsets.UTF_8);
+            writeRecordHeader(output, TAG_UTF8, idSize + name.length);
+            writeId(output, i + 1);
+            output.write(name);
+        }
+
+        writeRecordHeader(output, TAG_LOAD_CLASS, 4 + idSize + 4 + idSize);
+        output.writeInt(1); // class serial number
+        writeId(output, CLASS_ID);
+        output.writeInt(0); // stack trace serial number
+        writeId(output, 1); // class name
+
+        int classDumpSize = 1 + 7 * idSize + 4 + 4 + 2 + 2 + 2 + FIELD_TYPES.length * (idSize + 1);
+        writeRecordHeader(output, TAG_HEAP_DUMP_SEGMENT, classDumpSize);
+        output.writeByte(TAG_CLASS_DUMP);
+        writeId(output, CLASS_ID);
+        output.writeInt(0); // stack trace serial number
+        for (int i = 0; i < 6; i++) {
+            writeId(output, 0); // super class, class loader, signers, protection domain, reserved, reserved
+        }
+        output.writeInt(instanceFieldsSize());
+        output.writeShort(0); // constant pool
+        output.writeShort(0); // static fields
+        output.writeShort(FIELD_TYPES.length);
+        for (int i = 0; i < FIELD_TYPES.length; i++) {
+            writeId(output, i + 2);
+            output.writeByte(FIELD_TYPES[i].getU1Code());
+        }
+    }
+
+    // returns number of bytes written
+    private long writeSegment(DataOutputStream output, long remaining) throws IOException {
+        long segmentState = state;
+
+        long segmentLength = 0;
+        long numRecords = 0;
+        while (segmentLength < remaining) {
+            nextRecord();
+            long recordSize = recordSize();
+            if (numRecords > 0 && segmentLength + recordSize > segmentSize) {
+                break;
+            }
+            segmentLength += recordSize;
+            numRecords++;
+        }
+
+        state = segmentState;
+        writeRecordHeader(output, TAG_HEAP_DUMP_SEGMENT, segmentLength);
+        for (long i = 0; i < numRecords; i++) {
+            nextRecord();
+            writeRecord(output);
+        }
+        return RECORD_HEADER_SIZE + segmentLength;
+    }
+
+    private void nextRecord() {
+        if (nextDouble() < instanceRatio) {
+            kind = RecordKind.INSTANCE;
+            length = 0;
+        } else if (nextDouble() < textArrayRatio) {
+            kind = (nextLong() & 1) == 0 ? RecordKind.CHAR_ARRAY : RecordKind.BYTE_ARRAY;
+            length = nextLength(minArrayLength, maxArrayLength);
+        } else if (nextDouble() < objectArrayRatio) {
+            kind = RecordKind.OBJECT_ARRAY;
+            length = nextLength(minObjectArrayLength, maxObjectArrayLength);
+        } else {
+            kind = RecordKind.INT_ARRAY;
+            length = nextLength(minArrayLength, maxArrayLength);
+        }
+    }
+
+    private long recordSize() {
+        switch (kind) {
+            case INSTANCE:
+                return 1 + idSize + 4 + idSize + 4 + instanceFieldsSize();
+            case OBJECT_ARRAY:
+                return 1 + idSize + 4 + 4 + idSize + (long) length * idSize;
+            default:
+                return 1 + idSize + 4 + 4 + 1 + (long) length * elementSize();
+        }
+    }
+
+    private void writeRecord(DataOutputStream output) throws IOException {
+        long id = nextId++;
+        switch (kind) {
+            case INSTANCE:
+                output.writeByte(TAG_INSTANCE_DUMP);
+                writeId(output, id);
+                output.writeInt(0); // stack trace serial number
+                writeId(output, CLASS_ID);
+                output.writeInt(instanceFieldsSize());
+                output.writeInt((int) id); // count
+                output.writeLong(id); // total
+                writeId(output, id - 1); // next
+                break;
+
+            case OBJECT_ARRAY:
+                output.writeByte(TAG_OBJECT_ARRAY_DUMP);
+                writeId(output, id);
+                output.writeInt(0); // stack trace serial number
+                output.writeInt(length);
+                writeId(output, CLASS_ID); // array class
+                fill(output, zeroFill, (long) length * idSize);
+                break;
+
+            default:
+                output.writeByte(TAG_PRIMITIVE_ARRAY_DUMP);
+                writeId(output, id);
+                output.writeInt(0); // stack trace serial number
+                output.writeInt(length);
+                output.writeByte(elementType().getU1Code());
+                fill(output, kind == RecordKind.INT_ARRAY ? zeroFill : textFill, (long) length * elementSize());
+                break;
+        }
+    }
+
+    private BasicType elementType() {
+        switch (kind) {
+            case CHAR_ARRAY:
+                return BasicType.CHAR;
+            case BYTE_ARRAY:
+                return BasicType.BYTE;
+            default:
+                return BasicType.INT;
+        }
+    }
+
+    private int elementSize() {
+        switch (kind) {
+            case CHAR_ARRAY:
+                return 2;
+            case BYTE_ARRAY:
+                return 1;
+            default:
+                return 4;
+        }
+    }
+
+    private int instanceFieldsSize() {
+        return 4 + 8 + idSize;
+    }
+
+    private void writeRecordHeader(DataOutputStream output, int tag, long length) throws IOException {
+        output.writeByte(tag);
+        output.writeInt(0); // timestamp
+        output.writeInt((int) length);
+    }
+
+    private void writeId(DataOutputStream output, long id) throws IOException {
+        if (idSize == 4) {
+            output.writeInt((int) id);
+        } else {
+            output.writeLong(id);
+        }
+    }
+
+    private void fill(OutputStream output, byte[] fill, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            int numBytes = (int) Math.min(remaining, fill.length);
+            output.write(fill, 0, numBytes);
+            remaining -= numBytes;
+        }
+    }
+
+    // repeats TEXT, with an even length so that it is also a valid char[] fill
+    private static byte[] newTextFill() {
+        byte[] text = TEXT.getBytes(StandardCharsets.US_ASCII);
+        byte[] fill = new byte[FILL_BUFFER_SIZE - FILL_BUFFER_SIZE % (2 * text.length)];
+        for (int i = 0; i < fill.length; i++) {
+            fill[i] = text[i % text.length];
+        }
+        return fill;
+    }
+
+    private int nextLength(int min, int max) {
+        double logMin = Math.log(min + 1.0);
+        double logMax = Math.log(max + 1.0);
+        long value = Math.round(Math.exp(logMin + nextDouble() * (logMax - logMin))) - 1;
+        return (int) Math.max(min, Math.min(max, value));
+    }
+
+    private double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    // SplitMix64. Its whole state is one long, so a segment can be replayed
+    private long nextLong() {
+        long z = state += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
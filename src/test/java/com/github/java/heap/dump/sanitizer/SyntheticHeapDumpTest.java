@@ -0,0 +1,114 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SyntheticHeapDumpTest {
+
+    @Test
+    public void sameSeedSameBytes() throws IOException {
+        assertThat(generate(newHeapDump(8)))
+                .isEqualTo(generate(newHeapDump(8)));
+
+        SyntheticHeapDump otherSeed = newHeapDump(8);
+        otherSeed.setSeed(42);
+        assertThat(generate(otherSeed))
+                .isNotEqualTo(generate(newHeapDump(8)));
+    }
+
+    @Test
+    public void sizeAndSegments() throws IOException {
+        ByteBuffer dump = ByteBuffer.wrap(generate(newHeapDump(8)));
+
+        while (dump.get() != 0) {
+            // format name and version
+        }
+        assertThat(dump.getInt())
+                .isEqualTo(8);
+        dump.getLong();
+
+        int numSegments = 0;
+        int lastTag = -1;
+        while (dump.hasRemaining()) {
+            lastTag = dump.get();
+            dump.getInt();
+            int length = dump.getInt();
+            if (lastTag == 0x1C) {
+                numSegments++;
+                assertThat(length)
+                        .isLessThanOrEqualTo(64 * 1024);
+            }
+            dump.position(dump.position() + length);
+        }
+
+        assertThat(dump.limit())
+                .isGreaterThanOrEqualTo(1024 * 1024);
+        assertThat(numSegments)
+                .isGreaterThan(16);
+        assertThat(lastTag)
+                .isEqualTo(0x2C);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 4, 8 })
+    public void sanitize(int idSize) throws IOException {
+        byte[] input = generate(newHeapDump(idSize));
+        assertThat(new String(input, StandardCharsets.US_ASCII))
+                .contains(SyntheticHeapDump.TEXT);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        HeapDumpSanitizer sanitizer = new HeapDumpSanitizer();
+        sanitizer.setInputStream(new ByteArrayInputStream(input));
+        sanitizer.setOutputStream(output);
+        sanitizer.setSanitizationText("\0");
+        sanitizer.sanitize();
+
+        assertThat(output.size())
+                .isEqualTo(input.length);
+        assertThat(new String(output.toByteArray(), StandardCharsets.US_ASCII))
+                .doesNotContain(SyntheticHeapDump.TEXT);
+    }
+
+    private SyntheticHeapDump newHeapDump(int idSize) {
+        SyntheticHeapDump heapDump = new SyntheticHeapDump();
+        heapDump.setIdSize(idSize);
+        heapDump.setSize(1024 * 1024);
+        heapDump.setSegmentSize(64 * 1024);
+        return heapDump;
+    }
+
+    private byte[] generate(SyntheticHeapDump heapDump) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        heapDump.writeTo(output);
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,134 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TarSanitizerTest {
+
+    private static final byte[] LOG = "JAVA PROFILE is mentioned in logs too".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void sanitizeHeapDumpEntries() throws IOException {
+        byte[] heapDump = newHeapDump();
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("bundle/app.log", LOG);
+        entries.put("bundle/java_pid1.hprof", heapDump);
+        entries.put("bundle/empty.txt", new byte[0]);
+        entries.put("bundle/renamed.bin", heapDump);
+
+        LongAdder numBytesWritten = new LongAdder();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertThat(sanitize(writeTar(entries), output, numBytesWritten))
+                .isEqualTo(2);
+
+        Map<String, byte[]> sanitized = readTar(output.toByteArray());
+        assertThat(sanitized)
+                .containsOnlyKeys(entries.keySet());
+        assertThat(sanitized.get("bundle/app.log"))
+                .isEqualTo(LOG);
+        assertThat(sanitized.get("bundle/empty.txt"))
+                .isEmpty();
+        for (String name : new String[] { "bundle/java_pid1.hprof", "bundle/renamed.bin" }) {
+            assertThat(sanitized.get(name))
+                    .hasSameSizeAs(heapDump);
+            assertThat(new String(sanitized.get(name), StandardCharsets.US_ASCII))
+                    .doesNotContain(SyntheticHeapDump.TEXT);
+        }
+        assertThat(numBytesWritten.sum())
+                .isEqualTo(LOG.length + 2L * heapDump.length);
+    }
+
+    @Test
+    public void truncatedHeapDump() throws IOException {
+        byte[] heapDump = newHeapDump();
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("heap.hprof", Arrays.copyOf(heapDump, heapDump.length - 3));
+
+        assertThatThrownBy(() -> sanitize(writeTar(entries), new ByteArrayOutputStream(), new LongAdder()))
+                .isInstanceOf(IOException.class);
+    }
+
+    private int sanitize(byte[] tar, ByteArrayOutputStream output, LongAdder numBytesWritten) throws IOException {
+        TarSanitizer tarSanitizer = new TarSanitizer(() -> {
+            HeapDumpSanitizer sanitizer = new HeapDumpSanitizer();
+            sanitizer.setSanitizationText("\0");
+            return sanitizer;
+        });
+        try (TarArchiveInputStream inputStream = new TarArchiveInputStream(new ByteArrayInputStream(tar));
+                TarArchiveOutputStream outputStream = new TarArchiveOutputStream(output)) {
+            tarSanitizer.setInputStream(inputStream);
+            tarSanitizer.setOutputStream(outputStream);
+            tarSanitizer.setNumBytesWritten(numBytesWritten);
+            return tarSanitizer.sanitize();
+        }
+    }
+
+    private byte[] newHeapDump() throws IOException {
+        SyntheticHeapDump heapDump = new SyntheticHeapDump();
+        heapDump.setSize(256 * 1024);
+        heapDump.setSegmentSize(64 * 1024);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        heapDump.writeTo(output);
+        return output.toByteArray();
+    }
+
+    private byte[] writeTar(Map<String, byte[]> entries) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tarStream = new TarArchiveOutputStream(output)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                TarArchiveEntry tarEntry = new TarArchiveEntry(entry.getKey());
+                tarEntry.setSize(entry.getValue().length);
+                tarStream.putArchiveEntry(tarEntry);
+                tarStream.write(entry.getValue());
+                tarStream.closeArchiveEntry();
+            }
+        }
+        return output.toByteArray();
+    }
+
+    private Map<String, byte[]> readTar(byte[] tar) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (TarArchiveInputStream tarStream = new TarArchiveInputStream(new ByteArrayInputStream(tar))) {
+            TarArchiveEntry entry;
+            while ((entry = tarStream.getNextTarEntry()) != null) {
+                entries.put(entry.getName(), IOUtils.toByteArray(tarStream));
+            }
+        }
+        return entries;
+    }
+}
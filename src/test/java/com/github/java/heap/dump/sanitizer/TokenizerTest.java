@@ -0,0 +1,115 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TokenizerTest {
+
+    private final byte[] key = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    public void equalValuesGetEqualTokens() {
+        Tokenizer tokenizer = new Tokenizer(key, 1024 * 1024);
+        String token = tokenize(tokenizer, "card-4111111111111111", 1, 0);
+
+        assertThat(token)
+                .hasSize("card-4111111111111111".length())
+                .matches("[A-Za-z0-9_-]+")
+                .isEqualTo(tokenize(new Tokenizer(key, 0), "card-4111111111111111", 1, 0))
+                .isNotEqualTo(tokenize(tokenizer, "card-4111111111111112", 1, 0))
+                .isNotEqualTo(tokenize(tokenizer, "card-4111111111111111", 1, 1));
+        assertThat(tokenize(new Tokenizer("fedcba9876543210".getBytes(StandardCharsets.US_ASCII), 0),
+                "card-4111111111111111", 1, 0))
+                .isNotEqualTo(token);
+    }
+
+    @Test
+    public void longValues() {
+        Tokenizer tokenizer = new Tokenizer(key, 0);
+        char[] chars = new char[Tokenizer.MAX_CACHED_LENGTH + 100];
+        Arrays.fill(chars, 'x');
+        String token = tokenize(tokenizer, new String(chars), 1, 0);
+
+        assertThat(token)
+                .hasSize(chars.length)
+                .matches("[A-Za-z0-9_-]+");
+        // key stream blocks differ
+        assertThat(token.substring(32, 64))
+                .isNotEqualTo(token.substring(64, 96));
+    }
+
+    @Test
+    public void elementSizes() {
+        Tokenizer tokenizer = new Tokenizer(key, 0);
+        byte[] chars = "secret".getBytes(StandardCharsets.UTF_16BE);
+        tokenizer.tokenize(chars, chars.length, 2, 0);
+
+        String token = new String(chars, StandardCharsets.UTF_16BE);
+        assertThat(token)
+                .hasSize(6)
+                .matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    public void cachesRepeatedValues() {
+        Tokenizer tokenizer = new Tokenizer(key, 1000);
+        String token = tokenize(tokenizer, "repeated-value", 1, 0);
+        assertThat(tokenize(tokenizer, "repeated-value", 1, 0))
+                .isEqualTo(token);
+        assertThat(tokenizer.getNumCacheHits())
+                .isEqualTo(1);
+
+        // evicted least recently used first, within the memory budget
+        for (int i = 0; i < 100; i++) {
+            tokenize(tokenizer, "value-" + i, 1, 0);
+            assertThat(tokenizer.getCachedBytes())
+                    .isLessThanOrEqualTo(1000);
+        }
+        assertThat(tokenize(tokenizer, "repeated-value", 1, 0))
+                .isEqualTo(token);
+        assertThat(tokenizer.getNumCacheHits())
+                .isEqualTo(1);
+        assertThat(tokenize(tokenizer, "value-99", 1, 0))
+                .isEqualTo(tokenize(new Tokenizer(key, 0), "value-99", 1, 0));
+        assertThat(tokenizer.getNumCacheHits())
+                .isEqualTo(2);
+    }
+
+    @Test
+    public void shortKey() {
+        assertThatThrownBy(() -> new Tokenizer(new byte[15], 0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Token key shorter than 16 bytes");
+    }
+
+    private String tokenize(Tokenizer tokenizer, String value, int elementSize, long chunk) {
+        byte[] buffer = value.getBytes(StandardCharsets.ISO_8859_1);
+        tokenizer.tokenize(buffer, buffer.length, elementSize, chunk);
+        return new String(buffer, StandardCharsets.ISO_8859_1);
+    }
+}
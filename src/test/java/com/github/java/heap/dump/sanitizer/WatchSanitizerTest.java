@@ -0,0 +1,278 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class WatchSanitizerTest {
+
+    private static final long TIMEOUT_MILLIS = 20_000;
+
+    @TempDir
+    Path tempDir;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    public void afterEach() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void sanitizeLandedDumps() throws Exception {
+        Path spool = Files.createDirectory(tempDir.resolve("spool"));
+        Path outputDir = tempDir.resolve("output");
+        writeHeapDump(spool.resolve("before.hprof"));
+        Files.write(spool.resolve("notes.txt"), "not a heap dump".getBytes(StandardCharsets.UTF_8));
+
+        WatchSanitizer watchSanitizer = new WatchSanitizer(newCommand(spool, outputDir));
+        Future<?> watching = executor.submit(() -> {
+            watchSanitizer.watch();
+            return null;
+        });
+        try {
+            awaitFile(outputDir.resolve("before.hprof"));
+
+            Path landing = tempDir.resolve("after.hprof");
+            writeHeapDump(landing);
+            Files.move(landing, spool.resolve("after.hprof"), StandardCopyOption.ATOMIC_MOVE);
+            awaitFile(outputDir.resolve("after.hprof"));
+        } finally {
+            watchSanitizer.close();
+        }
+        watching.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        for (String name : new String[] { "before.hprof", "after.hprof" }) {
+            assertThat(Files.size(outputDir.resolve(name)))
+                    .isEqualTo(Files.size(spool.resolve(name)));
+            assertThat(new String(Files.readAllBytes(outputDir.resolve(name)), StandardCharsets.US_ASCII))
+                    .doesNotContain(SyntheticHeapDump.TEXT);
+        }
+        assertThat(outputDir.resolve("notes.txt"))
+                .doesNotExist();
+        assertThat(outputDir.resolve(WatchSanitizer.STAGING_DIRECTORY))
+                .isEmptyDirectory();
+    }
+
+    @Test
+    public void failedDumpIsNotPublished() throws Exception {
+        Path spool = Files.createDirectory(tempDir.resolve("spool"));
+        Path outputDir = tempDir.resolve("output");
+        Files.write(spool.resolve("bad.hprof"), "JAVA PROFILE 1.0.2".getBytes(StandardCharsets.UTF_8));
+        writeHeapDump(spool.resolve("good.hprof"));
+
+        SanitizeCommand command = newCommand(spool, outputDir);
+        command.setGzipOutput(true);
+        WatchSanitizer watchSanitizer = new WatchSanitizer(command);
+        Future<?> watching = executor.submit(() -> {
+            watchSanitizer.watch();
+            return null;
+        });
+        try {
+            awaitFile(outputDir.resolve("good.hprof.gz"));
+        } finally {
+            watchSanitizer.close();
+        }
+        watching.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        assertThat(outputDir.resolve("good.hprof.gz" + StreamFactory.GZIP_INDEX_SUFFIX))
+                .exists();
+        assertThat(outputDir.resolve("bad.hprof.gz"))
+                .doesNotExist();
+        assertThat(outputDir.resolve(WatchSanitizer.STAGING_DIRECTORY))
+                .isEmptyDirectory();
+    }
+
+    @Test
+    public void verifyPublishesDigestFile() throws Exception {
+        Path spool = Files.createDirectory(tempDir.resolve("spool"));
+        Path outputDir = tempDir.resolve("output");
+        Files.write(spool.resolve("bad.hprof"), "JAVA PROFILE 1.0.2".getBytes(StandardCharsets.UTF_8));
+        writeHeapDump(spool.resolve("good.hprof"));
+
+        SanitizeCommand command = newCommand(spool, outputDir);
+        command.setVerify(true);
+        WatchSanitizer watchSanitizer = new WatchSanitizer(command);
+        Future<?> watching = executor.submit(() -> {
+            watchSanitizer.watch();
+            return null;
+        });
+        try {
+            awaitFile(outputDir.resolve("good.hprof"));
+        } finally {
+            watchSanitizer.close();
+        }
+        watching.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        Path digestFile = outputDir.resolve("good.hprof" + SanitizeCommandRunner.DIGEST_SUFFIX);
+        assertThat(new String(Files.readAllBytes(digestFile), StandardCharsets.US_ASCII))
+                .endsWith("  good.hprof\n");
+        assertThat(outputDir.resolve("bad.hprof" + SanitizeCommandRunner.DIGEST_SUFFIX))
+                .doesNotExist();
+        assertThat(outputDir.resolve(WatchSanitizer.STAGING_DIRECTORY))
+                .isEmptyDirectory();
+    }
+
+    @Test
+    public void indexPublishesIndexFile() throws Exception {
+        Path spool = Files.createDirectory(tempDir.resolve("spool"));
+        Path outputDir = tempDir.resolve("output");
+        Files.write(spool.resolve("bad.hprof"), "JAVA PROFILE 1.0.2".getBytes(StandardCharsets.UTF_8));
+        writeHeapDump(spool.resolve("good.hprof"));
+
+        SanitizeCommand command = newCommand(spool, outputDir);
+        command.setIndex(true);
+        WatchSanitizer watchSanitizer = new WatchSanitizer(command);
+        Future<?> watching = executor.submit(() -> {
+            watchSanitizer.watch();
+            return null;
+        });
+        try {
+            awaitFile(outputDir.resolve("good.hprof"));
+        } finally {
+            watchSanitizer.close();
+        }
+        watching.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        Path indexFile = outputDir.resolve("good.hprof" + SanitizeCommandRunner.INDEX_SUFFIX);
+        try (InputStream index = Files.newInputStream(indexFile)) {
+            assertThat(RecordIndex.read(index))
+                    .isNotEmpty();
+        }
+        assertThat(outputDir.resolve("bad.hprof" + SanitizeCommandRunner.INDEX_SUFFIX))
+                .doesNotExist();
+        assertThat(outputDir.resolve(WatchSanitizer.STAGING_DIRECTORY))
+                .isEmptyDirectory();
+    }
+
+    @Test
+    public void defersDumpWithOutputInFlight() throws Exception {
+        Path spool = Files.createDirectory(tempDir.resolve("spool"));
+        Path outputDir = tempDir.resolve("output");
+        writeHeapDump(spool.resolve("heap.hprof"));
+        try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(spool.resolve("heap.hprof.gz")))) {
+            Files.copy(spool.resolve("heap.hprof"), output);
+        }
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch finished = new CountDownLatch(2);
+        WatchSanitizer watchSanitizer = new WatchSanitizer(newCommand(spool, outputDir)) {
+            @Override
+            protected SanitizeCommandRunner newRunner(SanitizeCommand jobCommand) {
+                return new SanitizeCommandRunner(jobCommand) {
+                    @Override
+                    public void run() throws Exception {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        try {
+                            Thread.sleep(300);
+                            super.run();
+                        } finally {
+                            running.decrementAndGet();
+                            finished.countDown();
+                        }
+                    }
+                };
+            }
+        };
+        Future<?> watching = executor.submit(() -> {
+            watchSanitizer.watch();
+            return null;
+        });
+        try {
+            assertThat(finished.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+                    .isTrue();
+        } finally {
+            watchSanitizer.close();
+        }
+        watching.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        assertThat(maxRunning)
+                .hasValue(1);
+        assertThat(Files.size(outputDir.resolve("heap.hprof")))
+                .isEqualTo(Files.size(spool.resolve("heap.hprof")));
+        assertThat(outputDir.resolve(WatchSanitizer.STAGING_DIRECTORY))
+                .isEmptyDirectory();
+    }
+
+    @Test
+    public void validation() throws IOException {
+        Path spool = Files.createDirectory(tempDir.resolve("spool"));
+        assertThatThrownBy(() -> new WatchSanitizer(newCommand(spool, spool)).watch())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Output directory must differ from watched directory");
+
+        assertThatThrownBy(() -> new WatchSanitizer(newCommand(spool.resolve("missing"), tempDir)).watch())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Watched input must be a directory");
+    }
+
+    private SanitizeCommand newCommand(Path input, Path output) {
+        SanitizeCommand command = new SanitizeCommand();
+        command.setWatch(true);
+        command.setInputFile(input.toFile());
+        command.setOutputFile(output.toFile());
+        command.setSanitizationText("\\0");
+        command.setBufferByteSize(64 * 1024);
+        command.setSettleSeconds(0);
+        command.setJobs(2);
+        return command;
+    }
+
+    private void writeHeapDump(Path file) throws IOException {
+        SyntheticHeapDump heapDump = new SyntheticHeapDump();
+        heapDump.setSize(128 * 1024);
+        heapDump.setSegmentSize(16 * 1024);
+        try (OutputStream output = Files.newOutputStream(file)) {
+            heapDump.writeTo(output);
+        }
+    }
+
+    private void awaitFile(Path file) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!Files.exists(file)) {
+            assertThat(System.currentTimeMillis())
+                    .as("waiting for %s", file)
+                    .isLessThan(deadline);
+            Thread.sleep(50);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*-
+ * ​​​
+ * java-heap-dump-sanitizer
+ * ⁣⁣⁣
+ * Copyright (C) 2020 the original author or authors.
+ * ⁣⁣⁣
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ﻿﻿﻿﻿﻿
+ */
+
+package com.github.java.heap.dump.sanitizer;
+
+import org.apache.commons.io.output.ClosedOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class WriteBehindOutputStreamTest {
+
+    private AtomicBoolean closed = new AtomicBoolean();
+
+    private ByteArrayOutputStream outputBytes = new ByteArrayOutputStream() {
+        @Override
+        public void close() {
+            closed.set(true);
+        }
+    };
+
+    @Test
+    public void flushWaitsForWriter() throws IOException {
+        OutputStream output = new WriteBehindOutputStream(outputBytes, 3, 2);
+        output.write('h');
+        output.write(bytesOf("ello world"));
+
+        output.flush();
+        assertThat(outputString())
+                .isEqualTo("hello world");
+
+        output.write(bytesOf("\0more-stuff-here"));
+        output.close();
+        assertThat(outputString())
+                .isEqualTo("hello world\0more-stuff-here");
+        assertThat(closed)
+                .isTrue();
+
+        output.close();
+    }
+
+    @Test
+    public void writeFailure() throws IOException {
+        OutputStream output = new WriteBehindOutputStream(new ClosedOutputStream(), 2, 2);
+        // fits the first buffer, so that the failure surfaces on flush rather than on a handoff
+        output.write(bytesOf("h"));
+
+        assertThatThrownBy(output::flush)
+                .isInstanceOf(IOException.class)
+                .hasMessage("write behind failed");
+        assertThatThrownBy(() -> output.write(bytesOf("more-stuff-here")))
+                .isInstanceOf(IOException.class)
+                .hasMessage("write behind failed");
+    }
+
+    @Test
+    @Timeout(10) // a dead worker would otherwise block the caller forever
+    public void uncheckedWriteFailure() throws IOException {
+        OutputStream failingOutput = new OutputStream() {
+            @Override
+            public void write(int b) {
+                throw new IllegalStateException("corrupt output");
+            }
+        };
+        OutputStream output = new WriteBehindOutputStream(failingOutput, 2, 2);
+        output.write(bytesOf("h"));
+
+        assertThatThrownBy(output::flush)
+                .isInstanceOf(IOException.class)
+                .hasMessage("write behind failed")
+                .hasRootCauseMessage("corrupt output");
+        assertThatThrownBy(() -> output.write(bytesOf("more-stuff-here")))
+                .isInstanceOf(IOException.class)
+                .hasMessage("write behind failed");
+    }
+
+    @Test
+    public void invalidSettings() {
+        assertThatThrownBy(() -> new WriteBehindOutputStream(outputBytes, 0, 2))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid buffer size: 0");
+        assertThatThrownBy(() -> new WriteBehindOutputStream(outputBytes, 3, 0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid number of buffers: 0");
+    }
+
+    private String outputString() {
+        return new String(outputBytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private byte[] bytesOf(String str) {
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+}